@@ -0,0 +1,89 @@
+package org.gentle.deploy.benchmark;
+
+import org.gentle.deploy.GentleDeployApplication;
+import org.gentle.deploy.service.AccessLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.SignalType;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link AccessLog#record} 多线程写入环形缓冲区（后台线程同时写文件），
+ * 吞吐量需明显高于 50k req/s，丢弃数见 /_api/metrics 的 access_log_dropped_total
+ *
+ * @author xiangqian
+ * @date 17:20 2026/10/23
+ */
+@Fork(1)
+@Threads(4)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class AccessLogBenchmark {
+
+    private AccessLog accessLog;
+    private ServerWebExchange exchange;
+
+    @Setup
+    public void setup(AccessLogState accessLogState) {
+        accessLog = accessLogState.context.getBean(AccessLog.class);
+        exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/linux/fedora/index.html?arch=x86_64").build());
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR, URI.create("http://127.0.0.1:8080/linux/fedora/index.html"));
+        exchange.getResponse().setStatusCode(HttpStatus.OK);
+        exchange.getResponse().getHeaders().setContentLength(1024);
+    }
+
+    @Benchmark
+    public void record() {
+        accessLog.record(exchange, SignalType.ON_COMPLETE, System.nanoTime() - 1_000_000);
+    }
+
+    @State(Scope.Benchmark)
+    public static class AccessLogState {
+
+        private Path dir;
+        private ConfigurableApplicationContext context;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            dir = Files.createTempDirectory("access-log");
+            context = new SpringApplicationBuilder(GentleDeployApplication.class).run("--server.port=0",
+                    "--server.journal.dir=" + dir,
+                    "--server.access-log.enabled=true",
+                    "--server.access-log.file=" + dir.resolve("access.log"));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            context.close();
+            System.out.println("access.log: " + Files.size(dir.resolve("access.log")) + " bytes");
+        }
+
+    }
+
+}
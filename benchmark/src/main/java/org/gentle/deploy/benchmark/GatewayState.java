@@ -0,0 +1,39 @@
+package org.gentle.deploy.benchmark;
+
+import org.gentle.deploy.GentleDeployApplication;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * 每轮基准测试启动一次网关（随机端口），基准测试从容器中获取真实装配的组件
+ *
+ * @author xiangqian
+ * @date 21:10 2026/10/20
+ */
+@State(Scope.Benchmark)
+public class GatewayState {
+
+    private ConfigurableApplicationContext context;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // 随机端口，与本机运行的网关互不影响；路由变更立即发布，测量的是实际替换路由快照的开销；
+        // 关闭注册日志，压测注册的服务不写入工作目录，不被之后启动的网关恢复
+        context = new SpringApplicationBuilder(GentleDeployApplication.class).run("--server.port=0", "--server.route.coalesce-window=0", "--server.journal.enabled=false");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    public <T> T getBean(Class<T> requiredType) {
+        return context.getBean(requiredType);
+    }
+
+}
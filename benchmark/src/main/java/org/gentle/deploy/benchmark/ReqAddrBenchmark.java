@@ -0,0 +1,85 @@
+package org.gentle.deploy.benchmark;
+
+import org.gentle.deploy.service.CidrTrie;
+import org.gentle.deploy.service.ReqAddr;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ReqAddr#resolve} 不同代理请求头组合（请求端 10.0.0.1 在可信代理网段内）
+ *
+ * @author xiangqian
+ * @date 21:35 2026/10/20
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class ReqAddrBenchmark {
+
+    /**
+     * none: 无代理请求头
+     * x-forwarded-for: 单层代理
+     * x-forwarded-for-chain: 多层代理
+     * x-real-ip: nginx
+     * unknown: 前几个请求头为 unknown
+     * forwarded: RFC 7239 多层代理
+     */
+    @Param({"none", "x-forwarded-for", "x-forwarded-for-chain", "x-real-ip", "unknown", "forwarded"})
+    private String headers;
+
+    private ServerHttpRequest request;
+
+    private CidrTrie trustedProxies;
+
+    @Setup
+    public void setup() {
+        MockServerHttpRequest.BaseBuilder<?> builder = MockServerHttpRequest.get("/")
+                .remoteAddress(new InetSocketAddress("10.0.0.1", 40000));
+        switch (headers) {
+            case "x-forwarded-for":
+                builder.header("X-Forwarded-For", "203.0.113.7");
+                break;
+            case "x-forwarded-for-chain":
+                builder.header("X-Forwarded-For", "203.0.113.7, 198.51.100.20, 10.0.0.2, 10.0.0.3");
+                break;
+            case "x-real-ip":
+                builder.header("X-Real-IP", "203.0.113.7");
+                break;
+            case "unknown":
+                builder.header("X-Forwarded-For", "unknown")
+                        .header("Proxy-Client-IP", "unknown")
+                        .header("X-Real-IP", "203.0.113.7");
+                break;
+            case "forwarded":
+                builder.header("Forwarded", "for=\"[2001:db8:cafe::17]:4711\";proto=https, for=198.51.100.20;by=10.0.0.2, for=10.0.0.3");
+                break;
+            default:
+                break;
+        }
+        request = builder.build();
+        trustedProxies = CidrTrie.parse("127.0.0.0/8,::1/128,10.0.0.0/8");
+    }
+
+    @Benchmark
+    public ReqAddr get() {
+        return ReqAddr.resolve(request, trustedProxies);
+    }
+
+}
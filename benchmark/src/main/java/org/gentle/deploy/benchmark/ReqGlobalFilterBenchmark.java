@@ -0,0 +1,52 @@
+package org.gentle.deploy.benchmark;
+
+import org.gentle.deploy.service.ReqGlobalFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ReqGlobalFilter#filter} 非 _api 请求（直接转发）路径
+ *
+ * @author xiangqian
+ * @date 21:22 2026/10/20
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class ReqGlobalFilterBenchmark {
+
+    private ReqGlobalFilter reqGlobalFilter;
+    private ServerWebExchange exchange;
+    private GatewayFilterChain chain;
+
+    @Setup
+    public void setup(GatewayState gatewayState) {
+        reqGlobalFilter = gatewayState.getBean(ReqGlobalFilter.class);
+        exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/linux/fedora/index.html?arch=x86_64").build());
+        chain = exchange -> Mono.empty();
+    }
+
+    @Benchmark
+    public Void passThrough() {
+        return reqGlobalFilter.filter(exchange, chain).block();
+    }
+
+}
@@ -0,0 +1,90 @@
+package org.gentle.deploy.benchmark;
+
+import org.gentle.deploy.service.RouteService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.gateway.handler.predicate.PredicateDefinition;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RouteService#saveAndOverwriteIfExists} 与 {@link RouteService#map()}，路由数 10 ~ 10000
+ *
+ * @author xiangqian
+ * @date 21:48 2026/10/20
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class RouteServiceBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    private int routes;
+
+    private RouteService routeService;
+    private String[] ids;
+
+    // 交替写入两个不同的 uri，保证每次写入都是一次真实的路由变更
+    private RouteDefinition[] flips;
+    private int flip;
+
+    @Setup(Level.Trial)
+    public void setup(GatewayState gatewayState) {
+        routeService = gatewayState.getBean(RouteService.class);
+
+        ids = new String[routes];
+        RouteDefinition[] routeDefinitions = new RouteDefinition[routes];
+        for (int i = 0; i < routes; i++) {
+            ids[i] = "bench-" + i;
+            routeDefinitions[i] = routeDefinition(ids[i], "http://127.0.0.1:8080");
+        }
+        routeService.saveAndOverwriteIfExists(routeDefinitions);
+
+        flips = new RouteDefinition[]{routeDefinition(ids[0], "http://127.0.0.1:8081"), routeDefinition(ids[0], "http://127.0.0.1:8082")};
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        routeService.delete(ids);
+    }
+
+    @Benchmark
+    public void saveAndOverwriteIfExists() {
+        routeService.saveAndOverwriteIfExists(flips[flip++ & 1]);
+    }
+
+    @Benchmark
+    public Map<String, RouteDefinition> map() {
+        return routeService.map();
+    }
+
+    private static RouteDefinition routeDefinition(String id, String uri) {
+        RouteDefinition routeDefinition = new RouteDefinition();
+        routeDefinition.setId(id);
+        routeDefinition.setUri(URI.create(uri));
+        PredicateDefinition predicateDefinition = new PredicateDefinition();
+        predicateDefinition.setName("Path");
+        predicateDefinition.setArgs(Map.of("_genkey_0", "/" + id + "/**"));
+        routeDefinition.setPredicates(List.of(predicateDefinition));
+        return routeDefinition;
+    }
+
+}
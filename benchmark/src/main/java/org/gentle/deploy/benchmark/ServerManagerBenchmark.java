@@ -0,0 +1,88 @@
+package org.gentle.deploy.benchmark;
+
+import org.gentle.deploy.service.ServerAddr;
+import org.gentle.deploy.service.ServerManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.netty.DisposableServer;
+import reactor.netty.tcp.TcpServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ServerManager#add}，服务可达（本地 TCP 桩服务）与不可达（已关闭的端口）
+ *
+ * @author xiangqian
+ * @date 22:02 2026/10/20
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class ServerManagerBenchmark {
+
+    @Param({"reachable", "unreachable"})
+    private String peer;
+
+    private ServerManager serverManager;
+    private List<DisposableServer> stubs;
+
+    // 交替注册两个服务，每次注册都会淘汰栈底服务
+    private ServerAddr[] serverAddrs;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setup(GatewayState gatewayState) throws IOException {
+        serverManager = gatewayState.getBean(ServerManager.class);
+        stubs = new ArrayList<>();
+        serverAddrs = new ServerAddr[2];
+        for (int i = 0; i < serverAddrs.length; i++) {
+            ServerAddr serverAddr = new ServerAddr();
+            serverAddr.setHost("127.0.0.1");
+            serverAddr.setPort(port());
+            serverAddr.setWeight(1);
+            serverAddrs[i] = serverAddr;
+        }
+    }
+
+    private int port() throws IOException {
+        if ("reachable".equals(peer)) {
+            DisposableServer stub = TcpServer.create().host("127.0.0.1").port(0).bindNow();
+            stubs.add(stub);
+            return stub.port();
+        }
+
+        // 获取一个空闲端口后立即关闭，连接时被拒绝
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            return serverSocket.getLocalPort();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        stubs.forEach(DisposableServer::disposeNow);
+    }
+
+    @Benchmark
+    public boolean add() {
+        return serverManager.add(serverAddrs[index++ & 1]);
+    }
+
+}
@@ -0,0 +1,377 @@
+package org.gentle.deploy.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.ZeroCopyHttpOutputMessage;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 访问日志（已转发的请求）
+ * <p>
+ * 请求结束时（{@link ReqGlobalFilter}）只把字段引用和数值写入预分配的环形缓冲区的槽位（多生产者单消费者，CAS 领取序号），
+ * 不格式化、不做 IO，缓冲区满时丢弃并计数，不阻塞事件循环线程；
+ * 后台线程批量读取槽位，编码为 JSON Lines 写入文件，文件达到 max-file-size 后滚动（access.log.1 ... access.log.N）。
+ * <p>
+ * 每行格式：{"ts":毫秒时间戳,"method":"GET","path":"/a","status":200,"bytes":12,"backend":"host:port","route":"default","client":"1.2.3.4","ttfb":微秒,"duration":微秒}，
+ * bytes 为实际写出的响应体字节数（分块传输时同样准确，未写出响应体时为 0）；ttfb 为开始写响应头的耗时。
+ *
+ * @author xiangqian
+ * @date 16:30 2026/10/23
+ */
+@Slf4j
+@Component
+public class AccessLog {
+
+    // 开始写响应头的时间（纳秒）
+    private static final String COMMIT_ATTR = AccessLog.class.getName() + ".commit";
+
+    @Value("${server.access-log.enabled:false}")
+    private boolean enabled;
+
+    // 日志文件
+    @Value("${server.access-log.file:data/access.log}")
+    private String file;
+
+    // 环形缓冲区大小，向上取 2 的幂
+    @Value("${server.access-log.buffer-size:65536}")
+    private int bufferSize;
+
+    // 单个文件最大字节数，超过后滚动
+    @Value("${server.access-log.max-file-size:104857600}")
+    private long maxFileSize;
+
+    // 保留的历史文件数
+    @Value("${server.access-log.max-history:10}")
+    private int maxHistory;
+
+    private Slot[] slots;
+    private int mask;
+
+    // 下一个可领取的序号
+    private final AtomicLong claimed = new AtomicLong();
+
+    // 后台线程已读取到的序号（之前的槽位可重用）
+    private final AtomicLong consumed = new AtomicLong();
+
+    // 缓冲区满丢弃的记录数
+    private final LongAdder dropped = new LongAdder();
+
+    private volatile boolean running;
+    private Thread writer;
+
+    private Path path;
+    private FileChannel channel;
+    private long fileSize;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+
+        int n = 1;
+        while (n < bufferSize) {
+            n <<= 1;
+        }
+        slots = new Slot[n];
+        for (int i = 0; i < n; i++) {
+            slots[i] = new Slot();
+            slots[i].sequence = i - n;
+        }
+        mask = n - 1;
+
+        path = Paths.get(file);
+        if (Objects.nonNull(path.getParent())) {
+            Files.createDirectories(path.getParent());
+        }
+        open();
+
+        running = true;
+        writer = new Thread(this::run, "access-log");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("访问日志: {}", path.toAbsolutePath());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * 请求开始，记录开始写响应头的时间，统计写出的响应体字节数
+     *
+     * @param exchange
+     * @return 响应替换为统计字节数的 {@link CountingResponse}，未启用时返回原 exchange
+     */
+    public ServerWebExchange start(ServerWebExchange exchange) {
+        if (!enabled) {
+            return exchange;
+        }
+        exchange.getResponse().beforeCommit(() -> {
+            exchange.getAttributes().put(COMMIT_ATTR, System.nanoTime());
+            return Mono.empty();
+        });
+        return exchange.mutate().response(new CountingResponse(exchange.getResponse())).build();
+    }
+
+    /**
+     * 请求结束，写入环形缓冲区
+     *
+     * @param exchange
+     * @param signalType
+     * @param startTime  开始时间（纳秒）
+     */
+    public void record(ServerWebExchange exchange, SignalType signalType, long startTime) {
+        if (!enabled) {
+            return;
+        }
+
+        // 领取序号，缓冲区满时丢弃
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed.get() >= slots.length) {
+                dropped.increment();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        long now = System.nanoTime();
+        ServerHttpRequest request = exchange.getRequest();
+        ServerHttpResponse response = exchange.getResponse();
+        URI url = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        ReqAddr reqAddr = ReqAddr.get(exchange);
+        Long commitTime = exchange.getAttribute(COMMIT_ATTR);
+        Integer status = response.getRawStatusCode();
+
+        Slot slot = slots[(int) sequence & mask];
+        slot.timestamp = System.currentTimeMillis();
+        slot.method = request.getMethodValue();
+        slot.path = request.getURI().getRawPath();
+        slot.status = signalType == SignalType.ON_ERROR && Objects.isNull(status) ? 500 : (Objects.isNull(status) ? 0 : status);
+        slot.bytes = response instanceof CountingResponse ? ((CountingResponse) response).bytes : response.getHeaders().getContentLength();
+        slot.backend = Objects.isNull(url) ? null : url.getRawAuthority();
+        slot.route = Objects.isNull(route) ? null : route.getId();
+        slot.client = Objects.isNull(reqAddr) ? null : reqAddr.getHost();
+        slot.ttfb = Objects.isNull(commitTime) ? -1 : (commitTime - startTime) / 1000;
+        slot.duration = (now - startTime) / 1000;
+        // 发布
+        slot.sequence = sequence;
+    }
+
+    /**
+     * 后台线程：批量读取槽位写入文件，没有记录时短暂休眠
+     */
+    private void run() {
+        StringBuilder builder = new StringBuilder(64 * 1024);
+        long next = consumed.get();
+        while (true) {
+            boolean stopping = !running;
+            int batch = 0;
+            Slot slot;
+            while ((slot = slots[(int) next & mask]).sequence == next && batch < slots.length) {
+                append(builder, slot);
+                // 释放引用
+                slot.method = slot.path = slot.backend = slot.route = slot.client = null;
+                consumed.lazySet(++next);
+                batch++;
+                if (builder.length() >= 60 * 1024) {
+                    flush(builder);
+                }
+            }
+            flush(builder);
+
+            if (stopping && batch == 0) {
+                break;
+            }
+            if (batch == 0) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+    }
+
+    private void append(StringBuilder builder, Slot slot) {
+        builder.append("{\"ts\":").append(slot.timestamp);
+        string(builder.append(",\"method\":"), slot.method);
+        string(builder.append(",\"path\":"), slot.path);
+        builder.append(",\"status\":").append(slot.status);
+        builder.append(",\"bytes\":").append(slot.bytes);
+        string(builder.append(",\"backend\":"), slot.backend);
+        string(builder.append(",\"route\":"), slot.route);
+        string(builder.append(",\"client\":"), slot.client);
+        builder.append(",\"ttfb\":").append(slot.ttfb);
+        builder.append(",\"duration\":").append(slot.duration);
+        builder.append("}\n");
+    }
+
+    private void string(StringBuilder builder, String value) {
+        if (Objects.isNull(value)) {
+            builder.append("null");
+            return;
+        }
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        builder.append('"');
+    }
+
+    private void flush(StringBuilder builder) {
+        if (builder.length() == 0) {
+            return;
+        }
+
+        ByteBuffer buffer = StandardCharsets.UTF_8.encode(builder.toString());
+        builder.setLength(0);
+        try {
+            if (fileSize > 0 && fileSize + buffer.remaining() > maxFileSize) {
+                rotate();
+            }
+            while (buffer.hasRemaining()) {
+                fileSize += channel.write(buffer);
+            }
+        } catch (IOException e) {
+            log.error("写访问日志失败: " + path, e);
+        }
+    }
+
+    /**
+     * 滚动：access.log.(N-1) -> access.log.N，...，access.log -> access.log.1
+     */
+    private void rotate() throws IOException {
+        channel.close();
+        for (int i = maxHistory - 1; i >= 1; i--) {
+            Path source = path.resolveSibling(path.getFileName() + "." + i);
+            if (Files.exists(source)) {
+                Files.move(source, path.resolveSibling(path.getFileName() + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (maxHistory > 0) {
+            Files.move(path, path.resolveSibling(path.getFileName() + ".1"), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.delete(path);
+        }
+        open();
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileSize = channel.size();
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException, IOException {
+        if (!enabled) {
+            return;
+        }
+
+        // 写完缓冲区中的记录后退出
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+        channel.close();
+    }
+
+    /**
+     * 环形缓冲区的槽位，预分配、重复使用
+     */
+    /**
+     * 统计写出的响应体字节数，保留零拷贝（sendfile）发送
+     */
+    private static class CountingResponse extends ServerHttpResponseDecorator implements ZeroCopyHttpOutputMessage {
+
+        // 同一响应的写出是串行的，只有一个写入方
+        private volatile long bytes;
+
+        private CountingResponse(ServerHttpResponse delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            return super.writeWith(Flux.from(body).doOnNext(this::count));
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            return super.writeAndFlushWith(Flux.from(body).map(publisher -> Flux.from(publisher).doOnNext(this::count)));
+        }
+
+        @Override
+        public Mono<Void> writeWith(Path file, long position, long count) {
+            ServerHttpResponse delegate = getDelegate();
+            if (delegate instanceof ZeroCopyHttpOutputMessage) {
+                return ((ZeroCopyHttpOutputMessage) delegate).writeWith(file, position, count)
+                        .doOnSuccess(v -> bytes += count);
+            }
+            Flux<DataBuffer> body = DataBufferUtils.read(file, bufferFactory(), StreamUtils.BUFFER_SIZE);
+            return writeWith(DataBufferUtils.takeUntilByteCount(DataBufferUtils.skipUntilByteCount(body, position), count));
+        }
+
+        private void count(DataBuffer dataBuffer) {
+            bytes += dataBuffer.readableByteCount();
+        }
+
+    }
+
+    private static class Slot {
+
+        // 已发布的序号，等于消费者期望的序号时可读
+        private volatile long sequence;
+
+        private long timestamp;
+        private String method;
+        private String path;
+        private int status;
+        private long bytes;
+        private String backend;
+        private String route;
+        private String client;
+        private long ttfb;
+        private long duration;
+
+    }
+
+}
@@ -0,0 +1,101 @@
+package org.gentle.deploy.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.ReactiveLoadBalancerClientFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.net.URI;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 准入控制：按 客户端地址 + 路由 限流（{@link RateLimiter}，超过返回 429），
+ * 按服务自适应限制并发（{@link ConcurrencyLimiter}，超过返回 503）
+ * <p>
+ * 在负载均衡选中服务之后、{@link InflightGlobalFilter} 之前执行，被拒绝的请求不计入服务的处理中请求数和被动健康检测。
+ *
+ * @author xiangqian
+ * @date 15:20 2026/10/23
+ */
+@Component
+public class AdmissionGlobalFilter implements GlobalFilter, Ordered {
+
+    // 被拒绝的原因：rate、concurrency
+    public static final String REJECTED_ATTR = AdmissionGlobalFilter.class.getName() + ".rejected";
+
+    public static final String RATE = "rate";
+    public static final String CONCURRENCY = "concurrency";
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    @Autowired
+    private ConcurrencyLimiter concurrencyLimiter;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        URI url = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+        if (Objects.isNull(url) || Objects.isNull(url.getRawAuthority()) || ServerBalancer.SCHEME.equals(url.getScheme())) {
+            return chain.filter(exchange);
+        }
+
+        // 重试、对冲请求不再限流
+        if (rateLimiter.isEnabled() && Objects.isNull(exchange.getAttribute(RetryGlobalFilter.ATTEMPT_ATTR))) {
+            ReqAddr reqAddr = ReqAddr.get(exchange);
+            Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+            String key = (Objects.isNull(reqAddr) ? null : reqAddr.getHost()) + "|" + (Objects.isNull(route) ? null : route.getId());
+            long wait = rateLimiter.acquire(key);
+            if (wait > 0) {
+                // 向上取整到秒
+                long retryAfter = Math.max(1, (wait + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+                return reject(exchange, RATE, HttpStatus.TOO_MANY_REQUESTS, retryAfter);
+            }
+        }
+
+        if (!concurrencyLimiter.isEnabled()) {
+            return chain.filter(exchange);
+        }
+
+        ConcurrencyLimiter.Limit limit = concurrencyLimiter.acquire(url.getRawAuthority());
+        if (Objects.isNull(limit)) {
+            return reject(exchange, CONCURRENCY, HttpStatus.SERVICE_UNAVAILABLE, 1);
+        }
+
+        // 本过滤器链在收到服务响应头时结束，耗时即首字节耗时
+        long startTime = System.nanoTime();
+        return chain.filter(exchange).doFinally(signalType -> {
+            Boolean dropped = null;
+            if (signalType == SignalType.ON_ERROR) {
+                dropped = true;
+            } else if (signalType == SignalType.ON_COMPLETE) {
+                Integer status = exchange.getResponse().getRawStatusCode();
+                dropped = Objects.nonNull(status) && status >= 500;
+            }
+            limit.release(System.nanoTime() - startTime, dropped);
+        });
+    }
+
+    private Mono<Void> reject(ServerWebExchange exchange, String reason, HttpStatus httpStatus, long retryAfter) {
+        exchange.getAttributes().put(REJECTED_ATTR, reason);
+        exchange.getResponse().setStatusCode(httpStatus);
+        exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter));
+        return exchange.getResponse().setComplete();
+    }
+
+    @Override
+    public int getOrder() {
+        // BalanceGlobalFilter 之后，InflightGlobalFilter 之前
+        return ReactiveLoadBalancerClientFilter.LOAD_BALANCER_CLIENT_FILTER_ORDER - 10;
+    }
+
+}
@@ -0,0 +1,118 @@
+package org.gentle.deploy.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * 应用：独立的部署栈及路由
+ * <p>
+ * 每个应用对应一条路由（id 为应用名），按路径前缀和/或域名（Host 请求头）匹配请求。
+ *
+ * @author xiangqian
+ * @date 10:05 2026/10/22
+ */
+@Data
+@NoArgsConstructor
+public class App {
+
+    /**
+     * 默认应用，不指定应用注册时使用，匹配所有路径
+     */
+    public static final String DEFAULT = "default";
+
+    // 应用名同时作为路由 id 和 deploy:// 的 host
+    private static final Pattern NAME_PATTERN = Pattern.compile("[a-z0-9]([a-z0-9-]{0,61}[a-z0-9])?");
+
+    // 规范化后的路径前缀：非空的路径段，只含 URI 路径字符，不含 {、}、*、? 等路径模式字符
+    private static final Pattern PREFIX_PATTERN = Pattern.compile("(/[A-Za-z0-9._~!$&'()+,;=:@%-]+)+");
+
+    // 规范化后的域名：主机名（小写），不含通配符
+    private static final Pattern DOMAIN_PATTERN = Pattern.compile("[a-z0-9]([a-z0-9-]{0,61}[a-z0-9])?(\\.[a-z0-9]([a-z0-9-]{0,61}[a-z0-9])?)*");
+
+    private String name;
+
+    // 路径前缀，如 /order，null 表示匹配所有路径
+    private String prefix;
+
+    // 域名，null 表示不限
+    private String domain;
+
+    // 已注册服务
+    @JsonIgnore
+    private ServerRegistry registry = new ServerRegistry();
+
+    public App(String name) {
+        this.name = name;
+    }
+
+    public static boolean isValidName(String name) {
+        return Objects.nonNull(name) && NAME_PATTERN.matcher(name).matches();
+    }
+
+    /**
+     * 路径前缀是否合法（路由 Path 断言按模式解析，含模式字符的前缀会导致路由转换失败）
+     *
+     * @param prefix 未规范化的路径前缀，null 或空表示不限
+     * @return
+     */
+    public static boolean isValidPrefix(String prefix) {
+        prefix = normalizePrefix(prefix);
+        return Objects.isNull(prefix) || PREFIX_PATTERN.matcher(prefix).matches();
+    }
+
+    /**
+     * 域名是否合法
+     *
+     * @param domain 未规范化的域名，null 或空表示不限
+     * @return
+     */
+    public static boolean isValidDomain(String domain) {
+        domain = normalizeDomain(domain);
+        return Objects.isNull(domain) || DOMAIN_PATTERN.matcher(domain).matches();
+    }
+
+    /**
+     * 规范化路径前缀：以 / 开头、不以 / 结尾，/ 或空表示匹配所有路径
+     *
+     * @param prefix
+     * @return
+     */
+    public static String normalizePrefix(String prefix) {
+        prefix = StringUtils.strip(StringUtils.trimToEmpty(prefix), "/");
+        return prefix.isEmpty() ? null : "/" + prefix;
+    }
+
+    public static String normalizeDomain(String domain) {
+        domain = StringUtils.trimToNull(domain);
+        return Objects.isNull(domain) ? null : domain.toLowerCase();
+    }
+
+    /**
+     * 已注册服务的不可变快照（栈底 -> 栈顶）
+     *
+     * @return
+     */
+    public List<ServerAddr> getStack() {
+        return registry.snapshot();
+    }
+
+    /**
+     * 复制应用（含已注册服务），用于在锁外读取
+     *
+     * @return
+     */
+    public App copy() {
+        App app = new App(name);
+        app.prefix = prefix;
+        app.domain = domain;
+        app.registry = registry.copy();
+        return app;
+    }
+
+}
@@ -0,0 +1,64 @@
+package org.gentle.deploy.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.ReactiveLoadBalancerClientFilter;
+import org.springframework.cloud.gateway.support.NotFoundException;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.Objects;
+
+/**
+ * 将 deploy://应用名 路由解析为负载均衡选中的服务
+ *
+ * @author xiangqian
+ * @date 22:40 2026/10/18
+ */
+@Slf4j
+@Component
+public class BalanceGlobalFilter implements GlobalFilter, Ordered {
+
+    @Autowired
+    private ServerBalancer serverBalancer;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        URI url = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+        if (Objects.isNull(url) || !ServerBalancer.SCHEME.equals(url.getScheme())) {
+            return chain.filter(exchange);
+        }
+
+        ServerAddr serverAddr = serverBalancer.choose(url.getHost());
+        if (Objects.isNull(serverAddr)) {
+            throw NotFoundException.create(true, "Unable to find available server for " + url.getHost());
+        }
+
+        // 与单个服务的路由一致，选中服务的 path 加在请求路径前（见 RouteService#createRouteDefinition）
+        UriComponentsBuilder builder = UriComponentsBuilder.fromUri(url)
+                .scheme("http")
+                .host(serverAddr.getHost())
+                .port(serverAddr.getPort());
+        String pathPrefix = serverAddr.getPathPrefix();
+        if (!pathPrefix.isEmpty()) {
+            builder.replacePath(pathPrefix + url.getRawPath());
+        }
+        URI requestUrl = builder.build(true).toUri();
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR, requestUrl);
+        return chain.filter(exchange);
+    }
+
+    @Override
+    public int getOrder() {
+        // RouteToRequestUrlFilter 之后，ReactiveLoadBalancerClientFilter 之前
+        return ReactiveLoadBalancerClientFilter.LOAD_BALANCER_CLIENT_FILTER_ORDER - 50;
+    }
+
+}
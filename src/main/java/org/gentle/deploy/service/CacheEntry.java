@@ -0,0 +1,90 @@
+package org.gentle.deploy.service;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * 响应缓存项（只缓存 200 响应）
+ * <p>
+ * 小对象的响应体保存在内存（body），大对象保存在磁盘文件（file），通过零拷贝发送；
+ * 磁盘缓存项被淘汰时，正在发送的请求结束（引用计数归零）后才删除文件。
+ *
+ * @author xiangqian
+ * @date 10:30 2026/10/24
+ */
+@Slf4j
+@Getter
+public class CacheEntry {
+
+    private final String key;
+
+    // 需要回放的响应头（Content-Type、ETag、Last-Modified、Cache-Control 等），不含 Content-Length
+    private final HttpHeaders headers;
+
+    private final byte[] body;
+
+    private final Path file;
+
+    private final long size;
+
+    // 写入缓存的时间、过期时间（毫秒）
+    private final long storedAt;
+    private final long expiresAt;
+
+    // 发送中的请求数，仅磁盘缓存项
+    private int refs;
+
+    private boolean evicted;
+
+    public CacheEntry(String key, HttpHeaders headers, byte[] body, Path file, long size, long storedAt, long expiresAt) {
+        this.key = key;
+        this.headers = HttpHeaders.readOnlyHttpHeaders(headers);
+        this.body = body;
+        this.file = file;
+        this.size = size;
+        this.storedAt = storedAt;
+        this.expiresAt = expiresAt;
+    }
+
+    public boolean isOnDisk() {
+        return Objects.nonNull(file);
+    }
+
+    public boolean isExpired(long now) {
+        return now >= expiresAt;
+    }
+
+    synchronized void acquire() {
+        refs++;
+    }
+
+    synchronized void release() {
+        if (--refs == 0 && evicted) {
+            delete();
+        }
+    }
+
+    synchronized void evict() {
+        evicted = true;
+        if (refs == 0) {
+            delete();
+        }
+    }
+
+    private void delete() {
+        if (isOnDisk()) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("删除缓存文件失败: " + file, e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,310 @@
+package org.gentle.deploy.service;
+
+import org.apache.commons.lang3.StringUtils;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ZeroCopyHttpOutputMessage;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 缓存 GET 请求的响应（{@link ResponseCache}）
+ * <p>
+ * 在选择服务之前执行：命中时直接从缓存响应（支持 If-None-Match、If-Modified-Since 返回 304，单个 Range 返回 206），
+ * 不再转发；未命中时替换响应，在写出响应体的同时写入缓存。
+ * 带 Authorization、Cache-Control: no-store 的请求不使用缓存；Cache-Control: no-cache 的请求不读缓存（也不等待其他请求写入缓存），但响应仍会写入缓存；
+ * 带 Cookie 的请求的响应可能按用户生成，只有明确 Cache-Control: public 或 s-maxage 时才写入缓存。
+ *
+ * @author xiangqian
+ * @date 11:30 2026/10/24
+ */
+@Component
+public class CacheGlobalFilter implements GlobalFilter, Ordered {
+
+    // HIT、MISS
+    public static final String CACHE_HEADER = "X-Cache";
+
+    // 磁盘缓存通过 DataBufferUtils 读取时的缓冲区大小（不支持零拷贝时）
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Autowired
+    private ResponseCache responseCache;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        HttpMethod method = request.getMethod();
+        if (!responseCache.isEnabled() || (method != HttpMethod.GET && method != HttpMethod.HEAD)) {
+            return chain.filter(exchange);
+        }
+
+        HttpHeaders headers = request.getHeaders();
+        String cacheControl = StringUtils.join(headers.get(HttpHeaders.CACHE_CONTROL), ",");
+        if (headers.containsKey(HttpHeaders.AUTHORIZATION) || StringUtils.containsIgnoreCase(cacheControl, "no-store")) {
+            return chain.filter(exchange);
+        }
+
+        String key = key(exchange);
+        boolean noCache = StringUtils.containsIgnoreCase(cacheControl, "no-cache") || StringUtils.containsIgnoreCase(headers.getFirst(HttpHeaders.PRAGMA), "no-cache");
+        if (!noCache) {
+            CacheEntry entry = responseCache.get(key);
+            if (Objects.nonNull(entry)) {
+                return hit(exchange, entry);
+            }
+        }
+
+        // HEAD、Range 请求未命中时直接转发，不写入缓存
+        if (method != HttpMethod.GET || headers.containsKey(HttpHeaders.RANGE)) {
+            return chain.filter(exchange);
+        }
+
+        Mono<Void> wait = responseCache.lock(key);
+        if (Objects.isNull(wait)) {
+            return miss(exchange, chain, key, headers.containsKey(HttpHeaders.COOKIE));
+        }
+
+        // no-cache 的请求要求由服务响应，不等待 leader 后从缓存响应
+        if (noCache) {
+            return chain.filter(exchange);
+        }
+
+        // 等待 leader 写入缓存后从缓存响应，仍未命中（不可缓存、超时）时直接转发
+        return wait.then(Mono.defer(() -> {
+            CacheEntry entry = responseCache.get(key);
+            return Objects.nonNull(entry) ? hit(exchange, entry) : chain.filter(exchange);
+        }));
+    }
+
+    /**
+     * 路由 + 路径 + 查询参数，不同服务（同一路由的新旧版本）共用缓存
+     */
+    private String key(ServerWebExchange exchange) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        String rawQuery = exchange.getRequest().getURI().getRawQuery();
+        return (Objects.isNull(route) ? "" : route.getId()) + ' ' + exchange.getRequest().getURI().getRawPath()
+                + (Objects.isNull(rawQuery) ? "" : '?' + rawQuery);
+    }
+
+    private Mono<Void> miss(ServerWebExchange exchange, GatewayFilterChain chain, String key, boolean cookie) {
+        CaptureResponse response = new CaptureResponse(exchange.getResponse(), key, cookie);
+        // leader 请求完整响应，条件请求头由缓存处理
+        ServerWebExchange mutated = exchange.mutate()
+                .request(builder -> builder.headers(headers -> {
+                    headers.remove(HttpHeaders.IF_NONE_MATCH);
+                    headers.remove(HttpHeaders.IF_MODIFIED_SINCE);
+                }))
+                .response(response)
+                .build();
+        return chain.filter(mutated)
+                .doFinally(signalType -> {
+                    // 没有开始写入缓存（不可缓存、出错）时释放写入锁
+                    if (!response.captured) {
+                        responseCache.unlock(key);
+                    }
+                });
+    }
+
+    private Mono<Void> hit(ServerWebExchange exchange, CacheEntry entry) {
+        ServerHttpRequest request = exchange.getRequest();
+        ServerHttpResponse response = exchange.getResponse();
+        HttpHeaders responseHeaders = response.getHeaders();
+        responseHeaders.putAll(entry.getHeaders());
+        responseHeaders.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        responseHeaders.set(HttpHeaders.AGE, String.valueOf(Math.max(0, (System.currentTimeMillis() - entry.getStoredAt()) / 1000)));
+        responseHeaders.set(CACHE_HEADER, "HIT");
+
+        // 条件请求
+        if (notModified(request.getHeaders(), entry)) {
+            responseCache.release(entry);
+            response.setStatusCode(HttpStatus.NOT_MODIFIED);
+            return response.setComplete();
+        }
+
+        long size = entry.getSize();
+        long position = 0, count = size;
+        String range = request.getHeaders().getFirst(HttpHeaders.RANGE);
+        if (Objects.nonNull(range) && ifRange(request.getHeaders(), entry)) {
+            long[] bounds = range(range, size);
+            if (Objects.isNull(bounds)) {
+                // 多个范围等无法处理的格式，返回完整响应
+                response.setStatusCode(HttpStatus.OK);
+            } else if (bounds.length == 0) {
+                responseCache.release(entry);
+                response.setStatusCode(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+                responseHeaders.set(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                return response.setComplete();
+            } else {
+                position = bounds[0];
+                count = bounds[1] - bounds[0] + 1;
+                response.setStatusCode(HttpStatus.PARTIAL_CONTENT);
+                responseHeaders.set(HttpHeaders.CONTENT_RANGE, "bytes " + bounds[0] + "-" + bounds[1] + "/" + size);
+            }
+        } else {
+            response.setStatusCode(HttpStatus.OK);
+        }
+        responseHeaders.setContentLength(count);
+
+        if (request.getMethod() == HttpMethod.HEAD) {
+            responseCache.release(entry);
+            return response.setComplete();
+        }
+
+        Mono<Void> mono;
+        if (!entry.isOnDisk()) {
+            DataBuffer dataBuffer = response.bufferFactory().wrap(entry.getBody()).slice((int) position, (int) count);
+            mono = response.writeWith(Mono.just(dataBuffer));
+        } else if (response instanceof ZeroCopyHttpOutputMessage) {
+            // 零拷贝（sendfile）
+            mono = ((ZeroCopyHttpOutputMessage) response).writeWith(entry.getFile(), position, count);
+        } else {
+            long skip = position;
+            Flux<DataBuffer> body = DataBufferUtils.read(entry.getFile(), response.bufferFactory(), BUFFER_SIZE);
+            mono = response.writeWith(DataBufferUtils.takeUntilByteCount(DataBufferUtils.skipUntilByteCount(body, skip), count));
+        }
+        return mono.doFinally(signalType -> responseCache.release(entry));
+    }
+
+    private boolean notModified(HttpHeaders headers, CacheEntry entry) {
+        List<String> ifNoneMatch = headers.getIfNoneMatch();
+        String etag = entry.getHeaders().getETag();
+        if (!ifNoneMatch.isEmpty()) {
+            if (Objects.isNull(etag)) {
+                return false;
+            }
+            for (String value : ifNoneMatch) {
+                // 弱比较
+                if ("*".equals(value) || weak(value).equals(weak(etag))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        long ifModifiedSince = headers.getIfModifiedSince();
+        long lastModified = entry.getHeaders().getLastModified();
+        return ifModifiedSince > 0 && lastModified > 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    private String weak(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    /**
+     * If-Range 与缓存项一致时才处理 Range
+     */
+    private boolean ifRange(HttpHeaders headers, CacheEntry entry) {
+        String ifRange = headers.getFirst(HttpHeaders.IF_RANGE);
+        if (Objects.isNull(ifRange)) {
+            return true;
+        }
+        // 强比较
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(entry.getHeaders().getETag());
+        }
+        long date = headers.getFirstDate(HttpHeaders.IF_RANGE);
+        return date > 0 && date == entry.getHeaders().getLastModified();
+    }
+
+    /**
+     * 解析单个字节范围：bytes=start-end、bytes=start-、bytes=-suffix
+     *
+     * @return [start, end]；空数组表示范围无法满足（416）；null 表示不处理（多个范围、格式错误）
+     */
+    static long[] range(String range, long size) {
+        if (!range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = range.substring(6).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            long start, end;
+            if (dash == 0) {
+                long suffix = Long.parseLong(spec.substring(1));
+                if (suffix <= 0) {
+                    return new long[0];
+                }
+                start = Math.max(0, size - suffix);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(spec.substring(0, dash));
+                end = dash == spec.length() - 1 ? size - 1 : Math.min(Long.parseLong(spec.substring(dash + 1)), size - 1);
+                if (end < start) {
+                    return start >= size ? new long[0] : null;
+                }
+            }
+            return start >= size ? new long[0] : new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public int getOrder() {
+        // NettyWriteResponseFilter 之前，使其写出响应体时经过 CaptureResponse；
+        // 也在 BalanceGlobalFilter 之前，命中时不选择服务、不占用限流和并发配额
+        return NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1;
+    }
+
+    /**
+     * 写出响应体的同时写入缓存
+     */
+    private class CaptureResponse extends ServerHttpResponseDecorator {
+
+        private final String key;
+
+        // 请求是否带 Cookie
+        private final boolean cookie;
+
+        // 是否已开始写入缓存（由 Capture 释放写入锁）
+        private volatile boolean captured;
+
+        private CaptureResponse(ServerHttpResponse delegate, String key, boolean cookie) {
+            super(delegate);
+            this.key = key;
+            this.cookie = cookie;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            getHeaders().set(CACHE_HEADER, "MISS");
+            Integer status = getRawStatusCode();
+            long freshness = Objects.nonNull(status) && status == HttpStatus.OK.value() && (!cookie || responseCache.isPublic(getHeaders()))
+                    ? responseCache.freshness(getHeaders(), System.currentTimeMillis()) : 0;
+            ResponseCache.Capture capture = freshness > 0 ? responseCache.capture(key, getHeaders(), getHeaders().getContentLength(), freshness) : null;
+            if (Objects.isNull(capture)) {
+                return super.writeWith(body);
+            }
+
+            captured = true;
+            return super.writeWith(Flux.from(body)
+                    .doOnNext(capture::write)
+                    .doOnComplete(capture::complete)
+                    .doOnError(e -> capture.abort())
+                    .doOnCancel(capture::abort));
+        }
+
+    }
+
+}
@@ -0,0 +1,313 @@
+package org.gentle.deploy.service;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.net.InetAddress;
+import java.util.Objects;
+
+/**
+ * CIDR 前缀树（按位的二叉前缀树）
+ * <p>
+ * IPv4 地址按 IPv4 映射地址（::ffff:a.b.c.d）存储，与 IPv6 共用一棵 128 位的树；
+ * 查找时从最高位开始逐位向下，经过任一网段的终止节点即命中，查找次数不超过 128 次且不分配对象。
+ *
+ * @author xiangqian
+ * @date 10:20 2026/10/23
+ */
+public class CidrTrie {
+
+    // IPv4 映射地址的前缀长度（::ffff:0:0/96）
+    private static final int V4_MAPPED_PREFIX = 96;
+
+    private final Node root = new Node();
+
+    private int size;
+
+    /**
+     * 解析逗号分隔的 CIDR 列表，如：127.0.0.0/8,::1/128,10.0.0.1
+     *
+     * @param cidrs
+     * @return
+     * @throws IllegalArgumentException CIDR 格式错误
+     */
+    public static CidrTrie parse(String cidrs) {
+        CidrTrie cidrTrie = new CidrTrie();
+        if (StringUtils.isNotBlank(cidrs)) {
+            for (String cidr : cidrs.split(",")) {
+                if (StringUtils.isNotBlank(cidr)) {
+                    cidrTrie.add(cidr.trim());
+                }
+            }
+        }
+        return cidrTrie;
+    }
+
+    /**
+     * 添加网段，没有前缀长度时表示单个地址
+     *
+     * @param cidr 如：10.0.0.0/8、2001:db8::/32
+     * @throws IllegalArgumentException CIDR 格式错误
+     */
+    public void add(String cidr) {
+        int slash = cidr.indexOf('/');
+        int end = slash < 0 ? cidr.length() : slash;
+        long[] addr = new long[2];
+        int family = parse(cidr, 0, end, addr);
+        if (family == 0) {
+            throw new IllegalArgumentException("CIDR 格式错误: " + cidr);
+        }
+
+        int maxPrefix = family == 4 ? 32 : 128;
+        int prefix = maxPrefix;
+        if (slash >= 0) {
+            prefix = parseInt(cidr, slash + 1, cidr.length());
+            if (prefix < 0 || prefix > maxPrefix) {
+                throw new IllegalArgumentException("CIDR 格式错误: " + cidr);
+            }
+        }
+        if (family == 4) {
+            prefix += V4_MAPPED_PREFIX;
+        }
+
+        Node node = root;
+        for (int i = 0; i < prefix; i++) {
+            if (bit(addr[0], addr[1], i) == 0) {
+                node = Objects.isNull(node.zero) ? (node.zero = new Node()) : node.zero;
+            } else {
+                node = Objects.isNull(node.one) ? (node.one = new Node()) : node.one;
+            }
+        }
+        node.terminal = true;
+        size++;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param hi 地址高 64 位
+     * @param lo 地址低 64 位
+     * @return 地址是否在任一网段内
+     */
+    public boolean contains(long hi, long lo) {
+        Node node = root;
+        for (int i = 0; ; i++) {
+            if (node.terminal) {
+                return true;
+            }
+            if (i == 128) {
+                return false;
+            }
+            node = bit(hi, lo, i) == 0 ? node.zero : node.one;
+            if (Objects.isNull(node)) {
+                return false;
+            }
+        }
+    }
+
+    public boolean contains(InetAddress address) {
+        if (Objects.isNull(address)) {
+            return false;
+        }
+
+        byte[] bytes = address.getAddress();
+        long hi = 0, lo = 0;
+        if (bytes.length == 4) {
+            for (byte b : bytes) {
+                lo = lo << 8 | (b & 0xff);
+            }
+            lo |= 0xffffL << 32;
+        } else {
+            for (int i = 0; i < 8; i++) {
+                hi = hi << 8 | (bytes[i] & 0xff);
+            }
+            for (int i = 8; i < 16; i++) {
+                lo = lo << 8 | (bytes[i] & 0xff);
+            }
+        }
+        return contains(hi, lo);
+    }
+
+    private static int bit(long hi, long lo, int i) {
+        return (int) (i < 64 ? hi >>> (63 - i) : lo >>> (127 - i)) & 1;
+    }
+
+    /**
+     * 解析 IP 地址（不含方括号和端口），不分配对象
+     *
+     * @param s
+     * @param start
+     * @param end
+     * @param addr  输出：addr[0] 高 64 位，addr[1] 低 64 位，IPv4 为 IPv4 映射地址
+     * @return 4：IPv4，6：IPv6，0：格式错误
+     */
+    public static int parse(CharSequence s, int start, int end, long[] addr) {
+        for (int i = start; i < end; i++) {
+            if (s.charAt(i) == ':') {
+                return parseV6(s, start, end, addr) ? 6 : 0;
+            }
+        }
+
+        long v4 = parseV4(s, start, end);
+        if (v4 < 0) {
+            return 0;
+        }
+        addr[0] = 0;
+        addr[1] = 0xffffL << 32 | v4;
+        return 4;
+    }
+
+    /**
+     * @return 32 位地址，格式错误时返回 -1
+     */
+    private static long parseV4(CharSequence s, int start, int end) {
+        long value = 0;
+        int octets = 0, octet = -1, digits = 0;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                octet = (octet < 0 ? 0 : octet) * 10 + (c - '0');
+                if (octet > 255 || ++digits > 3) {
+                    return -1;
+                }
+            } else if (c == '.') {
+                if (octet < 0 || ++octets > 3) {
+                    return -1;
+                }
+                value = value << 8 | octet;
+                octet = -1;
+                digits = 0;
+            } else {
+                return -1;
+            }
+        }
+        if (octet < 0 || octets != 3) {
+            return -1;
+        }
+        return value << 8 | octet;
+    }
+
+    private static boolean parseV6(CharSequence s, int start, int end, long[] addr) {
+        // 去掉区域标识，如：fe80::1%eth0
+        for (int i = start; i < end; i++) {
+            if (s.charAt(i) == '%') {
+                end = i;
+                break;
+            }
+        }
+        if (end - start < 2) {
+            return false;
+        }
+
+        // "::" 之前的分组（head）、之后的分组（tail）
+        long headHi = 0, headLo = 0, tailHi = 0, tailLo = 0;
+        int headGroups = 0, tailGroups = 0;
+        boolean compressed = false;
+
+        int i = start;
+        if (s.charAt(i) == ':') {
+            if (s.charAt(i + 1) != ':') {
+                return false;
+            }
+            compressed = true;
+            i += 2;
+        }
+
+        while (i < end) {
+            int groupStart = i, value = 0, digits = 0, groups = 1;
+            while (i < end && s.charAt(i) != ':') {
+                char c = s.charAt(i);
+                // 内嵌的 IPv4 地址，如：::ffff:192.0.2.1，只能位于末尾
+                if (c == '.') {
+                    long v4 = parseV4(s, groupStart, end);
+                    if (v4 < 0) {
+                        return false;
+                    }
+                    value = (int) v4;
+                    groups = 2;
+                    i = end;
+                    break;
+                }
+                int hex = Character.digit(c, 16);
+                if (hex < 0 || ++digits > 4) {
+                    return false;
+                }
+                value = value << 4 | hex;
+                i++;
+            }
+            if (digits == 0 && groups == 1) {
+                return false;
+            }
+
+            int bits = groups * 16;
+            long v = value & (groups == 2 ? 0xffffffffL : 0xffffL);
+            if (compressed) {
+                tailHi = tailHi << bits | tailLo >>> (64 - bits);
+                tailLo = tailLo << bits | v;
+                tailGroups += groups;
+            } else {
+                headHi = headHi << bits | headLo >>> (64 - bits);
+                headLo = headLo << bits | v;
+                headGroups += groups;
+            }
+            if (headGroups + tailGroups > 8) {
+                return false;
+            }
+
+            if (i < end) {
+                // s.charAt(i) == ':'
+                i++;
+                if (i < end && s.charAt(i) == ':') {
+                    if (compressed) {
+                        return false;
+                    }
+                    compressed = true;
+                    i++;
+                } else if (i == end) {
+                    return false;
+                }
+            }
+        }
+
+        if (compressed ? headGroups + tailGroups > 7 : headGroups != 8) {
+            return false;
+        }
+
+        // head 移到高位
+        for (int n = headGroups; n < 8; n++) {
+            headHi = headHi << 16 | headLo >>> 48;
+            headLo = headLo << 16;
+        }
+        addr[0] = headHi | tailHi;
+        addr[1] = headLo | tailLo;
+        return true;
+    }
+
+    private static int parseInt(CharSequence s, int start, int end) {
+        if (start >= end || end - start > 3) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static class Node {
+        private Node zero;
+        private Node one;
+        // 网段终止节点
+        private boolean terminal;
+    }
+
+}
@@ -0,0 +1,105 @@
+package org.gentle.deploy.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.util.Comparator;
+import java.util.Objects;
+
+/**
+ * 集群复制的注册表条目
+ * <p>
+ * 每个 应用 + host:port 对应一个条目，注册、移除都是对条目的一次写入（移除保留为墓碑），
+ * 按版本（混合逻辑时钟）+ 节点 id 比较新旧，新版本覆盖旧版本（last-writer-wins）。
+ *
+ * @author xiangqian
+ * @date 10:20 2026/10/25
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ClusterEntry {
+
+    /**
+     * 按版本（相同时按节点 id）从旧到新
+     */
+    public static final Comparator<ClusterEntry> VERSION_ORDER = Comparator.comparingLong(ClusterEntry::getVersion)
+            .thenComparing(entry -> Objects.toString(entry.getNode(), ""));
+
+    // register、deregister
+    private String op;
+
+    private String app;
+
+    // 应用的路径前缀、域名，仅 register
+    private String prefix;
+    private String domain;
+
+    private String host;
+    private int port;
+    private String path;
+    private Integer weight;
+
+    // 版本
+    private long version;
+
+    // 写入条目的节点 id
+    private String node;
+
+    /**
+     * 应用名/host:port
+     *
+     * @return
+     */
+    @JsonIgnore
+    public String getKey() {
+        return app + "/" + host + ":" + port;
+    }
+
+    @JsonIgnore
+    public boolean isRegister() {
+        return ServerOp.REGISTER.equals(op);
+    }
+
+    /**
+     * 是否比另一个条目新，版本相同时按节点 id 比较
+     *
+     * @param other
+     * @return other 为 null 时返回 true
+     */
+    public boolean isNewerThan(ClusterEntry other) {
+        if (Objects.isNull(other)) {
+            return true;
+        }
+        if (version != other.version) {
+            return version > other.version;
+        }
+        return Objects.toString(node, "").compareTo(Objects.toString(other.node, "")) > 0;
+    }
+
+    public ServerAddr toServerAddr() {
+        ServerAddr serverAddr = new ServerAddr();
+        serverAddr.setHost(host);
+        serverAddr.setPort(port);
+        serverAddr.setPath(path);
+        serverAddr.setWeight(Objects.isNull(weight) ? 1 : weight);
+        serverAddr.setVersion(version);
+        return serverAddr;
+    }
+
+    /**
+     * 只含 key 和版本的摘要条目
+     *
+     * @return
+     */
+    public ClusterEntry digest() {
+        ClusterEntry entry = new ClusterEntry();
+        entry.app = app;
+        entry.host = host;
+        entry.port = port;
+        entry.version = version;
+        entry.node = node;
+        return entry;
+    }
+
+}
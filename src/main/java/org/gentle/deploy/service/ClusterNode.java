@@ -0,0 +1,592 @@
+package org.gentle.deploy.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.codec.LineBasedFrameDecoder;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.netty.DisposableServer;
+import reactor.netty.tcp.TcpClient;
+import reactor.netty.tcp.TcpServer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 集群节点：在多个网关之间复制注册表
+ * <p>
+ * 注册表复制为 {@link ClusterEntry} 的 last-writer-wins 集合，版本为混合逻辑时钟（max(时钟 + 1, 当前毫秒)，收到更大的版本时前移），
+ * 重启后本节点的新写入仍大于此前的写入。节点间通过 TCP 发送 JSON Lines 消息（连接建立后先发送 hello 携带 secret 认证）：
+ * <p>
+ * 1、delta：本节点注册、移除服务后立即把变更的条目推送给所有节点；
+ * 2、digest：每个 anti-entropy-interval 向一个随机节点发送全部条目的版本摘要，对方回复摘要中缺失或更旧的条目，
+ * 并在自己落后时回复自己的摘要（digest-reply），节点宕机、网络分区恢复后由此收敛。
+ * <p>
+ * 只有通过 _api 注册、移除服务的操作被复制；探测、栈容量清理等移除由各节点独立执行。移除保留为墓碑，超过 tombstone-ttl 后清理。
+ *
+ * @author xiangqian
+ * @date 10:40 2026/10/25
+ */
+@Slf4j
+@Component
+public class ClusterNode {
+
+    private static final String HELLO = "hello";
+    private static final String DELTA = "delta";
+    private static final String DIGEST = "digest";
+    private static final String DIGEST_REPLY = "digest-reply";
+
+    // 单条消息最大长度
+    private static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    @Value("${server.cluster.enabled:false}")
+    private boolean enabled;
+
+    // 监听地址
+    @Value("${server.cluster.host:0.0.0.0}")
+    private String host;
+
+    @Value("${server.cluster.port:7946}")
+    private int port;
+
+    // 本节点对外地址 host:port，同时作为节点 id，其他节点按此地址回复；默认 127.0.0.1:port
+    @Value("${server.cluster.address:}")
+    private String address;
+
+    // 其他节点 host:port，逗号分隔（可包含本节点，会被忽略）；未配置的节点连接进来后自动加入
+    @Value("${server.cluster.peers:}")
+    private String peers;
+
+    // anti-entropy 周期（毫秒）
+    @Value("${server.cluster.anti-entropy-interval:1000}")
+    private long antiEntropyInterval;
+
+    // 连接超时时间（毫秒）
+    @Value("${server.cluster.connect-timeout:1000}")
+    private int connectTimeout;
+
+    // 墓碑保留时间（毫秒），应大于节点可能离线的最长时间
+    @Value("${server.cluster.tombstone-ttl:86400000}")
+    private long tombstoneTtl;
+
+    @Value("${server.secret}")
+    private String secret;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private String nodeId;
+
+    private final AtomicLong clock = new AtomicLong();
+
+    // 条目，key: 应用名/host:port
+    private final Map<String, ClusterEntry> entryMap = new HashMap<>();
+
+    // 其他节点，key: host:port
+    private final Map<String, Peer> peerMap = new ConcurrentHashMap<>();
+
+    // 其他节点的条目被采纳后回调
+    private volatile Consumer<List<ClusterEntry>> onApply = entries -> {
+    };
+
+    private DisposableServer server;
+    private Disposable antiEntropyDisposable;
+
+    private final LongAdder deltasSent = new LongAdder();
+    private final LongAdder entriesApplied = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        nodeId = StringUtils.isBlank(address) ? "127.0.0.1:" + port : address.trim();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 注册其他节点的条目被采纳后的回调（在事件循环线程上调用）
+     *
+     * @param onApply
+     */
+    public void onApply(Consumer<List<ClusterEntry>> onApply) {
+        this.onApply = onApply;
+    }
+
+    /**
+     * 以本节点恢复的注册表为初始条目（版本为 0，不覆盖其他节点的任何写入），开始监听并与其他节点同步
+     *
+     * @param apps
+     */
+    public void start(List<App> apps) {
+        if (!enabled || Objects.nonNull(server)) {
+            return;
+        }
+
+        synchronized (this) {
+            for (App app : apps) {
+                for (ServerAddr serverAddr : app.getStack()) {
+                    ClusterEntry entry = register(app, serverAddr);
+                    entryMap.putIfAbsent(entry.getKey(), entry);
+                }
+            }
+        }
+
+        for (String peer : StringUtils.split(StringUtils.defaultString(peers), ',')) {
+            peer(peer.trim());
+        }
+
+        server = TcpServer.create()
+                .host(host)
+                .port(port)
+                .doOnConnection(connection -> connection.addHandlerLast(new LineBasedFrameDecoder(MAX_FRAME_LENGTH)))
+                .handle((inbound, outbound) -> {
+                    AtomicBoolean authenticated = new AtomicBoolean();
+                    return inbound.receive()
+                            .asString(StandardCharsets.UTF_8)
+                            .takeWhile(line -> receive(line, authenticated))
+                            .then();
+                })
+                .bindNow();
+        log.info("集群节点: {}, 监听端口: {}, 其他节点: {}", nodeId, port, peerMap.keySet());
+
+        // 启动后立即与所有节点同步一次
+        List<ClusterEntry> digest = digest();
+        peerMap.values().forEach(peer -> peer.send(DIGEST, digest));
+
+        antiEntropyDisposable = Flux.interval(Duration.ofMillis(antiEntropyInterval), Duration.ofMillis(antiEntropyInterval))
+                .subscribe(tick -> antiEntropy(), e -> log.error("", e));
+    }
+
+    /**
+     * 本节点新写入的版本
+     *
+     * @return
+     */
+    public long nextVersion() {
+        return clock.updateAndGet(current -> Math.max(current + 1, System.currentTimeMillis()));
+    }
+
+    /**
+     * 注册条目，版本取 serverAddr 的版本
+     *
+     * @param app
+     * @param serverAddr
+     * @return
+     */
+    public ClusterEntry register(App app, ServerAddr serverAddr) {
+        ClusterEntry entry = entry(app.getName(), serverAddr, serverAddr.getVersion());
+        entry.setOp(ServerOp.REGISTER);
+        entry.setPrefix(app.getPrefix());
+        entry.setDomain(app.getDomain());
+        entry.setPath(serverAddr.getPath());
+        entry.setWeight(serverAddr.getWeight());
+        return entry;
+    }
+
+    /**
+     * 移除条目（墓碑），使用新版本
+     *
+     * @param app
+     * @param serverAddr
+     * @return
+     */
+    public ClusterEntry deregister(String app, ServerAddr serverAddr) {
+        return deregister(app, serverAddr, nextVersion());
+    }
+
+    /**
+     * 移除条目（墓碑），使用指定版本
+     *
+     * @param app
+     * @param serverAddr
+     * @param version
+     * @return
+     */
+    public ClusterEntry deregister(String app, ServerAddr serverAddr, long version) {
+        ClusterEntry entry = entry(app, serverAddr, version);
+        entry.setOp(ServerOp.DEREGISTER);
+        return entry;
+    }
+
+    private ClusterEntry entry(String app, ServerAddr serverAddr, long version) {
+        ClusterEntry entry = new ClusterEntry();
+        entry.setApp(app);
+        entry.setHost(serverAddr.getHost());
+        entry.setPort(serverAddr.getPort());
+        entry.setVersion(version);
+        entry.setNode(nodeId);
+        return entry;
+    }
+
+    /**
+     * 写入本节点的条目并推送给所有节点
+     *
+     * @param entries
+     */
+    public void publish(List<ClusterEntry> entries) {
+        if (!enabled || entries.isEmpty()) {
+            return;
+        }
+
+        synchronized (this) {
+            for (ClusterEntry entry : entries) {
+                if (entry.isNewerThan(entryMap.get(entry.getKey()))) {
+                    entryMap.put(entry.getKey(), entry);
+                }
+            }
+        }
+        peerMap.values().forEach(peer -> {
+            peer.send(DELTA, entries);
+            deltasSent.increment();
+        });
+    }
+
+    /**
+     * 条目是否仍是最新（采纳后执行前可能已被更新的条目覆盖）
+     *
+     * @param entry
+     * @return
+     */
+    public synchronized boolean isCurrent(ClusterEntry entry) {
+        return entryMap.get(entry.getKey()) == entry;
+    }
+
+    /**
+     * 处理一条消息
+     *
+     * @param line
+     * @param authenticated 连接是否已认证
+     * @return 是否保持连接
+     */
+    private boolean receive(String line, AtomicBoolean authenticated) {
+        ClusterMessage message;
+        try {
+            message = objectMapper.readValue(line, ClusterMessage.class);
+        } catch (IOException e) {
+            log.warn("集群消息格式错误: {}", e.toString());
+            return false;
+        }
+
+        if (!authenticated.get()) {
+            if (HELLO.equals(message.type) && secret.equals(message.secret)) {
+                authenticated.set(true);
+                return true;
+            }
+            log.warn("集群节点认证失败: {}", message.from);
+            return false;
+        }
+
+        List<ClusterEntry> entries = Objects.isNull(message.entries) ? new ArrayList<>() : message.entries;
+        if (DELTA.equals(message.type)) {
+            merge(entries);
+        } else if (DIGEST.equals(message.type) || DIGEST_REPLY.equals(message.type)) {
+            Peer peer = peer(message.from);
+            if (Objects.nonNull(peer)) {
+                sync(peer, entries, DIGEST.equals(message.type));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 合并其他节点的条目，采纳更新的条目
+     *
+     * @param entries
+     */
+    private void merge(List<ClusterEntry> entries) {
+        long now = System.currentTimeMillis();
+        List<ClusterEntry> applied = new ArrayList<>();
+        synchronized (this) {
+            for (ClusterEntry entry : entries) {
+                if (!isValid(entry)) {
+                    continue;
+                }
+                clock.accumulateAndGet(entry.getVersion(), Math::max);
+                if (!entry.isRegister() && now - entry.getVersion() > tombstoneTtl) {
+                    continue;
+                }
+                if (entry.isNewerThan(entryMap.get(entry.getKey()))) {
+                    entryMap.put(entry.getKey(), entry);
+                    applied.add(entry);
+                }
+            }
+        }
+
+        if (!applied.isEmpty()) {
+            entriesApplied.add(applied.size());
+            log.debug("采纳集群条目: {}", applied);
+            onApply.accept(applied);
+        }
+    }
+
+    private boolean isValid(ClusterEntry entry) {
+        return App.isValidName(entry.getApp())
+                && App.isValidPrefix(entry.getPrefix())
+                && App.isValidDomain(entry.getDomain())
+                && App.isValidPrefix(entry.getPath())
+                && StringUtils.isNotEmpty(entry.getHost())
+                && (ServerOp.REGISTER.equals(entry.getOp()) || ServerOp.DEREGISTER.equals(entry.getOp()));
+    }
+
+    /**
+     * 对比摘要：回复对方缺失或更旧的条目；对方有更新的条目且这是对方发起的摘要时，回复本节点的摘要
+     *
+     * @param peer
+     * @param digest
+     * @param reply
+     */
+    private void sync(Peer peer, List<ClusterEntry> digest, boolean reply) {
+        Map<String, ClusterEntry> remote = new HashMap<>(digest.size());
+        digest.forEach(entry -> remote.put(entry.getKey(), entry));
+
+        List<ClusterEntry> newer = new ArrayList<>();
+        boolean behind = false;
+        synchronized (this) {
+            for (ClusterEntry entry : entryMap.values()) {
+                if (entry.isNewerThan(remote.get(entry.getKey()))) {
+                    newer.add(entry);
+                }
+            }
+            for (ClusterEntry entry : remote.values()) {
+                if (entry.isNewerThan(entryMap.get(entry.getKey()))) {
+                    behind = true;
+                    break;
+                }
+            }
+        }
+
+        if (!newer.isEmpty()) {
+            // 按版本从旧到新发送，对方按写入顺序应用
+            newer.sort(ClusterEntry.VERSION_ORDER);
+            peer.send(DELTA, newer);
+            deltasSent.increment();
+        }
+        if (behind && reply) {
+            peer.send(DIGEST_REPLY, digest());
+        }
+    }
+
+    private synchronized List<ClusterEntry> digest() {
+        List<ClusterEntry> digest = new ArrayList<>(entryMap.size());
+        entryMap.values().forEach(entry -> digest.add(entry.digest()));
+        return digest;
+    }
+
+    /**
+     * 清理过期墓碑，向一个随机节点发送摘要
+     */
+    private void antiEntropy() {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            entryMap.values().removeIf(entry -> !entry.isRegister() && now - entry.getVersion() > tombstoneTtl);
+        }
+
+        List<Peer> peers = new ArrayList<>(peerMap.values());
+        if (peers.isEmpty()) {
+            return;
+        }
+        peers.get(ThreadLocalRandom.current().nextInt(peers.size())).send(DIGEST, digest());
+    }
+
+    /**
+     * 获取（或加入）节点
+     *
+     * @param address host:port
+     * @return 地址无效或为本节点时返回 null
+     */
+    private Peer peer(String address) {
+        if (StringUtils.isEmpty(address) || address.equals(nodeId)) {
+            return null;
+        }
+        Peer peer = peerMap.get(address);
+        if (Objects.isNull(peer)) {
+            int index = address.lastIndexOf(':');
+            int port = index < 0 ? -1 : NumberUtils.toInt(address.substring(index + 1), -1);
+            if (index <= 0 || port <= 0) {
+                log.warn("集群节点地址无效: {}", address);
+                return null;
+            }
+            peer = peerMap.computeIfAbsent(address, key -> new Peer(key, address.substring(0, index), port));
+        }
+        return peer;
+    }
+
+    public long getEntryCount() {
+        synchronized (this) {
+            return entryMap.values().stream().filter(ClusterEntry::isRegister).count();
+        }
+    }
+
+    public long getConnectedPeers() {
+        return peerMap.values().stream().filter(peer -> peer.connected).count();
+    }
+
+    public long getDeltasSent() {
+        return deltasSent.sum();
+    }
+
+    public long getEntriesApplied() {
+        return entriesApplied.sum();
+    }
+
+    public Map<String, Object> info() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("enabled", enabled);
+        map.put("node", nodeId);
+        map.put("clock", clock.get());
+        Map<String, Boolean> peers = new LinkedHashMap<>();
+        peerMap.values().forEach(peer -> peers.put(peer.address, peer.connected));
+        map.put("peers", peers);
+        synchronized (this) {
+            map.put("entries", new ArrayList<>(entryMap.values()));
+        }
+        return map;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (Objects.nonNull(antiEntropyDisposable)) {
+            antiEntropyDisposable.dispose();
+        }
+        peerMap.values().forEach(Peer::close);
+        if (Objects.nonNull(server)) {
+            server.disposeNow();
+        }
+    }
+
+    /**
+     * 到其他节点的连接（只发送，其他节点通过自己的连接回复）
+     */
+    private class Peer {
+
+        private final String address;
+        private final String host;
+        private final int port;
+
+        // 待发送的消息，连接断开后丢弃（由 anti-entropy 补齐）
+        private Sinks.Many<String> sink;
+
+        private volatile boolean connected;
+
+        private Peer(String address, String host, int port) {
+            this.address = address;
+            this.host = host;
+            this.port = port;
+        }
+
+        private synchronized void send(String type, List<ClusterEntry> entries) {
+            ClusterMessage message = new ClusterMessage();
+            message.type = type;
+            message.from = nodeId;
+            message.entries = entries;
+            String line = encode(message);
+            if (Objects.isNull(line)) {
+                return;
+            }
+            if (Objects.isNull(sink)) {
+                connect();
+            }
+            sink.tryEmitNext(line);
+        }
+
+        private void connect() {
+            Sinks.Many<String> sink = Sinks.many().unicast().onBackpressureBuffer();
+            this.sink = sink;
+
+            ClusterMessage hello = new ClusterMessage();
+            hello.type = HELLO;
+            hello.from = nodeId;
+            hello.secret = secret;
+            sink.tryEmitNext(encode(hello));
+
+            TcpClient.newConnection()
+                    .host(host)
+                    .port(port)
+                    .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeout)
+                    .connect()
+                    .subscribe(connection -> {
+                        connected = true;
+                        connection.onDispose(() -> reset(sink));
+                        connection.outbound()
+                                .sendString(sink.asFlux(), StandardCharsets.UTF_8)
+                                .then()
+                                .subscribe(null, e -> connection.dispose());
+                    }, e -> {
+                        log.debug("连接集群节点失败: {}, {}", address, e.toString());
+                        reset(sink);
+                    });
+        }
+
+        private synchronized void reset(Sinks.Many<String> sink) {
+            if (this.sink == sink) {
+                this.sink = null;
+                connected = false;
+            }
+        }
+
+        private synchronized void close() {
+            if (Objects.nonNull(sink)) {
+                sink.tryEmitComplete();
+                sink = null;
+            }
+        }
+
+    }
+
+    private String encode(ClusterMessage message) {
+        try {
+            return objectMapper.writeValueAsString(message) + "\n";
+        } catch (JsonProcessingException e) {
+            log.error("", e);
+            return null;
+        }
+    }
+
+    @Data
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private static class ClusterMessage {
+
+        // hello、delta、digest、digest-reply
+        private String type;
+
+        // 发送节点 id
+        private String from;
+
+        // 仅 hello
+        private String secret;
+
+        private List<ClusterEntry> entries;
+
+    }
+
+}
@@ -0,0 +1,30 @@
+package org.gentle.deploy.service;
+
+import lombok.Data;
+
+/**
+ * 服务并发限制状态
+ *
+ * @author xiangqian
+ * @date 14:40 2026/10/23
+ */
+@Data
+public class ConcurrencyLimitState {
+
+    // host:port
+    private final String key;
+
+    // 当前并发上限
+    private final int limit;
+
+    // 处理中的请求数（等待响应头）
+    private final int inflight;
+
+    // 基准延迟、平滑后的延迟（毫秒）
+    private final double baselineLatency;
+    private final double latency;
+
+    // 因超过并发上限拒绝的请求数
+    private final long rejected;
+
+}
@@ -0,0 +1,169 @@
+package org.gentle.deploy.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * 服务自适应并发限制（AIMD）
+ * <p>
+ * 每个服务维护一个并发上限，处理中的请求数（转发到收到响应头）达到上限时直接拒绝（503），避免服务排队导致延迟雪崩。
+ * 上限根据延迟调整：平滑延迟超过基准延迟（观察到的最小延迟，缓慢上浮）的 tolerance 倍、或请求失败时，
+ * 按 backoff 比例减小（每个延迟周期最多减小一次）；延迟正常且处理中的请求数达到上限一半以上时加 1。
+ *
+ * @author xiangqian
+ * @date 14:45 2026/10/23
+ */
+@Component
+public class ConcurrencyLimiter {
+
+    @Value("${server.concurrency-limit.enabled:false}")
+    private boolean enabled;
+
+    // 初始并发上限
+    @Value("${server.concurrency-limit.initial-limit:100}")
+    private int initialLimit;
+
+    // 最小、最大并发上限
+    @Value("${server.concurrency-limit.min-limit:10}")
+    private int minLimit;
+
+    @Value("${server.concurrency-limit.max-limit:1000}")
+    private int maxLimit;
+
+    // 平滑延迟超过基准延迟的倍数时减小上限
+    @Value("${server.concurrency-limit.tolerance:2.0}")
+    private double tolerance;
+
+    // 减小比例
+    @Value("${server.concurrency-limit.backoff:0.9}")
+    private double backoff;
+
+    // key: host:port
+    private Map<String, Limit> limitMap;
+
+    @PostConstruct
+    public void init() {
+        limitMap = new ConcurrentHashMap<>();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 请求转发前获取并发许可
+     *
+     * @param key host:port
+     * @return 许可，超过并发上限时返回 null
+     */
+    public Limit acquire(String key) {
+        Limit limit = limitMap.get(key);
+        if (Objects.isNull(limit)) {
+            limit = limitMap.computeIfAbsent(key, k -> new Limit(k));
+        }
+        return limit.acquire() ? limit : null;
+    }
+
+    public void remove(ServerAddr serverAddr) {
+        limitMap.remove(serverAddr.getKey());
+    }
+
+    public int getLimit(String key) {
+        Limit limit = limitMap.get(key);
+        return Objects.isNull(limit) ? 0 : (int) limit.limit;
+    }
+
+    public long getRejected(String key) {
+        Limit limit = limitMap.get(key);
+        return Objects.isNull(limit) ? 0 : limit.rejected.sum();
+    }
+
+    public List<ConcurrencyLimitState> list() {
+        return limitMap.values().stream()
+                .map(Limit::state)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 单个服务的并发上限
+     */
+    public class Limit {
+
+        private final String key;
+
+        private final AtomicInteger inflight = new AtomicInteger();
+
+        private final LongAdder rejected = new LongAdder();
+
+        // 以下字段在 release 中加锁更新
+        private volatile double limit = initialLimit;
+
+        // 基准延迟、平滑延迟（纳秒），0 表示还没有样本
+        private volatile double baselineLatency;
+        private volatile double latency;
+
+        // 上次减小上限的时间（纳秒）
+        private long lastDecrease;
+
+        private Limit(String key) {
+            this.key = key;
+            this.lastDecrease = System.nanoTime();
+        }
+
+        private boolean acquire() {
+            if (inflight.incrementAndGet() > (int) limit) {
+                inflight.decrementAndGet();
+                rejected.increment();
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * 请求结束（收到响应头、出错或取消）
+         *
+         * @param duration 纳秒
+         * @param dropped  是否失败（出错、超时、5xx），取消时为 null 表示不作为样本
+         */
+        public void release(long duration, Boolean dropped) {
+            int current = inflight.getAndDecrement();
+            if (Objects.isNull(dropped)) {
+                return;
+            }
+
+            synchronized (this) {
+                long now = System.nanoTime();
+                if (!dropped) {
+                    latency = latency == 0 ? duration : latency * 0.9 + duration * 0.1;
+                    // 基准延迟取最小延迟，缓慢上浮以适应服务本身的变化
+                    baselineLatency = baselineLatency == 0 || duration < baselineLatency ? duration : baselineLatency + (duration - baselineLatency) * 0.001;
+                }
+
+                if (dropped || latency > baselineLatency * tolerance) {
+                    // 每个延迟周期最多减小一次
+                    if (now - lastDecrease >= latency) {
+                        limit = Math.max(minLimit, limit * backoff);
+                        lastDecrease = now;
+                    }
+                } else if (current * 2 >= limit) {
+                    limit = Math.min(maxLimit, limit + 1);
+                }
+            }
+        }
+
+        private ConcurrencyLimitState state() {
+            return new ConcurrencyLimitState(key, (int) limit, inflight.get(), baselineLatency / 1e6, latency / 1e6, rejected.sum());
+        }
+
+    }
+
+}
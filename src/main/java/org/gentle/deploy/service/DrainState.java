@@ -0,0 +1,32 @@
+package org.gentle.deploy.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+import reactor.core.Disposable;
+
+/**
+ * 服务排空状态
+ *
+ * @author xiangqian
+ * @date 20:46 2026/10/19
+ */
+@Data
+public class DrainState {
+
+    private final String app;
+
+    private final ServerAddr serverAddr;
+
+    // 开始排空时间
+    private final long startTime;
+
+    // 截止时间，超过后不再等待
+    private final long deadline;
+
+    // 处理中的请求数
+    private volatile long inflight;
+
+    @JsonIgnore
+    private volatile Disposable disposable;
+
+}
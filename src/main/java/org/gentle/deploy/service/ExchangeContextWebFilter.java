@@ -0,0 +1,22 @@
+package org.gentle.deploy.service;
+
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.reactive.ServerWebExchangeContextFilter;
+
+/**
+ * 将当前请求（ServerWebExchange）写入 Reactor Context，
+ * 供 {@link RouteSnapshotLocator#getRoutes()} 按请求的域名和路径只返回候选路由
+ *
+ * @author xiangqian
+ * @date 11:20 2026/10/22
+ */
+@Component
+public class ExchangeContextWebFilter extends ServerWebExchangeContextFilter implements Ordered {
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+}
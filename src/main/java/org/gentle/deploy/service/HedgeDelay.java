@@ -0,0 +1,120 @@
+package org.gentle.deploy.service;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对冲请求的触发延迟（按应用）
+ * <p>
+ * 记录每次转发的首字节耗时（{@link Recorder}，wait-free），每个 window 周期取出区间直方图，
+ * 以 percentile 分位数（不低于 min-delay）作为下一周期的触发延迟；周期内样本数少于 min-samples 时不对冲。
+ *
+ * @author xiangqian
+ * @date 15:25 2026/10/24
+ */
+@Component
+public class HedgeDelay {
+
+    private static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    @Value("${server.retry.hedge.enabled:false}")
+    private boolean enabled;
+
+    // 触发对冲的延迟分位数
+    @Value("${server.retry.hedge.percentile:95}")
+    private double percentile;
+
+    // 最小触发延迟（毫秒）
+    @Value("${server.retry.hedge.min-delay:10}")
+    private long minDelay;
+
+    // 计算分位数的最少样本数
+    @Value("${server.retry.hedge.min-samples:100}")
+    private long minSamples;
+
+    // 统计周期（毫秒）
+    @Value("${server.retry.hedge.window:10000}")
+    private long window;
+
+    // key: 应用名
+    private Map<String, Latency> latencyMap;
+
+    private Disposable disposable;
+
+    @PostConstruct
+    public void init() {
+        latencyMap = new ConcurrentHashMap<>();
+        if (!enabled) {
+            return;
+        }
+
+        disposable = Flux.interval(Duration.ofMillis(window), Duration.ofMillis(window))
+                .subscribe(tick -> latencyMap.values().forEach(Latency::roll));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 记录首字节耗时
+     *
+     * @param app
+     * @param duration 纳秒
+     */
+    public void record(String app, long duration) {
+        Latency latency = latencyMap.get(app);
+        if (Objects.isNull(latency)) {
+            latency = latencyMap.computeIfAbsent(app, key -> new Latency());
+        }
+        latency.recorder.recordValue(Math.min(Math.max(duration / 1000, 0), HIGHEST_MICROS));
+    }
+
+    /**
+     * 触发对冲的延迟
+     *
+     * @param app
+     * @return 毫秒，0 表示不对冲
+     */
+    public long get(String app) {
+        Latency latency = latencyMap.get(app);
+        return Objects.isNull(latency) ? 0 : latency.delay;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (Objects.nonNull(disposable)) {
+            disposable.dispose();
+        }
+    }
+
+    private class Latency {
+
+        private final Recorder recorder = new Recorder(HIGHEST_MICROS, 2);
+        private Histogram interval;
+        private volatile long delay;
+
+        private void roll() {
+            interval = recorder.getIntervalHistogram(interval);
+            if (interval.getTotalCount() < minSamples) {
+                delay = 0;
+                return;
+            }
+            delay = Math.max(minDelay, TimeUnit.MICROSECONDS.toMillis(interval.getValueAtPercentile(percentile)));
+        }
+
+    }
+
+}
@@ -0,0 +1,37 @@
+package org.gentle.deploy.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.ReactiveLoadBalancerClientFilter;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * 转发地址确定后，记录服务处理中的请求数
+ * <p>
+ * 响应体由 NettyWriteResponseFilter 在本过滤器链结束后写出，因此计数在 {@link ReqGlobalFilter} 中（整个过滤器链结束时）释放。
+ *
+ * @author xiangqian
+ * @date 20:30 2026/10/19
+ */
+@Component
+public class InflightGlobalFilter implements GlobalFilter, Ordered {
+
+    @Autowired
+    private InflightTracker inflightTracker;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        inflightTracker.enter(exchange);
+        return chain.filter(exchange);
+    }
+
+    @Override
+    public int getOrder() {
+        return ReactiveLoadBalancerClientFilter.LOAD_BALANCER_CLIENT_FILTER_ORDER + 1;
+    }
+
+}
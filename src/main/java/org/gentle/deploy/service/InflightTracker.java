@@ -0,0 +1,78 @@
+package org.gentle.deploy.service;
+
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+
+import javax.annotation.PostConstruct;
+import java.net.URI;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 记录每个服务正在处理中的请求数
+ * <p>
+ * 计数器使用 {@link LongAdder}（分段计数，高并发下无锁竞争），key: host:port。
+ *
+ * @author xiangqian
+ * @date 20:12 2026/10/19
+ */
+@Component
+public class InflightTracker {
+
+    public static final String INFLIGHT_ATTR = InflightTracker.class.getName() + ".inflight";
+
+    private Map<String, LongAdder> counterMap;
+
+    @PostConstruct
+    public void init() {
+        counterMap = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * 请求开始转发到服务
+     *
+     * @param exchange
+     */
+    public void enter(ServerWebExchange exchange) {
+        URI url = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+        if (Objects.isNull(url) || Objects.isNull(url.getRawAuthority())) {
+            return;
+        }
+
+        // 同一请求重新转发（如重试）时，先结束上一次计数
+        leave(exchange);
+
+        LongAdder counter = counterMap.computeIfAbsent(url.getRawAuthority(), key -> new LongAdder());
+        counter.increment();
+        exchange.getAttributes().put(INFLIGHT_ATTR, counter);
+    }
+
+    /**
+     * 请求结束（响应已写完、出错或取消）
+     *
+     * @param exchange
+     */
+    public void leave(ServerWebExchange exchange) {
+        LongAdder counter = (LongAdder) exchange.getAttributes().remove(INFLIGHT_ATTR);
+        if (Objects.nonNull(counter)) {
+            counter.decrement();
+        }
+    }
+
+    public long count(ServerAddr serverAddr) {
+        return count(serverAddr.getKey());
+    }
+
+    public long count(String key) {
+        LongAdder counter = counterMap.get(key);
+        return Objects.isNull(counter) ? 0 : counter.sum();
+    }
+
+    public void remove(ServerAddr serverAddr) {
+        counterMap.remove(serverAddr.getKey());
+    }
+
+}
@@ -0,0 +1,418 @@
+package org.gentle.deploy.service;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.SignalType;
+
+import javax.annotation.PostConstruct;
+import java.net.URI;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 指标
+ * <p>
+ * 记录路径只做 {@link LongAdder} 累加和 {@link Recorder#recordValue(long)}（无锁、不分配对象），
+ * 导出时（/_api/metrics）才汇总区间直方图并生成 Prometheus 文本格式。
+ *
+ * @author xiangqian
+ * @date 14:05 2026/10/21
+ */
+@Component
+public class Metrics {
+
+    private static final String PREFIX = "gentle_deploy_";
+
+    // 直方图最大记录值（微秒），超出按最大值记录
+    private static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    // Prometheus 直方图桶上界（秒）
+    private static final double[] BUCKETS = {0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30};
+
+    @Autowired
+    private InflightTracker inflightTracker;
+
+    @Autowired
+    private ThreadExecutor threadExecutor;
+
+    @Autowired
+    private OutlierDetector outlierDetector;
+
+    @Autowired
+    private ConcurrencyLimiter concurrencyLimiter;
+
+    @Autowired
+    private AccessLog accessLog;
+
+    @Autowired
+    private ResponseCache responseCache;
+
+    @Autowired
+    private RetryBudget retryBudget;
+
+    @Autowired
+    private ClusterNode clusterNode;
+
+    @Autowired
+    private RegistryEvents registryEvents;
+
+    @Autowired
+    private ServerMirror serverMirror;
+
+    // 服务指标，key: host:port
+    private Map<String, BackendMetrics> backendMap;
+
+    // 路由刷新耗时
+    private Timer routeRefresh;
+
+    // ThreadExecutor 任务排队耗时、执行耗时
+    private Timer executorWait;
+    private Timer executorRun;
+
+    // 被限流的请求数
+    private LongAdder rateLimited;
+
+    @PostConstruct
+    public void init() {
+        backendMap = new ConcurrentHashMap<>();
+        routeRefresh = new Timer();
+        executorWait = new Timer();
+        executorRun = new Timer();
+        threadExecutor.onTask((wait, run) -> {
+            executorWait.record(wait);
+            executorRun.record(run);
+        });
+        rateLimited = new LongAdder();
+    }
+
+    /**
+     * 服务注册
+     *
+     * @param serverAddr
+     */
+    public void register(ServerAddr serverAddr) {
+        BackendMetrics backend = backend(serverAddr.getKey());
+        backend.registerTime.set(System.nanoTime());
+        backend.firstRequestTime.set(0);
+    }
+
+    /**
+     * 服务移除（排空结束）
+     *
+     * @param serverAddr
+     */
+    public void remove(ServerAddr serverAddr) {
+        backendMap.remove(serverAddr.getKey());
+    }
+
+    /**
+     * 记录已转发的请求
+     *
+     * @param exchange
+     * @param signalType
+     * @param startTime  开始时间（纳秒）
+     */
+    public void request(ServerWebExchange exchange, SignalType signalType, long startTime) {
+        URI url = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+        // 仅统计已解析到具体服务的请求
+        if (Objects.isNull(url) || Objects.isNull(url.getRawAuthority()) || ServerBalancer.SCHEME.equals(url.getScheme())) {
+            return;
+        }
+
+        // 准入控制拒绝的请求没有转发到服务
+        String rejected = exchange.getAttribute(AdmissionGlobalFilter.REJECTED_ATTR);
+        if (AdmissionGlobalFilter.RATE.equals(rejected)) {
+            rateLimited.increment();
+            return;
+        }
+        if (AdmissionGlobalFilter.CONCURRENCY.equals(rejected)) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        BackendMetrics backend = backend(url.getRawAuthority());
+        backend.requests.increment();
+        Integer status = exchange.getResponse().getRawStatusCode();
+        if (signalType == SignalType.ON_ERROR || (Objects.nonNull(status) && status >= 500)) {
+            backend.errors.increment();
+        }
+        backend.latency.record(now - startTime);
+
+        // 注册后的第一个请求
+        if (backend.firstRequestTime.get() == 0 && backend.registerTime.get() != 0) {
+            backend.firstRequestTime.compareAndSet(0, now);
+        }
+    }
+
+    /**
+     * 记录健康探测结果
+     *
+     * @param serverAddr
+     * @param reachable
+     * @param rtt        往返耗时（纳秒）
+     */
+    public void probe(ServerAddr serverAddr, boolean reachable, long rtt) {
+        BackendMetrics backend = backend(serverAddr.getKey());
+        backend.up = reachable;
+        if (reachable) {
+            backend.probeRtt.record(rtt);
+        } else {
+            backend.probeFailures.increment();
+        }
+    }
+
+    /**
+     * 记录路由刷新耗时
+     *
+     * @param duration 纳秒
+     */
+    public void routeRefresh(long duration) {
+        routeRefresh.record(duration);
+    }
+
+    private BackendMetrics backend(String key) {
+        BackendMetrics backend = backendMap.get(key);
+        if (Objects.isNull(backend)) {
+            backend = backendMap.computeIfAbsent(key, k -> new BackendMetrics());
+        }
+        return backend;
+    }
+
+    /**
+     * 导出 Prometheus 文本格式
+     *
+     * @return
+     */
+    public synchronized String scrape() {
+        // 按服务排序，输出稳定
+        Map<String, BackendMetrics> backends = new TreeMap<>(backendMap);
+        StringBuilder builder = new StringBuilder(4096);
+
+        type(builder, "backend_requests_total", "counter", "Requests proxied to the backend");
+        backends.forEach((key, backend) -> sample(builder, "backend_requests_total", key, backend.requests.sum()));
+
+        type(builder, "backend_errors_total", "counter", "Proxied requests that failed or returned 5xx");
+        backends.forEach((key, backend) -> sample(builder, "backend_errors_total", key, backend.errors.sum()));
+
+        type(builder, "backend_inflight", "gauge", "Requests currently in flight to the backend");
+        backends.forEach((key, backend) -> sample(builder, "backend_inflight", key, inflightTracker.count(key)));
+
+        type(builder, "backend_ejected", "gauge", "Backend ejected by passive health checking (1 ejected, 0 not)");
+        backends.forEach((key, backend) -> sample(builder, "backend_ejected", key, outlierDetector.isEjected(key) ? 1 : 0));
+
+        if (concurrencyLimiter.isEnabled()) {
+            type(builder, "backend_concurrency_limit", "gauge", "Adaptive concurrency limit of the backend");
+            backends.forEach((key, backend) -> sample(builder, "backend_concurrency_limit", key, concurrencyLimiter.getLimit(key)));
+
+            type(builder, "backend_shed_total", "counter", "Requests rejected by the backend concurrency limit");
+            backends.forEach((key, backend) -> sample(builder, "backend_shed_total", key, concurrencyLimiter.getRejected(key)));
+        }
+
+        type(builder, "backend_latency_seconds", "histogram", "Proxied request latency");
+        backends.forEach((key, backend) -> histogram(builder, "backend_latency_seconds", key, backend.latency));
+
+        type(builder, "backend_first_request_seconds", "gauge", "Time from registration to the first proxied request");
+        backends.forEach((key, backend) -> {
+            long registerTime = backend.registerTime.get();
+            long firstRequestTime = backend.firstRequestTime.get();
+            if (registerTime != 0 && firstRequestTime != 0) {
+                sample(builder, "backend_first_request_seconds", key, (firstRequestTime - registerTime) / 1e9);
+            }
+        });
+
+        type(builder, "backend_up", "gauge", "Last health probe result (1 reachable, 0 unreachable)");
+        backends.forEach((key, backend) -> {
+            if (Objects.nonNull(backend.up)) {
+                sample(builder, "backend_up", key, backend.up ? 1 : 0);
+            }
+        });
+
+        type(builder, "probe_failures_total", "counter", "Failed health probes");
+        backends.forEach((key, backend) -> sample(builder, "probe_failures_total", key, backend.probeFailures.sum()));
+
+        type(builder, "probe_rtt_seconds", "histogram", "Health probe connect round-trip time");
+        backends.forEach((key, backend) -> histogram(builder, "probe_rtt_seconds", key, backend.probeRtt));
+
+        type(builder, "rate_limited_total", "counter", "Requests rejected by the per-client rate limit");
+        sample(builder, "rate_limited_total", null, rateLimited.sum());
+
+        type(builder, "retries_total", "counter", "Idempotent requests retried on another backend after a transport error");
+        sample(builder, "retries_total", null, retryBudget.getRetries());
+
+        type(builder, "hedges_total", "counter", "Hedged requests sent to another backend");
+        sample(builder, "hedges_total", null, retryBudget.getHedges());
+
+        type(builder, "hedge_wins_total", "counter", "Hedged requests that responded first");
+        sample(builder, "hedge_wins_total", null, retryBudget.getHedgeWins());
+
+        type(builder, "retry_budget_exhausted_total", "counter", "Retries and hedges skipped because the retry budget was exhausted");
+        sample(builder, "retry_budget_exhausted_total", null, retryBudget.getExhausted());
+
+        type(builder, "events_version", "gauge", "Version of the latest registry or route change event");
+        sample(builder, "events_version", null, registryEvents.getVersion());
+        type(builder, "events_subscribers", "gauge", "Open change event streams");
+        sample(builder, "events_subscribers", null, registryEvents.getSubscribers());
+
+        if (clusterNode.isEnabled()) {
+            type(builder, "cluster_entries", "gauge", "Registered servers in the replicated cluster registry");
+            sample(builder, "cluster_entries", null, clusterNode.getEntryCount());
+            type(builder, "cluster_peers_connected", "gauge", "Peer gateways with an open replication connection");
+            sample(builder, "cluster_peers_connected", null, clusterNode.getConnectedPeers());
+            type(builder, "cluster_deltas_sent_total", "counter", "Delta messages sent to peer gateways");
+            sample(builder, "cluster_deltas_sent_total", null, clusterNode.getDeltasSent());
+            type(builder, "cluster_entries_applied_total", "counter", "Entries received from peer gateways that were newer than the local copy");
+            sample(builder, "cluster_entries_applied_total", null, clusterNode.getEntriesApplied());
+        }
+
+        if (serverMirror.isEnabled()) {
+            type(builder, "mirror_requests_total", "counter", "Sampled requests copied to a candidate backend as shadow traffic");
+            sample(builder, "mirror_requests_total", null, serverMirror.getMirrored());
+            type(builder, "mirror_dropped_total", "counter", "Shadow requests skipped because max-inflight was reached");
+            sample(builder, "mirror_dropped_total", null, serverMirror.getDropped());
+            type(builder, "mirror_inflight", "gauge", "Shadow requests in flight to candidate backends");
+            sample(builder, "mirror_inflight", null, serverMirror.getInflight());
+        }
+
+        if (accessLog.isEnabled()) {
+            type(builder, "access_log_dropped_total", "counter", "Access log records dropped because the ring buffer was full");
+            sample(builder, "access_log_dropped_total", null, accessLog.getDropped());
+        }
+
+        if (responseCache.isEnabled()) {
+            type(builder, "cache_hits_total", "counter", "Response cache hits");
+            sample(builder, "cache_hits_total", null, responseCache.getHits());
+
+            type(builder, "cache_misses_total", "counter", "Response cache misses");
+            sample(builder, "cache_misses_total", null, responseCache.getMisses());
+
+            type(builder, "cache_memory_bytes", "gauge", "Response cache memory tier size");
+            sample(builder, "cache_memory_bytes", null, responseCache.getMemorySize());
+
+            type(builder, "cache_disk_bytes", "gauge", "Response cache disk tier size");
+            sample(builder, "cache_disk_bytes", null, responseCache.getDiskSize());
+        }
+
+        type(builder, "route_refresh_seconds", "histogram", "Route definition refresh duration");
+        histogram(builder, "route_refresh_seconds", null, routeRefresh);
+
+        type(builder, "executor_queue_size", "gauge", "ThreadExecutor queued tasks");
+        sample(builder, "executor_queue_size", null, threadExecutor.getQueueSize());
+        type(builder, "executor_active_threads", "gauge", "ThreadExecutor threads executing tasks");
+        sample(builder, "executor_active_threads", null, threadExecutor.getActiveCount());
+        type(builder, "executor_completed_total", "counter", "ThreadExecutor completed tasks");
+        sample(builder, "executor_completed_total", null, threadExecutor.getCompletedCount());
+        type(builder, "executor_coalesced_total", "counter", "ThreadExecutor tasks coalesced with an already queued task of the same key");
+        sample(builder, "executor_coalesced_total", null, threadExecutor.getCoalescedCount());
+        type(builder, "executor_rejected_total", "counter", "_api requests rejected with 503 because the ThreadExecutor queue was full");
+        sample(builder, "executor_rejected_total", null, threadExecutor.getRejectedCount());
+        type(builder, "executor_virtual_threads", "gauge", "ThreadExecutor runs tasks on virtual threads (1) or a platform thread pool (0)");
+        sample(builder, "executor_virtual_threads", null, threadExecutor.isVirtual() ? 1 : 0);
+
+        type(builder, "executor_task_wait_seconds", "histogram", "ThreadExecutor task queueing time");
+        histogram(builder, "executor_task_wait_seconds", null, executorWait);
+        type(builder, "executor_task_run_seconds", "histogram", "ThreadExecutor task execution time");
+        histogram(builder, "executor_task_run_seconds", null, executorRun);
+
+        return builder.toString();
+    }
+
+    private void type(StringBuilder builder, String name, String type, String help) {
+        builder.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        builder.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    private void sample(StringBuilder builder, String name, String backend, double value) {
+        sample(builder, name, backend, null, value);
+    }
+
+    private void sample(StringBuilder builder, String name, String backend, String le, double value) {
+        builder.append(PREFIX).append(name);
+        if (Objects.nonNull(backend) || Objects.nonNull(le)) {
+            builder.append('{');
+            if (Objects.nonNull(backend)) {
+                builder.append("backend=\"").append(backend).append('"');
+            }
+            if (Objects.nonNull(le)) {
+                builder.append(Objects.nonNull(backend) ? "," : "").append("le=\"").append(le).append('"');
+            }
+            builder.append('}');
+        }
+        builder.append(' ');
+        if (value == (long) value) {
+            builder.append((long) value);
+        } else {
+            builder.append(value);
+        }
+        builder.append('\n');
+    }
+
+    private void histogram(StringBuilder builder, String name, String backend, Timer timer) {
+        Histogram histogram = timer.snapshot();
+        for (double bucket : BUCKETS) {
+            long count = histogram.getTotalCount() == 0 ? 0 : histogram.getCountBetweenValues(0, (long) (bucket * 1e6));
+            sample(builder, name + "_bucket", backend, String.valueOf(bucket), count);
+        }
+        sample(builder, name + "_bucket", backend, "+Inf", histogram.getTotalCount());
+        sample(builder, name + "_sum", backend, timer.sum.sum() / 1e6);
+        sample(builder, name + "_count", backend, histogram.getTotalCount());
+    }
+
+    /**
+     * 耗时直方图（微秒）
+     * <p>
+     * 写入 {@link Recorder}（wait-free），导出时取出区间直方图累加到累计直方图。
+     */
+    private static class Timer {
+
+        // 2 位有效数字（1% 精度），控制每个直方图的内存占用
+        private final Recorder recorder = new Recorder(HIGHEST_MICROS, 2);
+        private final LongAdder sum = new LongAdder();
+
+        // 累计直方图，仅导出时访问
+        private final Histogram total = new Histogram(HIGHEST_MICROS, 2);
+        private Histogram interval;
+
+        /**
+         * @param duration 纳秒
+         */
+        private void record(long duration) {
+            long micros = Math.min(Math.max(duration / 1000, 0), HIGHEST_MICROS);
+            recorder.recordValue(micros);
+            sum.add(micros);
+        }
+
+        private synchronized Histogram snapshot() {
+            interval = recorder.getIntervalHistogram(interval);
+            total.add(interval);
+            return total;
+        }
+
+    }
+
+    private static class BackendMetrics {
+
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final Timer latency = new Timer();
+
+        // 注册时间、注册后第一个请求的时间（纳秒），0 表示未记录
+        private final AtomicLong registerTime = new AtomicLong();
+        private final AtomicLong firstRequestTime = new AtomicLong();
+
+        // 最近一次探测结果，null 表示未探测
+        private volatile Boolean up;
+        private final LongAdder probeFailures = new LongAdder();
+        private final Timer probeRtt = new Timer();
+
+    }
+
+}
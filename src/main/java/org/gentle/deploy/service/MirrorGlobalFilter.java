@@ -0,0 +1,51 @@
+package org.gentle.deploy.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.ReactiveLoadBalancerClientFilter;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.Objects;
+
+/**
+ * 影子流量：抽样复制请求给对比中的新服务（{@link ServerMirror}），原请求照常转发
+ * <p>
+ * 本过滤器链在收到服务响应头时结束（响应体由 NettyWriteResponseFilter 随后写出），耗时即首字节耗时。
+ *
+ * @author xiangqian
+ * @date 11:50 2026/10/26
+ */
+@Component
+public class MirrorGlobalFilter implements GlobalFilter, Ordered {
+
+    @Autowired
+    private ServerMirror serverMirror;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        ServerMirror.Tee tee = serverMirror.tee(exchange);
+        if (Objects.isNull(tee)) {
+            return chain.filter(exchange);
+        }
+
+        ServerWebExchange teeExchange = tee.exchange();
+        return chain.filter(teeExchange)
+                .doOnSuccess(unused -> {
+                    Integer status = teeExchange.getResponse().getRawStatusCode();
+                    tee.complete(Objects.isNull(status) ? -1 : status);
+                })
+                .doOnError(e -> tee.complete(-1))
+                .doOnCancel(() -> tee.complete(-1));
+    }
+
+    @Override
+    public int getOrder() {
+        // BalanceGlobalFilter 之后（已选定当前服务），RetryGlobalFilter 之前
+        return ReactiveLoadBalancerClientFilter.LOAD_BALANCER_CLIENT_FILTER_ORDER - 40;
+    }
+
+}
@@ -0,0 +1,157 @@
+package org.gentle.deploy.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import reactor.core.Disposable;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 影子流量对比状态
+ * <p>
+ * 每个样本是同一个请求在当前服务（primary）和新服务（candidate）上的一次转发，
+ * 记录两边的首字节耗时和响应状态码，状态码不同（含新服务请求失败）计为不一致。
+ *
+ * @author xiangqian
+ * @date 10:40 2026/10/26
+ */
+@Data
+public class MirrorState {
+
+    public static final String MIRRORING = "mirroring";
+    public static final String REJECTED = "rejected";
+
+    // 直方图最大记录值（微秒），超出按最大值记录
+    private static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    private final String app;
+
+    private final ServerAddr serverAddr;
+
+    // 对比的服务（开始时接收流量的服务）
+    private final ServerAddr baseline;
+
+    // 开始时间
+    private final long startTime;
+
+    // 截止时间
+    private final long deadline;
+
+    // mirroring：复制流量中；rejected：样本足够但未通过对比，不接收流量，等待手动切换或移除
+    private volatile String status = MIRRORING;
+
+    @JsonIgnore
+    private final LongAdder sampleCount = new LongAdder();
+
+    // 状态码不一致的样本数（含新服务请求失败）
+    @JsonIgnore
+    private final LongAdder mismatchCount = new LongAdder();
+
+    // 新服务请求失败（连接失败、超时）的样本数
+    @JsonIgnore
+    private final LongAdder errorCount = new LongAdder();
+
+    // 首字节耗时（微秒），记录无锁，读取时汇总
+    @JsonIgnore
+    private final Recorder primaryRecorder = new Recorder(HIGHEST_MICROS, 2);
+    @JsonIgnore
+    private final Recorder candidateRecorder = new Recorder(HIGHEST_MICROS, 2);
+    @JsonIgnore
+    private final Histogram primaryLatency = new Histogram(HIGHEST_MICROS, 2);
+    @JsonIgnore
+    private final Histogram candidateLatency = new Histogram(HIGHEST_MICROS, 2);
+    @JsonIgnore
+    private Histogram primaryInterval;
+    @JsonIgnore
+    private Histogram candidateInterval;
+
+    @JsonIgnore
+    private volatile Disposable disposable;
+
+    /**
+     * 记录一个样本
+     *
+     * @param primaryStatus   当前服务的响应状态码，-1 表示转发失败
+     * @param primaryNanos    当前服务的首字节耗时（纳秒）
+     * @param candidateStatus 新服务的响应状态码，-1 表示请求失败
+     * @param candidateNanos  新服务的首字节耗时（纳秒）
+     */
+    public void record(int primaryStatus, long primaryNanos, int candidateStatus, long candidateNanos) {
+        sampleCount.increment();
+        if (candidateStatus < 0) {
+            errorCount.increment();
+        }
+        if (candidateStatus != primaryStatus) {
+            mismatchCount.increment();
+        }
+        if (primaryStatus >= 0) {
+            primaryRecorder.recordValue(toMicros(primaryNanos));
+        }
+        if (candidateStatus >= 0) {
+            candidateRecorder.recordValue(toMicros(candidateNanos));
+        }
+    }
+
+    private long toMicros(long nanos) {
+        return Math.min(Math.max(nanos / 1000, 0), HIGHEST_MICROS);
+    }
+
+    public long getSamples() {
+        return sampleCount.sum();
+    }
+
+    public long getMismatches() {
+        return mismatchCount.sum();
+    }
+
+    public long getErrors() {
+        return errorCount.sum();
+    }
+
+    /**
+     * 状态码不一致的比例（%）
+     *
+     * @return
+     */
+    public double getMismatchPercent() {
+        long samples = getSamples();
+        return samples == 0 ? 0 : getMismatches() * 100.0 / samples;
+    }
+
+    public double getPrimaryP50() {
+        return percentile(false, 50);
+    }
+
+    public double getPrimaryP99() {
+        return percentile(false, 99);
+    }
+
+    public double getCandidateP50() {
+        return percentile(true, 50);
+    }
+
+    public double getCandidateP99() {
+        return percentile(true, 99);
+    }
+
+    /**
+     * 首字节耗时分位数
+     *
+     * @param candidate 新服务或当前服务
+     * @param p
+     * @return 毫秒，没有样本时返回 -1
+     */
+    public synchronized double percentile(boolean candidate, double p) {
+        primaryInterval = primaryRecorder.getIntervalHistogram(primaryInterval);
+        primaryLatency.add(primaryInterval);
+        candidateInterval = candidateRecorder.getIntervalHistogram(candidateInterval);
+        candidateLatency.add(candidateInterval);
+
+        Histogram histogram = candidate ? candidateLatency : primaryLatency;
+        return histogram.getTotalCount() == 0 ? -1 : histogram.getValueAtPercentile(p) / 1000.0;
+    }
+
+}
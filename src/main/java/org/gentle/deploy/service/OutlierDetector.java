@@ -0,0 +1,337 @@
+package org.gentle.deploy.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 被动健康检测（异常服务摘除）
+ * <p>
+ * 根据真实转发请求的结果（响应状态、连接失败、耗时）按服务统计滑动窗口，满足任一条件立即摘除服务并刷新路由：
+ * 1、连接失败（服务已停止）；
+ * 2、连续失败次数达到 consecutive-failures；
+ * 3、窗口内请求数不少于 min-requests，且失败率或慢请求率达到阈值。
+ * <p>
+ * 摘除时长按摘除次数指数退避（ejection-time * 2^(n-1)，不超过 max-ejection-time），到期后自动恢复；
+ * 恢复后 max-ejection-time 内未再被摘除则重置退避。
+ *
+ * @author xiangqian
+ * @date 16:05 2026/10/21
+ */
+@Slf4j
+@Component
+public class OutlierDetector {
+
+    // 滑动窗口分段数
+    private static final int BUCKETS = 10;
+
+    @Value("${server.outlier.enabled:true}")
+    private boolean enabled;
+
+    // 滑动窗口（毫秒）
+    @Value("${server.outlier.window:10000}")
+    private long window;
+
+    // 窗口内最少请求数，少于该值时不按比例判断
+    @Value("${server.outlier.min-requests:10}")
+    private int minRequests;
+
+    // 失败率阈值（%）
+    @Value("${server.outlier.failure-rate:50}")
+    private int failureRate;
+
+    // 连续失败次数阈值
+    @Value("${server.outlier.consecutive-failures:5}")
+    private int consecutiveFailures;
+
+    // 慢请求阈值（毫秒）及慢请求率阈值（%）
+    @Value("${server.outlier.slow-threshold:5000}")
+    private long slowThreshold;
+    @Value("${server.outlier.slow-rate:50}")
+    private int slowRate;
+
+    // 首次摘除时长、最大摘除时长（毫秒）
+    @Value("${server.outlier.ejection-time:5000}")
+    private long ejectionTime;
+    @Value("${server.outlier.max-ejection-time:300000}")
+    private long maxEjectionTime;
+
+    // key: host:port
+    private Map<String, Outlier> outlierMap;
+
+    @Autowired
+    private RegistryEvents registryEvents;
+
+    // 摘除或恢复时回调（刷新路由）
+    private volatile Runnable onChange;
+
+    @PostConstruct
+    public void init() {
+        outlierMap = new ConcurrentHashMap<>();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getSlowThreshold() {
+        return slowThreshold;
+    }
+
+    public void onChange(Runnable onChange) {
+        this.onChange = onChange;
+    }
+
+    /**
+     * 记录请求结果
+     *
+     * @param key           host:port
+     * @param failure       是否失败（5xx、连接异常等）
+     * @param connectFailed 是否连接失败
+     * @param latency       耗时（毫秒）
+     */
+    public void record(String key, boolean failure, boolean connectFailed, long latency) {
+        if (!enabled) {
+            return;
+        }
+
+        Outlier outlier = outlierMap.get(key);
+        if (Objects.isNull(outlier)) {
+            outlier = outlierMap.computeIfAbsent(key, k -> new Outlier(window / BUCKETS));
+        }
+        // 已摘除，忽略摘除前发出的请求
+        if (outlier.ejected) {
+            return;
+        }
+
+        boolean slow = latency >= slowThreshold;
+        long now = System.currentTimeMillis();
+        outlier.record(now, failure, slow);
+        if (!failure && !slow) {
+            if (outlier.consecutiveFailures.get() != 0) {
+                outlier.consecutiveFailures.set(0);
+            }
+            return;
+        }
+
+        // 仅在失败或慢请求时判断，成功请求不汇总窗口
+        String reason = null;
+        int consecutive = failure ? outlier.consecutiveFailures.incrementAndGet() : outlier.consecutiveFailures.get();
+        if (connectFailed) {
+            reason = "连接失败";
+        } else if (consecutive >= consecutiveFailures) {
+            reason = "连续失败 " + consecutive + " 次";
+        } else {
+            long[] sum = outlier.sum(now);
+            long requests = sum[0];
+            if (requests >= minRequests) {
+                if (sum[1] * 100 >= requests * failureRate) {
+                    reason = String.format("失败率 %d/%d", sum[1], requests);
+                } else if (sum[2] * 100 >= requests * slowRate) {
+                    reason = String.format("慢请求率 %d/%d", sum[2], requests);
+                }
+            }
+        }
+
+        if (Objects.nonNull(reason)) {
+            eject(key, outlier, reason);
+        }
+    }
+
+    private void eject(String key, Outlier outlier, String reason) {
+        long duration;
+        synchronized (outlier) {
+            if (outlier.ejected || outlierMap.get(key) != outlier) {
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            // 恢复后长时间稳定，重置退避
+            if (now - outlier.readmitTime > maxEjectionTime) {
+                outlier.ejections = 0;
+            }
+            outlier.ejections++;
+            duration = Math.min(ejectionTime << Math.min(outlier.ejections - 1, 20), maxEjectionTime);
+            outlier.ejectUntil = now + duration;
+            outlier.ejected = true;
+            outlier.disposable = Mono.delay(Duration.ofMillis(duration)).subscribe(tick -> readmit(key, outlier));
+        }
+        log.warn("摘除异常服务: {}, 原因: {}, 摘除时长: {}ms, 累计摘除次数: {}", key, reason, duration, outlier.ejections);
+        registryEvents.publish(RegistryEvents.HEALTH, null, key, "ejected");
+        fireChange();
+    }
+
+    private void readmit(String key, Outlier outlier) {
+        synchronized (outlier) {
+            if (!outlier.ejected || outlierMap.get(key) != outlier) {
+                return;
+            }
+
+            outlier.ejected = false;
+            outlier.readmitTime = System.currentTimeMillis();
+            outlier.reset();
+        }
+        log.info("恢复服务: {}", key);
+        registryEvents.publish(RegistryEvents.HEALTH, null, key, "readmitted");
+        fireChange();
+    }
+
+    private void fireChange() {
+        Runnable onChange = this.onChange;
+        if (Objects.nonNull(onChange)) {
+            try {
+                onChange.run();
+            } catch (Exception e) {
+                log.error("", e);
+            }
+        }
+    }
+
+    public boolean isEjected(ServerAddr serverAddr) {
+        return isEjected(serverAddr.getKey());
+    }
+
+    public boolean isEjected(String key) {
+        Outlier outlier = outlierMap.get(key);
+        return Objects.nonNull(outlier) && outlier.ejected;
+    }
+
+    /**
+     * 清除服务状态（服务重新注册或已移除）
+     *
+     * @param serverAddr
+     */
+    public void remove(ServerAddr serverAddr) {
+        Outlier outlier = outlierMap.remove(serverAddr.getKey());
+        if (Objects.nonNull(outlier)) {
+            synchronized (outlier) {
+                if (Objects.nonNull(outlier.disposable)) {
+                    outlier.disposable.dispose();
+                }
+            }
+        }
+    }
+
+    public List<OutlierState> list() {
+        long now = System.currentTimeMillis();
+        List<OutlierState> list = new ArrayList<>(outlierMap.size());
+        outlierMap.forEach((key, outlier) -> {
+            long[] sum = outlier.sum(now);
+            list.add(new OutlierState(key, outlier.ejected, outlier.ejectUntil, outlier.ejections, sum[0], sum[1], sum[2]));
+        });
+        return list;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        outlierMap.values().forEach(outlier -> {
+            if (Objects.nonNull(outlier.disposable)) {
+                outlier.disposable.dispose();
+            }
+        });
+    }
+
+    /**
+     * 单个服务的滑动窗口及摘除状态
+     * <p>
+     * 窗口按时间分为 {@link #BUCKETS} 段，每段记录所属时间段编号，写入时发现过期则清零复用。
+     */
+    private static class Outlier {
+
+        private final long bucketMillis;
+        private final AtomicLongArray epochs;
+        private final LongAdder[] requests;
+        private final LongAdder[] failures;
+        private final LongAdder[] slows;
+
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+        private volatile boolean ejected;
+        private volatile long ejectUntil;
+        private volatile int ejections;
+        private volatile long readmitTime;
+        private Disposable disposable;
+
+        private Outlier(long bucketMillis) {
+            this.bucketMillis = Math.max(bucketMillis, 1);
+            this.epochs = new AtomicLongArray(BUCKETS);
+            this.requests = new LongAdder[BUCKETS];
+            this.failures = new LongAdder[BUCKETS];
+            this.slows = new LongAdder[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                requests[i] = new LongAdder();
+                failures[i] = new LongAdder();
+                slows[i] = new LongAdder();
+            }
+        }
+
+        private void record(long now, boolean failure, boolean slow) {
+            long epoch = now / bucketMillis;
+            int index = (int) (epoch % BUCKETS);
+            if (epochs.get(index) != epoch) {
+                synchronized (this) {
+                    if (epochs.get(index) != epoch) {
+                        requests[index].reset();
+                        failures[index].reset();
+                        slows[index].reset();
+                        epochs.set(index, epoch);
+                    }
+                }
+            }
+
+            requests[index].increment();
+            if (failure) {
+                failures[index].increment();
+            }
+            if (slow) {
+                slows[index].increment();
+            }
+        }
+
+        /**
+         * 汇总窗口内的请求数、失败数、慢请求数
+         *
+         * @param now
+         * @return
+         */
+        private long[] sum(long now) {
+            long epoch = now / bucketMillis;
+            long[] sum = new long[3];
+            for (int i = 0; i < BUCKETS; i++) {
+                if (epoch - epochs.get(i) < BUCKETS) {
+                    sum[0] += requests[i].sum();
+                    sum[1] += failures[i].sum();
+                    sum[2] += slows[i].sum();
+                }
+            }
+            return sum;
+        }
+
+        private synchronized void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                epochs.set(i, 0);
+                requests[i].reset();
+                failures[i].reset();
+                slows[i].reset();
+            }
+            consecutiveFailures.set(0);
+        }
+
+    }
+
+}
@@ -0,0 +1,81 @@
+package org.gentle.deploy.service;
+
+import io.netty.channel.ConnectTimeoutException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.ReactiveLoadBalancerClientFilter;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.ConnectException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 根据真实转发结果做被动健康检测，由 {@link OutlierDetector} 判断是否摘除服务
+ * <p>
+ * 本过滤器链在收到服务响应头时结束（响应体由 NettyWriteResponseFilter 随后写出），耗时即首字节耗时。
+ *
+ * @author xiangqian
+ * @date 16:40 2026/10/21
+ */
+@Component
+public class OutlierGlobalFilter implements GlobalFilter, Ordered {
+
+    @Autowired
+    private OutlierDetector outlierDetector;
+
+    // 等待响应头超时（毫秒），超时返回 504 并计为失败，0 表示不限制
+    @Value("${server.outlier.response-timeout:0}")
+    private long responseTimeout;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        URI url = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+        if (!outlierDetector.isEnabled() || Objects.isNull(url) || Objects.isNull(url.getRawAuthority())
+                || ServerBalancer.SCHEME.equals(url.getScheme())) {
+            return chain.filter(exchange);
+        }
+
+        String key = url.getRawAuthority();
+        long startTime = System.nanoTime();
+        Mono<Void> mono = chain.filter(exchange);
+        if (responseTimeout > 0) {
+            mono = mono.timeout(Duration.ofMillis(responseTimeout))
+                    .onErrorMap(TimeoutException.class, e -> new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, e.getMessage(), e));
+        }
+        return mono.doOnSuccess(unused -> {
+            Integer status = exchange.getResponse().getRawStatusCode();
+            boolean failure = Objects.nonNull(status) && status >= 500;
+            outlierDetector.record(key, failure, false, (System.nanoTime() - startTime) / 1_000_000);
+        }).doOnError(e -> outlierDetector.record(key, true, isConnectFailed(e), (System.nanoTime() - startTime) / 1_000_000));
+    }
+
+    private boolean isConnectFailed(Throwable e) {
+        for (Throwable cause = e; Objects.nonNull(cause); cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof ConnectTimeoutException) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int getOrder() {
+        // InflightGlobalFilter 之后
+        return ReactiveLoadBalancerClientFilter.LOAD_BALANCER_CLIENT_FILTER_ORDER + 2;
+    }
+
+}
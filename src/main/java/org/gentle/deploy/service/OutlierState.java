@@ -0,0 +1,31 @@
+package org.gentle.deploy.service;
+
+import lombok.Data;
+
+/**
+ * 服务异常检测状态
+ *
+ * @author xiangqian
+ * @date 16:20 2026/10/21
+ */
+@Data
+public class OutlierState {
+
+    // host:port
+    private final String key;
+
+    // 是否已摘除
+    private final boolean ejected;
+
+    // 摘除截止时间，到期后恢复
+    private final long ejectUntil;
+
+    // 累计摘除次数（决定下一次摘除时长）
+    private final int ejections;
+
+    // 滑动窗口内的请求数、失败数、慢请求数
+    private final long requests;
+    private final long failures;
+    private final long slows;
+
+}
@@ -0,0 +1,53 @@
+package org.gentle.deploy.service;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.netty.http.client.HttpClient;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 转发请求时使用目标服务独立的连接池（{@link ServerPools}），没有连接池的目标（如配置文件中的路由）使用网关默认的 HttpClient
+ * <p>
+ * 排在网关默认的 NettyRoutingFilter 之前，转发后标记请求已路由（alreadyRouted），默认的 NettyRoutingFilter 不再重复转发。
+ *
+ * @author xiangqian
+ * @date 20:30 2026/10/22
+ */
+@Component
+public class PooledRoutingFilter extends NettyRoutingFilter {
+
+    @Autowired
+    private ServerPools serverPools;
+
+    public PooledRoutingFilter(HttpClient httpClient, ObjectProvider<List<HttpHeadersFilter>> headersFiltersProvider, HttpClientProperties properties) {
+        super(httpClient, headersFiltersProvider, properties);
+    }
+
+    @Override
+    public int getOrder() {
+        return NettyRoutingFilter.ORDER - 1;
+    }
+
+    @Override
+    protected HttpClient getHttpClient(Route route, ServerWebExchange exchange) {
+        URI url = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+        if (Objects.nonNull(url) && Objects.nonNull(url.getRawAuthority())) {
+            HttpClient httpClient = serverPools.get(url.getRawAuthority());
+            if (Objects.nonNull(httpClient)) {
+                return httpClient;
+            }
+        }
+        return super.getHttpClient(route, exchange);
+    }
+
+}
@@ -0,0 +1,28 @@
+package org.gentle.deploy.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 服务探测结果（不可变）
+ *
+ * @author xiangqian
+ * @date 21:06 2026/10/18
+ */
+@Data
+@AllArgsConstructor
+public class ProbeStatus {
+
+    // 是否可达（连续失败次数达到阈值前仍为 true）
+    private final boolean reachable;
+
+    // 连接耗时（毫秒），不可达时为 -1
+    private final long rtt;
+
+    // 探测时间
+    private final long time;
+
+    // 连续失败次数
+    private final int failures;
+
+}
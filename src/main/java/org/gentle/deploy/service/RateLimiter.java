@@ -0,0 +1,140 @@
+package org.gentle.deploy.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按 客户端地址 + 路由 限流（令牌桶），不依赖 Redis 等外部服务
+ * <p>
+ * 令牌桶按 GCRA（Generic Cell Rate Algorithm）实现：每个 key 只保存一个理论到达时间（TAT），
+ * 通过 CAS 更新，无锁；key 按哈希分段（stripe）保存在有上限的 LRU 中，每段单独加锁，只在查找、插入 key 时持有，
+ * 超过上限时淘汰最久未访问的 key（被淘汰的 key 再次访问时按满桶处理）。
+ *
+ * @author xiangqian
+ * @date 14:10 2026/10/23
+ */
+@Component
+public class RateLimiter {
+
+    @Value("${server.rate-limit.enabled:false}")
+    private boolean enabled;
+
+    // 每个 key 每秒生成的令牌数
+    @Value("${server.rate-limit.rate:100}")
+    private double rate;
+
+    // 桶容量（允许的突发请求数）
+    @Value("${server.rate-limit.burst:200}")
+    private int burst;
+
+    // 分段数，向上取 2 的幂
+    @Value("${server.rate-limit.stripes:64}")
+    private int stripes;
+
+    // 最多保存的 key 数
+    @Value("${server.rate-limit.max-keys:100000}")
+    private int maxKeys;
+
+    // 生成一个令牌的时间（纳秒）
+    private long interval;
+
+    // 桶容量对应的时间（纳秒）
+    private long capacity;
+
+    private Stripe[] stripeArray;
+
+    @PostConstruct
+    public void init() {
+        interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+        capacity = interval * Math.max(1, burst);
+
+        int n = 1;
+        while (n < stripes) {
+            n <<= 1;
+        }
+        int maxKeysPerStripe = Math.max(1, maxKeys / n);
+        stripeArray = new Stripe[n];
+        for (int i = 0; i < n; i++) {
+            stripeArray[i] = new Stripe(maxKeysPerStripe);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 获取一个令牌
+     *
+     * @param key
+     * @return 0 表示通过，大于 0 表示被限流，值为需要等待的时间（纳秒）
+     */
+    public long acquire(String key) {
+        AtomicLong tat = bucket(key);
+        long now = System.nanoTime();
+        while (true) {
+            long current = tat.get();
+            long next = (current - now > 0 ? current : now) + interval;
+            long wait = next - now - capacity;
+            if (wait > 0) {
+                return wait;
+            }
+            if (tat.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    private AtomicLong bucket(String key) {
+        int h = key.hashCode();
+        Stripe stripe = stripeArray[(h ^ (h >>> 16)) & (stripeArray.length - 1)];
+        synchronized (stripe) {
+            AtomicLong tat = stripe.get(key);
+            if (Objects.isNull(tat)) {
+                // 满桶
+                tat = new AtomicLong(System.nanoTime() - capacity);
+                stripe.put(key, tat);
+            }
+            return tat;
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripeArray) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 一段 key，按访问顺序排列的 LRU
+     */
+    private static class Stripe extends LinkedHashMap<String, AtomicLong> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maxKeys;
+
+        private Stripe(int maxKeys) {
+            super(16, 0.75f, true);
+            this.maxKeys = maxKeys;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, AtomicLong> eldest) {
+            return size() > maxKeys;
+        }
+
+    }
+
+}
@@ -0,0 +1,265 @@
+package org.gentle.deploy.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 注册表、路由变更事件
+ * <p>
+ * 每个变更（注册、移除、健康状态变化、路由切换）分配一个单调递增的版本号，事件在发布时序列化一次（SSE 帧），
+ * 所有订阅者共享同一份字节；最近 history 个事件保留在回放缓冲区，断线重连（Last-Event-ID / sinceVersion）时补发，
+ * 超出缓冲区时先发送完整的状态快照。状态快照按版本缓存，状态未变化时不再重新序列化。
+ * <p>
+ * 事件在状态变更之后发布：版本 v 的快照包含版本号不大于 v 的所有变更。
+ *
+ * @author xiangqian
+ * @date 14:20 2026/10/25
+ */
+@Slf4j
+@Component
+public class RegistryEvents {
+
+    public static final String REGISTER = "register";
+    public static final String EVICT = "evict";
+    public static final String HEALTH = "health";
+    public static final String ROUTE = "route";
+
+    private static final String SNAPSHOT = "snapshot";
+
+    // SSE 注释行，保持连接
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+
+    // 回放缓冲区保留的事件数
+    @Value("${server.events.history:1000}")
+    private int history;
+
+    // 心跳间隔（毫秒）
+    @Value("${server.events.heartbeat-interval:15000}")
+    private long heartbeatInterval;
+
+    // 长轮询最长等待时间（毫秒）
+    @Value("${server.events.poll-timeout:30000}")
+    private long pollTimeout;
+
+    // 单个订阅者未发送的最大事件数，超过后断开（客户端重连后从快照恢复）
+    @Value("${server.events.max-pending:1000}")
+    private int maxPending;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ThreadExecutor threadExecutor;
+
+    private Sinks.Many<Frame> sink;
+
+    // 当前版本，仅在持有锁时修改
+    private volatile long version;
+
+    private volatile Snapshot snapshot;
+
+    private final Object snapshotLock = new Object();
+
+    private final AtomicInteger subscribers = new AtomicInteger();
+
+    @PostConstruct
+    public void init() {
+        sink = Sinks.many().replay().limit(history);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getSubscribers() {
+        return subscribers.get();
+    }
+
+    /**
+     * 发布事件
+     *
+     * @param type   register、evict、health、route
+     * @param app    应用名（路由 id），健康事件为 null
+     * @param server host:port，路由事件为 null
+     * @param detail 原因、状态或路由 uri
+     */
+    public void publish(String type, String app, String server, String detail) {
+        Event event = new Event();
+        event.type = type;
+        event.app = app;
+        event.server = server;
+        event.detail = detail;
+        event.time = System.currentTimeMillis();
+
+        synchronized (this) {
+            event.version = version + 1;
+            byte[] data;
+            try {
+                data = objectMapper.writeValueAsBytes(event);
+            } catch (JsonProcessingException e) {
+                log.error("", e);
+                return;
+            }
+            version = event.version;
+            sink.tryEmitNext(new Frame(event.version, frame(event.version, type, data)));
+        }
+        log.debug("变更事件: {}", event);
+    }
+
+    /**
+     * 状态快照（按版本缓存）
+     *
+     * @param state 当前状态，读取时状态已包含当前版本及之前的所有变更
+     * @return
+     */
+    public Snapshot snapshot(Supplier<Map<String, Object>> state) {
+        Snapshot snapshot = this.snapshot;
+        long version = this.version;
+        if (Objects.nonNull(snapshot) && snapshot.version == version) {
+            return snapshot;
+        }
+
+        synchronized (snapshotLock) {
+            snapshot = this.snapshot;
+            version = this.version;
+            if (Objects.nonNull(snapshot) && snapshot.version == version) {
+                return snapshot;
+            }
+
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("version", version);
+            map.putAll(state.get());
+            byte[] json;
+            try {
+                json = objectMapper.writeValueAsBytes(map);
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException(e);
+            }
+            snapshot = new Snapshot(version, json, frame(version, SNAPSHOT, json));
+            this.snapshot = snapshot;
+            return snapshot;
+        }
+    }
+
+    /**
+     * 长轮询：版本大于 sinceVersion 时立即返回快照，否则等待下一个事件
+     *
+     * @param sinceVersion
+     * @param timeout      毫秒，小于等于 0 或超过 poll-timeout 时取 poll-timeout
+     * @param state
+     * @return 超时时为空
+     */
+    public Mono<Snapshot> poll(long sinceVersion, long timeout, Supplier<Map<String, Object>> state) {
+        // 先订阅事件再检查版本，不会漏掉两者之间发布的事件
+        return Flux.merge(sink.asFlux().filter(frame -> frame.version > sinceVersion).take(1).map(frame -> true),
+                        Mono.fromSupplier(() -> version != sinceVersion).filter(Boolean::booleanValue))
+                .next()
+                .timeout(Duration.ofMillis(timeout <= 0 ? pollTimeout : Math.min(timeout, pollTimeout)), Mono.empty())
+                // 事件在发布线程上到达（可能持有 ServerManager 锁），在 ThreadExecutor 上生成快照
+                .publishOn(threadExecutor.getScheduler())
+                .map(changed -> snapshot(state));
+    }
+
+    /**
+     * 事件流（SSE 帧）
+     * <p>
+     * sinceVersion 在回放缓冲区内时补发之后的事件，否则（含未指定）先发送快照，再发送快照之后的事件。
+     *
+     * @param sinceVersion 小于 0 表示未指定
+     * @param state
+     * @return
+     */
+    public Flux<byte[]> stream(long sinceVersion, Supplier<Map<String, Object>> state) {
+        return Flux.defer(() -> {
+            long current = version;
+            Flux<byte[]> head = Flux.empty();
+            long from = sinceVersion;
+            if (sinceVersion < 0 || sinceVersion > current || sinceVersion < current - history) {
+                Snapshot snapshot = snapshot(state);
+                head = Flux.just(snapshot.frame);
+                from = snapshot.version;
+            }
+
+            long after = from;
+            Flux<byte[]> events = sink.asFlux()
+                    .filter(frame -> frame.version > after)
+                    .map(frame -> frame.bytes)
+                    .onBackpressureBuffer(maxPending, BufferOverflowStrategy.ERROR);
+            Flux<byte[]> heartbeat = Flux.interval(Duration.ofMillis(heartbeatInterval)).map(tick -> HEARTBEAT);
+            return Flux.concat(head, Flux.merge(events, heartbeat));
+        }).doOnSubscribe(subscription -> subscribers.incrementAndGet())
+                .doFinally(signalType -> subscribers.decrementAndGet());
+    }
+
+    private byte[] frame(long version, String type, byte[] data) {
+        byte[] head = ("id: " + version + "\nevent: " + type + "\ndata: ").getBytes(StandardCharsets.UTF_8);
+        byte[] frame = new byte[head.length + data.length + 2];
+        System.arraycopy(head, 0, frame, 0, head.length);
+        System.arraycopy(data, 0, frame, head.length, data.length);
+        frame[frame.length - 2] = '\n';
+        frame[frame.length - 1] = '\n';
+        return frame;
+    }
+
+    @Data
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private static class Event {
+        private long version;
+        private String type;
+        private String app;
+        private String server;
+        private String detail;
+        private long time;
+    }
+
+    @AllArgsConstructor
+    private static class Frame {
+        private final long version;
+        private final byte[] bytes;
+    }
+
+    /**
+     * 状态快照
+     */
+    @AllArgsConstructor
+    public static class Snapshot {
+
+        private final long version;
+
+        // JSON
+        private final byte[] json;
+
+        // SSE 帧
+        private final byte[] frame;
+
+        public long getVersion() {
+            return version;
+        }
+
+        public byte[] getJson() {
+            return json;
+        }
+
+    }
+
+}
@@ -0,0 +1,419 @@
+package org.gentle.deploy.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * 服务注册日志
+ * <p>
+ * 注册、移除服务时追加写入日志（registry.journal），每条记录：长度(4) + CRC32(4) + [序号(8) + 类型(1) + 内容]，
+ * 内容包含应用名、路径前缀和域名（早期不含应用的记录按默认应用回放）；
+ * 日志记录数达到 compact-threshold 后，将当前注册表写入快照（registry.snapshot，先写临时文件再原子重命名），并清空日志。
+ * <p>
+ * 启动时通过内存映射读取快照和日志，回放序号大于快照序号的记录，恢复上次各应用的注册表（栈底 -> 栈顶）；
+ * 日志末尾不完整或 CRC 校验失败的记录（写入时进程崩溃）被截断丢弃。
+ *
+ * @author xiangqian
+ * @date 19:30 2026/10/21
+ */
+@Slf4j
+@Component
+public class RegistryJournal {
+
+    private static final int SNAPSHOT_MAGIC = 0x47445301;
+
+    // 默认应用的记录（不含应用名）
+    private static final byte REGISTER = 1;
+    private static final byte REMOVE = 2;
+
+    private static final byte REGISTER_APP = 3;
+    private static final byte REMOVE_APP = 4;
+
+    // 记录头：长度 + CRC32
+    private static final int HEADER_SIZE = 8;
+
+    @Value("${server.journal.enabled:true}")
+    private boolean enabled;
+
+    @Value("${server.journal.dir:data}")
+    private String dir;
+
+    // 每次追加后是否刷盘（fsync），关闭时仅保证进程崩溃不丢失（写入页缓存）
+    @Value("${server.journal.fsync:false}")
+    private boolean fsync;
+
+    // 日志记录数达到该值后生成快照
+    @Value("${server.journal.compact-threshold:1000}")
+    private int compactThreshold;
+
+    private Path journalPath;
+    private Path snapshotPath;
+    private FileChannel journalChannel;
+
+    // 当前注册表副本，用于生成快照，key: 应用名
+    private final Map<String, App> registry = new LinkedHashMap<>();
+
+    private long seq;
+    private int journalRecords;
+
+    /**
+     * 回放快照和日志，恢复注册表并打开日志用于追加
+     *
+     * @return 上次注册的应用
+     */
+    public synchronized List<App> replay() {
+        if (!enabled || Objects.nonNull(journalChannel)) {
+            return copy();
+        }
+
+        long start = System.nanoTime();
+        try {
+            Path dirPath = Paths.get(dir);
+            Files.createDirectories(dirPath);
+            journalPath = dirPath.resolve("registry.journal");
+            snapshotPath = dirPath.resolve("registry.snapshot");
+
+            long snapshotSeq = readSnapshot();
+            seq = snapshotSeq;
+            long validSize = readJournal(snapshotSeq);
+
+            journalChannel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            if (journalChannel.size() > validSize) {
+                log.warn("截断注册日志末尾不完整的记录: {} -> {} bytes", journalChannel.size(), validSize);
+                journalChannel.truncate(validSize);
+            }
+            journalChannel.position(validSize);
+        } catch (IOException e) {
+            log.error("读取注册日志失败，不再持久化注册表", e);
+            enabled = false;
+            closeQuietly();
+        }
+
+        log.info("已恢复注册表: {}, 耗时: {}ms", registry.values(), (System.nanoTime() - start) / 1_000_000.0);
+        return copy();
+    }
+
+    private List<App> copy() {
+        List<App> apps = new ArrayList<>(registry.size());
+        registry.values().forEach(app -> apps.add(app.copy()));
+        return apps;
+    }
+
+    public synchronized void register(App app, ServerAddr serverAddr) {
+        Record record = new Record();
+        record.type = REGISTER_APP;
+        record.app = app.getName();
+        record.prefix = app.getPrefix();
+        record.domain = app.getDomain();
+        record.serverAddr = serverAddr.copy();
+        apply(record);
+        append(record);
+    }
+
+    public synchronized void remove(App app, ServerAddr serverAddr) {
+        App replica = registry.get(app.getName());
+        if (Objects.isNull(replica) || !replica.getRegistry().contains(serverAddr.getKey())) {
+            return;
+        }
+
+        Record record = new Record();
+        record.type = REMOVE_APP;
+        record.app = app.getName();
+        record.serverAddr = serverAddr;
+        apply(record);
+        append(record);
+    }
+
+    /**
+     * 将记录应用到注册表副本
+     *
+     * @param record
+     */
+    private void apply(Record record) {
+        String key = record.serverAddr.getKey();
+        if (record.type == REGISTER || record.type == REGISTER_APP) {
+            App app = registry.computeIfAbsent(record.app, App::new);
+            app.setPrefix(record.prefix);
+            app.setDomain(record.domain);
+            app.getRegistry().register(record.serverAddr);
+            return;
+        }
+
+        App app = registry.get(record.app);
+        if (Objects.nonNull(app)) {
+            app.getRegistry().remove(key);
+            // 应用的服务全部移除后不再保留
+            if (app.getStack().isEmpty()) {
+                registry.remove(record.app);
+            }
+        }
+    }
+
+    private void append(Record record) {
+        if (!enabled || Objects.isNull(journalChannel)) {
+            return;
+        }
+
+        ServerAddr serverAddr = record.serverAddr;
+        try {
+            record.seq = ++seq;
+            ByteBuffer buffer = encode(record);
+            while (buffer.hasRemaining()) {
+                journalChannel.write(buffer);
+            }
+            if (fsync) {
+                journalChannel.force(false);
+            }
+
+            if (++journalRecords >= compactThreshold) {
+                compact();
+            }
+        } catch (IOException e) {
+            log.error("写入注册日志失败: " + serverAddr, e);
+        }
+    }
+
+    /**
+     * 生成快照并清空日志
+     * <p>
+     * 快照先写入临时文件并刷盘，再原子替换；若在清空日志前崩溃，回放时按序号跳过已包含在快照中的日志记录。
+     *
+     * @throws IOException
+     */
+    private void compact() throws IOException {
+        Path tmpPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        int size = registry.values().stream().mapToInt(app -> app.getStack().size()).sum();
+        try (FileChannel channel = FileChannel.open(tmpPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(16);
+            header.putInt(SNAPSHOT_MAGIC).putLong(seq).putInt(size).flip();
+            write(channel, header);
+            for (App app : registry.values()) {
+                for (ServerAddr serverAddr : app.getStack()) {
+                    Record record = new Record();
+                    record.seq = seq;
+                    record.type = REGISTER_APP;
+                    record.app = app.getName();
+                    record.prefix = app.getPrefix();
+                    record.domain = app.getDomain();
+                    record.serverAddr = serverAddr;
+                    write(channel, encode(record));
+                }
+            }
+            channel.force(true);
+        }
+        Files.move(tmpPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        journalChannel.truncate(0);
+        journalChannel.position(0);
+        journalChannel.force(true);
+        journalRecords = 0;
+        log.debug("已生成注册表快照: seq={}, size={}", seq, size);
+    }
+
+    private long readSnapshot() throws IOException {
+        if (!Files.exists(snapshotPath)) {
+            return 0;
+        }
+
+        try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 16 || buffer.getInt() != SNAPSHOT_MAGIC) {
+                log.warn("注册表快照格式错误，忽略: {}", snapshotPath);
+                return 0;
+            }
+            long snapshotSeq = buffer.getLong();
+            int size = buffer.getInt();
+            List<Record> records = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                Record record = decode(buffer);
+                if (Objects.isNull(record)) {
+                    log.warn("注册表快照已损坏，忽略: {}", snapshotPath);
+                    return 0;
+                }
+                records.add(record);
+            }
+            records.forEach(this::apply);
+            return snapshotSeq;
+        }
+    }
+
+    /**
+     * 回放日志
+     *
+     * @param snapshotSeq 快照序号，跳过已包含在快照中的记录
+     * @return 有效记录的结束位置
+     * @throws IOException
+     */
+    private long readJournal(long snapshotSeq) throws IOException {
+        if (!Files.exists(journalPath)) {
+            return 0;
+        }
+
+        try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            while (buffer.hasRemaining()) {
+                Record record = decode(buffer);
+                if (Objects.isNull(record)) {
+                    break;
+                }
+
+                journalRecords++;
+                if (record.seq <= snapshotSeq) {
+                    continue;
+                }
+                seq = record.seq;
+                apply(record);
+            }
+            return buffer.position();
+        }
+    }
+
+    private ByteBuffer encode(Record record) throws IOException {
+        ServerAddr serverAddr = record.serverAddr;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeLong(record.seq);
+        output.writeByte(record.type);
+        if (record.type == REGISTER_APP || record.type == REMOVE_APP) {
+            output.writeUTF(record.app);
+        }
+        if (record.type == REGISTER_APP) {
+            output.writeUTF(Objects.toString(record.prefix, ""));
+            output.writeUTF(Objects.toString(record.domain, ""));
+        }
+        output.writeUTF(serverAddr.getHost());
+        output.writeInt(serverAddr.getPort());
+        if (record.type == REGISTER || record.type == REGISTER_APP) {
+            output.writeUTF(Objects.toString(serverAddr.getPath(), ""));
+            output.writeInt(serverAddr.getWeight());
+        }
+        output.flush();
+        byte[] body = bytes.toByteArray();
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(body);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + body.length);
+        buffer.putInt(body.length).putInt((int) crc32.getValue()).put(body).flip();
+        return buffer;
+    }
+
+    /**
+     * 解码一条记录，不完整或校验失败时返回 null，且不移动读取位置
+     *
+     * @param buffer
+     * @return
+     */
+    private Record decode(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.remaining() < HEADER_SIZE) {
+            return null;
+        }
+        int length = buffer.getInt();
+        int crc = buffer.getInt();
+        if (length <= 0 || length > buffer.remaining()) {
+            buffer.position(start);
+            return null;
+        }
+
+        ByteBuffer body = buffer.slice();
+        body.limit(length);
+        CRC32 crc32 = new CRC32();
+        crc32.update(body.duplicate());
+        if ((int) crc32.getValue() != crc) {
+            buffer.position(start);
+            return null;
+        }
+
+        try {
+            Record record = new Record();
+            record.seq = body.getLong();
+            record.type = body.get();
+            record.app = App.DEFAULT;
+            if (record.type == REGISTER_APP || record.type == REMOVE_APP) {
+                record.app = readUTF(body);
+            }
+            if (record.type == REGISTER_APP) {
+                record.prefix = emptyToNull(readUTF(body));
+                record.domain = emptyToNull(readUTF(body));
+            }
+            ServerAddr serverAddr = new ServerAddr();
+            serverAddr.setHost(readUTF(body));
+            serverAddr.setPort(body.getInt());
+            if (record.type == REGISTER || record.type == REGISTER_APP) {
+                serverAddr.setPath(emptyToNull(readUTF(body)));
+                serverAddr.setWeight(body.getInt());
+            }
+            record.serverAddr = serverAddr;
+            buffer.position(start + HEADER_SIZE + length);
+            return record;
+        } catch (RuntimeException e) {
+            buffer.position(start);
+            return null;
+        }
+    }
+
+    // 与 DataOutputStream#writeUTF 对应（不含 \0 及补充字符时，modified UTF-8 与 UTF-8 相同）
+    private String readUTF(ByteBuffer buffer) {
+        int length = Short.toUnsignedInt(buffer.getShort());
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    private void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void closeQuietly() {
+        if (Objects.nonNull(journalChannel)) {
+            try {
+                journalChannel.close();
+            } catch (IOException e) {
+                log.warn("", e);
+            }
+            journalChannel = null;
+        }
+    }
+
+    @PreDestroy
+    public synchronized void destroy() {
+        closeQuietly();
+    }
+
+    private static class Record {
+        private long seq;
+        private byte type;
+        private String app;
+        private String prefix;
+        private String domain;
+        private ServerAddr serverAddr;
+    }
+
+}
@@ -2,71 +2,270 @@ package org.gentle.deploy.service;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
-import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.StringUtils;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.server.ServerWebExchange;
 
+import java.net.Inet6Address;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.List;
 import java.util.Objects;
-import java.util.function.Function;
 
 /**
+ * 请求端（客户端）地址
+ * <p>
+ * 由 {@link ReqAddrWebFilter} 在每个请求开始时解析一次，保存在请求属性 {@link #ATTR} 中，通过 {@link #get(ServerWebExchange)} 获取。
+ * <p>
+ * 只有当前通信的请求端在可信代理网段内时才读取代理请求头，否则直接取当前通信的请求端地址，避免伪造的 X-Forwarded-For。
+ * 多层代理的请求头（Forwarded、X-Forwarded-For）从右向左查找，跳过可信代理，第一个不可信的地址为客户端地址；
+ * 全部是可信代理时取最左边的地址。
+ *
  * @author xiangqian
  * @date 20:36 2022/09/24
  */
 @Data
-@Slf4j
 @AllArgsConstructor
 public class ReqAddr {
 
+    public static final String ATTR = ReqAddr.class.getName();
+
+    // RFC 7239
+    private static final String FORWARDED = "Forwarded";
+
+    private static final String X_FORWARDED_FOR = "X-Forwarded-For";
+
+    // 只有单个地址的代理请求头，按顺序查找
+    private static final String[] HEADER_NAMES = {"Proxy-Client-IP",  // apache服务代理
+            "WL-Proxy-Client-IP", // weblogic服务代理
+            "HTTP_CLIENT_IP", // 有些代理服务器
+            "X-Real-IP", // nginx服务代理
+    };
+
     private String host;
+
+    // 客户端端口，经过代理且代理没有提供端口时为 null
     private Integer port;
 
-    public static ReqAddr get(ServerHttpRequest request) {
-        Function<String, String> function = headerName -> {
-            String headerValue = request.getHeaders().getFirst(headerName);
-            log.debug("header--> {}: {}", headerName, headerValue);
-            return StringUtils.isEmpty(headerValue) || "unknown".equalsIgnoreCase(headerValue) ? null : headerValue;
-        };
-
-        String[] headerNames = {"X-Forwarded-For",  // Squid服务代理
-                "Proxy-Client-IP",  // apache服务代理
-                "WL-Proxy-Client-IP", // weblogic服务代理
-                "HTTP_CLIENT_IP", // 有些代理服务器
-                "X-Real-IP", // nginx服务代理
-        };
-
-        String host = null;
-        for (String headerName : headerNames) {
-            if (Objects.nonNull(host = function.apply(headerName))) {
-                break;
-            }
+    /**
+     * 获取 {@link ReqAddrWebFilter} 解析的请求端地址
+     *
+     * @param exchange
+     * @return
+     */
+    public static ReqAddr get(ServerWebExchange exchange) {
+        return exchange.getAttribute(ATTR);
+    }
+
+    /**
+     * 解析请求端地址
+     *
+     * @param request
+     * @param trustedProxies 可信代理网段
+     * @return
+     */
+    public static ReqAddr resolve(ServerHttpRequest request, CidrTrie trustedProxies) {
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        InetAddress inetAddress = Objects.isNull(remoteAddress) ? null : remoteAddress.getAddress();
+        if (Objects.nonNull(inetAddress) && !trustedProxies.contains(inetAddress)) {
+            return remote(remoteAddress);
         }
 
-        // 有些网络通过多层代理，那么获取到的ip就会有多个，一般都是通过逗号（,）分割开来，并且第一个ip为客户端的真实IP
-        if (Objects.nonNull(host)) {
-            log.debug("多层代理ip: {}", host);
-            host = host.split(",")[0];
+        HttpHeaders headers = request.getHeaders();
+        Hop hop = new Hop();
+        boolean found = chain(headers.get(FORWARDED), true, trustedProxies, hop)
+                || chain(headers.get(X_FORWARDED_FOR), false, trustedProxies, hop);
+        for (int i = 0; !found && i < HEADER_NAMES.length; i++) {
+            String value = headers.getFirst(HEADER_NAMES[i]);
+            found = Objects.nonNull(value) && hop.parse(value, 0, value.length(), false);
         }
+
         // 如果没有转发的ip，则取当前通信的请求端的ip
-        else {
-            InetSocketAddress inetSocketAddress = request.getRemoteAddress();
-            host = inetSocketAddress.getAddress().getHostAddress();
-            log.debug("没有转发的ip，取当前通信的请求端的ip: {}", host);
+        return found ? hop.toReqAddr() : remote(remoteAddress);
+    }
+
+    private static ReqAddr remote(InetSocketAddress remoteAddress) {
+        if (Objects.isNull(remoteAddress)) {
+            return new ReqAddr(null, null);
         }
 
+        InetAddress inetAddress = remoteAddress.getAddress();
+        String host;
+        if (Objects.isNull(inetAddress)) {
+            host = remoteAddress.getHostString();
+        }
         // 0:0:0:0:0:0:0:1
-        if (StringUtils.equalsAny(host, "0:0:0:0:0:0:0:1", "[0:0:0:0:0:0:0:1]")) {
+        else if (inetAddress instanceof Inet6Address && inetAddress.isLoopbackAddress()) {
             host = "127.0.0.1";
+        } else {
+            host = inetAddress.getHostAddress();
+        }
+        return new ReqAddr(host, remoteAddress.getPort());
+    }
+
+    /**
+     * 从右向左查找多层代理请求头（可能有多行）中第一个不可信的地址
+     *
+     * @param values
+     * @param forwarded      true：Forwarded，false：X-Forwarded-For
+     * @param trustedProxies
+     * @param hop            输出：客户端地址
+     * @return 没有请求头或最近一跳的地址无法解析时返回 false
+     */
+    private static boolean chain(List<String> values, boolean forwarded, CidrTrie trustedProxies, Hop hop) {
+        if (Objects.isNull(values)) {
+            return false;
+        }
+
+        // 已经过的最左边的可信代理
+        String trustedValue = null;
+        int trustedStart = 0, trustedEnd = 0, trustedPort = -1;
+        for (int v = values.size() - 1; v >= 0; v--) {
+            String value = values.get(v);
+            int end = value.length();
+            while (end >= 0) {
+                int comma = value.lastIndexOf(',', end - 1);
+                // 地址无法解析（unknown、混淆标识等），不再继续向左查找
+                if (!hop.parse(value, comma + 1, end, forwarded)) {
+                    return Objects.nonNull(trustedValue) && hop.set(trustedValue, trustedStart, trustedEnd, trustedPort);
+                }
+                if (!trustedProxies.contains(hop.addr[0], hop.addr[1])) {
+                    return true;
+                }
+                trustedValue = hop.value;
+                trustedStart = hop.start;
+                trustedEnd = hop.end;
+                trustedPort = hop.port;
+                end = comma;
+            }
+        }
+        return Objects.nonNull(trustedValue) && hop.set(trustedValue, trustedStart, trustedEnd, trustedPort);
+    }
+
+    /**
+     * 一跳的地址，只记录在请求头中的位置，确定客户端地址后才创建字符串
+     */
+    private static class Hop {
+
+        private final long[] addr = new long[2];
+
+        private String value;
+        private int start;
+        private int end;
+        private int port;
+
+        private boolean set(String value, int start, int end, int port) {
+            this.value = value;
+            this.start = start;
+            this.end = end;
+            this.port = port;
+            return true;
         }
 
-        // 如果是127.0.0.1，则取本地真实ip
-        // ...
+        /**
+         * 解析一跳地址
+         * <p>
+         * X-Forwarded-For：192.0.2.60、192.0.2.60:4711、[2001:db8::17]:4711
+         * <p>
+         * Forwarded：for=192.0.2.60;proto=http;by=203.0.113.43、for="[2001:db8:cafe::17]:4711"
+         *
+         * @param s
+         * @param start
+         * @param end
+         * @param forwarded
+         * @return 无法解析时返回 false
+         */
+        private boolean parse(String s, int start, int end, boolean forwarded) {
+            // Forwarded：查找 for 参数
+            if (forwarded) {
+                int p = start;
+                int forStart = -1, forEnd = -1;
+                while (p < end) {
+                    int semicolon = s.indexOf(';', p);
+                    int pairEnd = semicolon < 0 || semicolon > end ? end : semicolon;
+                    p = skipWhitespace(s, p, pairEnd);
+                    if (pairEnd - p >= 4 && s.regionMatches(true, p, "for=", 0, 4)) {
+                        forStart = p + 4;
+                        forEnd = pairEnd;
+                        break;
+                    }
+                    p = pairEnd + 1;
+                }
+                if (forStart < 0) {
+                    return false;
+                }
+                start = forStart;
+                end = forEnd;
+            }
 
-        // port
-        int port = request.getRemoteAddress().getPort();
+            // 去掉空白、引号
+            start = skipWhitespace(s, start, end);
+            while (end > start && Character.isWhitespace(s.charAt(end - 1))) {
+                end--;
+            }
+            if (end - start >= 2 && s.charAt(start) == '"' && s.charAt(end - 1) == '"') {
+                start++;
+                end--;
+            }
+            if (start >= end) {
+                return false;
+            }
+
+            // 去掉方括号、端口
+            int port = -1;
+            if (s.charAt(start) == '[') {
+                int bracket = s.indexOf(']', start);
+                if (bracket < 0 || bracket >= end) {
+                    return false;
+                }
+                if (bracket + 1 < end && (s.charAt(bracket + 1) != ':' || (port = parsePort(s, bracket + 2, end)) < 0)) {
+                    return false;
+                }
+                start++;
+                end = bracket;
+            } else {
+                // 只有一个冒号时为 IPv4:port
+                int colon = s.indexOf(':', start);
+                if (colon >= 0 && colon < end && s.lastIndexOf(':', end - 1) == colon) {
+                    if ((port = parsePort(s, colon + 1, end)) < 0) {
+                        return false;
+                    }
+                    end = colon;
+                }
+            }
+
+            return CidrTrie.parse(s, start, end, addr) != 0 && set(s, start, end, port);
+        }
 
-        return new ReqAddr(host, port);
+        private ReqAddr toReqAddr() {
+            // 0:0:0:0:0:0:0:1、::1（addr 可能是之后解析的一跳，重新解析）
+            CidrTrie.parse(value, start, end, addr);
+            String host = addr[0] == 0 && addr[1] == 1 ? "127.0.0.1" : value.substring(start, end);
+            return new ReqAddr(host, port < 0 ? null : port);
+        }
+
+    }
+
+    private static int skipWhitespace(String s, int start, int end) {
+        while (start < end && Character.isWhitespace(s.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    private static int parsePort(String s, int start, int end) {
+        if (start >= end || end - start > 5) {
+            return -1;
+        }
+        int port = 0;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            port = port * 10 + (c - '0');
+        }
+        return port > 65535 ? -1 : port;
     }
 
 }
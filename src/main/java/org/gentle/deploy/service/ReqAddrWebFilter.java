@@ -0,0 +1,48 @@
+package org.gentle.deploy.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * 每个请求开始时解析一次请求端地址（{@link ReqAddr}），保存在请求属性中，
+ * 注册、限流、访问日志等通过 {@link ReqAddr#get(ServerWebExchange)} 获取
+ *
+ * @author xiangqian
+ * @date 10:50 2026/10/23
+ */
+@Slf4j
+@Component
+public class ReqAddrWebFilter implements WebFilter, Ordered {
+
+    // 可信代理网段（逗号分隔），只有来自可信代理的请求才读取 Forwarded、X-Forwarded-For 等代理请求头
+    @Value("${server.req-addr.trusted-proxies:127.0.0.0/8,::1/128}")
+    private String trustedProxies;
+
+    private CidrTrie trustedProxyTrie;
+
+    @PostConstruct
+    public void init() {
+        trustedProxyTrie = CidrTrie.parse(trustedProxies);
+        log.info("可信代理网段: {}", trustedProxies);
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        exchange.getAttributes().put(ReqAddr.ATTR, ReqAddr.resolve(exchange.getRequest(), trustedProxyTrie));
+        return chain.filter(exchange);
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE + 1;
+    }
+
+}
@@ -1,10 +1,10 @@
 package org.gentle.deploy.service;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.SneakyThrows;
+import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
@@ -12,25 +12,29 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
-import org.springframework.cloud.gateway.route.RouteDefinition;
 import org.springframework.core.Ordered;
 import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.MediaType;
 import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.stereotype.Component;
-import org.springframework.util.MultiValueMap;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 
-import java.net.URI;
-import java.net.URL;
+import javax.annotation.PostConstruct;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.Future;
+import java.util.function.Function;
 
 /**
  * @author xiangqian
@@ -40,97 +44,385 @@ import java.util.concurrent.Future;
 @Component
 public class ReqGlobalFilter implements GlobalFilter, Ordered {
 
+    private static final TypeReference<List<ServerOp>> SERVER_OPS_TYPE = new TypeReference<>() {
+    };
+
+    // 批量注册请求体上限
+    private static final int MAX_BATCH_BODY_SIZE = 1024 * 1024;
+
+    private static final MediaType METRICS_CONTENT_TYPE = MediaType.parseMediaType("text/plain;version=0.0.4;charset=utf-8");
+
     @Value("${server.secret}")
     private String secret;
 
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private RouteService routeService;
+
+    @Autowired
+    private ServerManager serverManager;
+
+    @Autowired
+    private ServerBalancer serverBalancer;
+
+    @Autowired
+    private InflightTracker inflightTracker;
+
+    @Autowired
+    private Metrics metrics;
+
+    @Autowired
+    private OutlierDetector outlierDetector;
+
+    @Autowired
+    private ConcurrencyLimiter concurrencyLimiter;
+
+    @Autowired
+    private AccessLog accessLog;
+
+    @Autowired
+    private ServerWarmer serverWarmer;
+
+    @Autowired
+    private ServerMirror serverMirror;
+
     @Autowired
     private ThreadExecutor threadExecutor;
 
     @Autowired
-    private RouteService routeService;
+    private ClusterNode clusterNode;
 
     @Autowired
-    private ServerManager serverManager;
+    private RegistryEvents registryEvents;
+
+    // _api 处理器，key: 路径（不含末尾的 /）
+    private Map<String, Api> apiMap;
+
+    // 控制台页面
+    private StaticResource apiHtml;
+
+    @PostConstruct
+    public void init() throws IOException {
+        apiHtml = StaticResource.load("static/api.html", new MediaType(MediaType.TEXT_HTML, StandardCharsets.UTF_8));
+
+        apiMap = new HashMap<>();
+
+        // http://localhost:9999/_api?secret=3a5f0c4a-3bc7-11ed-911e-0242ac110002
+        api("/_api", false, apiHtml::write);
+
+        // 注册服务，app 为应用名（默认 default），prefix 为路径前缀，domain 为域名，不传时沿用应用已有的配置
+        // http://localhost:9999/_api/server/register?secret=3a5f0c4a-3bc7-11ed-911e-0242ac110002&app=order&prefix=/order&domain=example.com
+        api("/_api/server/register", true, this::serverRegister);
+
+        // 批量注册、移除服务（POST，JSON 数组），全部校验通过后一次执行，只发布一次路由
+        // curl -X POST 'http://localhost:9999/_api/server/batch?secret=3a5f0c4a-3bc7-11ed-911e-0242ac110002' -d '[{"op":"register","app":"order","port":8080},{"op":"deregister","app":"order","port":8081}]'
+        api("/_api/server/batch", true, this::serverBatch);
+
+        // http://localhost:9999/_api/server/list?secret=3a5f0c4a-3bc7-11ed-911e-0242ac110002&app=default
+        api("/_api/server/list", true, exchange -> json(exchange, serverManager.list(app(exchange))));
+
+        // 所有应用及其注册的服务
+        // http://localhost:9999/_api/apps?secret=3a5f0c4a-3bc7-11ed-911e-0242ac110002
+        api("/_api/apps", true, exchange -> json(exchange, serverManager.apps()));
+
+        // 排空中的服务
+        // http://localhost:9999/_api/server/drain?secret=3a5f0c4a-3bc7-11ed-911e-0242ac110002
+        api("/_api/server/drain", true, exchange -> json(exchange, serverManager.drainList()));
+
+        // 预热中的服务
+        // http://localhost:9999/_api/server/warmup?secret=3a5f0c4a-3bc7-11ed-911e-0242ac110002
+        api("/_api/server/warmup", true, exchange -> json(exchange, serverWarmer.list()));
+
+        // 结束预热（含预热超时被拒绝的服务），手动切换到新服务
+        // http://localhost:9999/_api/server/warmup/promote?secret=3a5f0c4a-3bc7-11ed-911e-0242ac110002&app=default&host=127.0.0.1&port=8080
+        api("/_api/server/warmup/promote", true, this::serverWarmupPromote);
+
+        // 影子流量对比中（或未通过对比）的服务
+        // http://localhost:9999/_api/server/mirror?secret=3a5f0c4a-3bc7-11ed-911e-0242ac110002
+        api("/_api/server/mirror", true, exchange -> json(exchange, serverMirror.list()));
+
+        // 结束影子流量对比，手动切换到新服务
+        // http://localhost:9999/_api/server/mirror/promote?secret=3a5f0c4a-3bc7-11ed-911e-0242ac110002&app=default&host=127.0.0.1&port=8080
+        api("/_api/server/mirror/promote", true, this::serverMirrorPromote);
+
+        // 被动健康检测（异常服务摘除）状态
+        // http://localhost:9999/_api/server/outlier?secret=3a5f0c4a-3bc7-11ed-911e-0242ac110002
+        api("/_api/server/outlier", true, exchange -> json(exchange, outlierDetector.list()));
+
+        // 服务并发限制
+        // http://localhost:9999/_api/server/limit?secret=3a5f0c4a-3bc7-11ed-911e-0242ac110002
+        api("/_api/server/limit", true, exchange -> json(exchange, concurrencyLimiter.list()));
+
+        // 灰度：将 percent% 的流量分配给最新注册的服务，step > 0 时每隔 interval 毫秒提升 step%，达到 100% 后结束灰度；percent < 0 关闭灰度
+        // http://localhost:9999/_api/server/canary?secret=3a5f0c4a-3bc7-11ed-911e-0242ac110002&app=default&percent=10&step=10&interval=30000
+        api("/_api/server/canary", true, this::serverCanary);
+
+        // 注册表、路由的状态快照（按版本缓存），sinceVersion 为长轮询：版本变化后返回，超时返回 304；响应头 X-Version 为快照版本
+        // http://localhost:9999/_api/state?secret=3a5f0c4a-3bc7-11ed-911e-0242ac110002&sinceVersion=0&timeout=30000
+        api("/_api/state", true, this::state);
+
+        // 变更事件流（SSE）：register、evict、health、route，先发送快照（或从 sinceVersion、Last-Event-ID 之后补发）
+        // curl -N 'http://localhost:9999/_api/events?secret=3a5f0c4a-3bc7-11ed-911e-0242ac110002'
+        api("/_api/events", true, this::events);
+
+        // 集群节点状态及复制的条目
+        // http://localhost:9999/_api/cluster?secret=3a5f0c4a-3bc7-11ed-911e-0242ac110002
+        api("/_api/cluster", true, exchange -> json(exchange, clusterNode.info()));
+
+        // http://localhost:9999/_api/routes?secret=3a5f0c4a-3bc7-11ed-911e-0242ac110002
+        api("/_api/routes", true, exchange -> json(exchange, routeService.list()));
+
+        // Prometheus 文本格式指标
+        // http://localhost:9999/_api/metrics?secret=3a5f0c4a-3bc7-11ed-911e-0242ac110002
+        api("/_api/metrics", true, this::scrape);
+    }
+
+    private void api(String path, boolean secret, Function<ServerWebExchange, Mono<Void>> handler) {
+        apiMap.put(path, new Api(secret, handler));
+    }
 
-    @SneakyThrows
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
-        ServerHttpRequest request = exchange.getRequest();
-        URI uri = request.getURI();
-        String rawPath = uri.getRawPath();
+        String rawPath = exchange.getRequest().getURI().getRawPath();
         if (rawPath.equals("/_api") || rawPath.startsWith("/_api/")) {
-            return _api(exchange);
+            return _api(exchange, rawPath);
         }
 
-        // 执行到下一个filter
-        return chain.filter(exchange);
+        // 执行到下一个filter，过滤器链结束（响应已写完）后释放处理中的请求计数、记录指标和访问日志
+        long startTime = System.nanoTime();
+        ServerWebExchange logged = accessLog.start(exchange);
+        return chain.filter(logged).doFinally(signalType -> {
+            inflightTracker.leave(exchange);
+            metrics.request(exchange, signalType, startTime);
+            serverWarmer.record(exchange);
+            accessLog.record(logged, signalType, startTime);
+        });
     }
 
-    private Mono<Void> _api(ServerWebExchange exchange) throws Exception {
-        ServerHttpRequest request = exchange.getRequest();
-        URI uri = request.getURI();
-        String rawPath = uri.getRawPath();
-
-        // http://localhost:9999/_api?secret=3a5f0c4a-3bc7-11ed-911e-0242ac110002
-        if (StringUtils.equalsAny(rawPath, "/_api", "/_api/")) {
-            URL url = ReqGlobalFilter.class.getClassLoader().getResource("static/api.html");
-            byte[] body = IOUtils.toString(url).getBytes(StandardCharsets.UTF_8);
-            return response(exchange.getResponse(), HttpStatus.OK, body);
+    private Mono<Void> _api(ServerWebExchange exchange, String rawPath) {
+        // 忽略末尾的 /
+        String path = rawPath.length() > 1 && rawPath.endsWith("/") ? rawPath.substring(0, rawPath.length() - 1) : rawPath;
+        Api api = apiMap.get(path);
+        if (Objects.isNull(api)) {
+            return response(exchange.getResponse(), HttpStatus.NOT_FOUND, null);
         }
 
         // org.springframework.web.HttpRequestMethodNotSupportedException: Request method 'GET' not supported
 
-        MultiValueMap<String, String> queryParams = request.getQueryParams();
-        String secret = Optional.ofNullable(queryParams.get("secret")).filter(CollectionUtils::isNotEmpty).map(list -> StringUtils.trim(list.get(0))).orElse(null);
-        if (!this.secret.equals(secret)) {
+        if (api.secret && !this.secret.equals(param(exchange, "secret"))) {
             return response(exchange.getResponse(), HttpStatus.UNAUTHORIZED, null);
         }
 
-        // http://localhost:9999/_api/server/register?secret=3a5f0c4a-3bc7-11ed-911e-0242ac110002
-        if (StringUtils.equalsAny(rawPath, "/_api/server/register", "/_api/server/register/")) {
-            String host = Optional.ofNullable(queryParams.get("host")).filter(CollectionUtils::isNotEmpty).map(list -> StringUtils.trim(list.get(0))).orElse(null);
-            Integer port = Optional.ofNullable(queryParams.get("port")).filter(CollectionUtils::isNotEmpty).map(list -> NumberUtils.toInt(StringUtils.trim(list.get(0)), -1)).orElse(null);
-            String path = Optional.ofNullable(queryParams.get("path")).filter(CollectionUtils::isNotEmpty).map(list -> StringUtils.trim(list.get(0))).orElse(null);
+        // 任务执行器饱和时直接拒绝，由调用方重试，不在执行器中堆积
+        if (threadExecutor.isSaturated()) {
+            log.warn("任务执行器饱和，拒绝请求: {}, 排队任务数: {}", rawPath, threadExecutor.getQueueSize());
+            return response(exchange.getResponse(), HttpStatus.SERVICE_UNAVAILABLE, null);
+        }
 
-            if (Objects.isNull(port)) {
-                port = 80; // http
-            }
-            if (port == -1) {
-                return response(exchange.getResponse(), HttpStatus.OK, "Failure".getBytes(StandardCharsets.UTF_8));
-            }
+        // 处理器会竞争 ServerManager 锁、读写注册表日志，在 ThreadExecutor 上执行，不阻塞事件循环线程
+        return Mono.defer(() -> api.handler.apply(exchange))
+                .subscribeOn(threadExecutor.getScheduler())
+                .onErrorResume(e -> {
+                    log.error(rawPath, e);
+                    return response(exchange.getResponse(), HttpStatus.INTERNAL_SERVER_ERROR, null);
+                });
+    }
 
-            if (StringUtils.isEmpty(host)) {
-                ReqAddr reqAddr = ReqAddr.get(request);
-                host = reqAddr.getHost();
-            }
+    private Mono<Void> serverRegister(ServerWebExchange exchange) {
+        String app = app(exchange);
+        if (!App.isValidName(app)) {
+            return response(exchange.getResponse(), HttpStatus.OK, "Failure".getBytes(StandardCharsets.UTF_8));
+        }
+        String prefix = param(exchange, "prefix");
+        String domain = param(exchange, "domain");
+        if (!App.isValidPrefix(prefix) || !App.isValidDomain(domain)) {
+            return response(exchange.getResponse(), HttpStatus.OK, "Failure".getBytes(StandardCharsets.UTF_8));
+        }
+        String host = param(exchange, "host");
+        Integer port = Optional.ofNullable(param(exchange, "port")).map(value -> NumberUtils.toInt(value, -1)).orElse(null);
+        String path = param(exchange, "path");
+        if (!App.isValidPrefix(path)) {
+            return response(exchange.getResponse(), HttpStatus.OK, "Failure".getBytes(StandardCharsets.UTF_8));
+        }
+        int weight = Optional.ofNullable(param(exchange, "weight")).map(value -> NumberUtils.toInt(value, 1)).orElse(1);
 
-            ServerAddr serverAddr = new ServerAddr();
-            serverAddr.setHost(host);
-            serverAddr.setPort(port);
-            serverAddr.setPath(path);
-            log.debug("add ServerAddr: {}", rawPath, serverAddr);
-            serverManager.add(serverAddr);
-            return response(exchange.getResponse(), HttpStatus.OK, "Success".getBytes(StandardCharsets.UTF_8));
+        if (Objects.isNull(port)) {
+            port = 80; // http
+        }
+        if (port == -1) {
+            return response(exchange.getResponse(), HttpStatus.OK, "Failure".getBytes(StandardCharsets.UTF_8));
         }
 
-        // http://localhost:9999/_api/server/list?secret=3a5f0c4a-3bc7-11ed-911e-0242ac110002
-        if (StringUtils.equalsAny(rawPath, "/_api/server/list", "/_api/server/list/")) {
-            return response(exchange.getResponse(), HttpStatus.OK, objectMapper.writeValueAsBytes(serverManager.list()));
+        if (StringUtils.isEmpty(host)) {
+            ReqAddr reqAddr = ReqAddr.get(exchange);
+            host = reqAddr.getHost();
         }
 
-        // http://localhost:9999/_api/routes?secret=3a5f0c4a-3bc7-11ed-911e-0242ac110002
-        if (StringUtils.equalsAny(rawPath, "/_api/routes", "/_api/routes/")) {
-            // java.lang.IllegalStateException: Iterating over a toIterable() / toStream() is blocking, which is not supported in thread reactor-http-nio-3
-//            List<RouteDefinition> routeDefinitions = routeService.list();
-            Future<List<RouteDefinition>> future = threadExecutor.submit(() -> routeService.list());
-            List<RouteDefinition> routeDefinitions = future.get();
-            return response(exchange.getResponse(), HttpStatus.OK, objectMapper.writeValueAsBytes(routeDefinitions));
+        ServerAddr serverAddr = new ServerAddr();
+        serverAddr.setHost(host);
+        serverAddr.setPort(port);
+        serverAddr.setPath(path);
+        serverAddr.setWeight(weight);
+        log.debug("add ServerAddr: [{}] {}", app, serverAddr);
+        serverManager.add(app, prefix, domain, serverAddr);
+        return response(exchange.getResponse(), HttpStatus.OK, "Success".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mono<Void> serverBatch(ServerWebExchange exchange) {
+        if (exchange.getRequest().getMethod() != HttpMethod.POST) {
+            return response(exchange.getResponse(), HttpStatus.METHOD_NOT_ALLOWED, null);
         }
 
-        return response(exchange.getResponse(), HttpStatus.NOT_FOUND, null);
+        return DataBufferUtils.join(exchange.getRequest().getBody(), MAX_BATCH_BODY_SIZE)
+                .map(dataBuffer -> {
+                    try {
+                        return dataBuffer.toString(StandardCharsets.UTF_8);
+                    } finally {
+                        DataBufferUtils.release(dataBuffer);
+                    }
+                })
+                .defaultIfEmpty("")
+                // 请求体在事件循环线程上读取完成，批量操作切回 ThreadExecutor
+                .publishOn(threadExecutor.getScheduler())
+                .flatMap(body -> {
+                    List<ServerOp> serverOps;
+                    try {
+                        serverOps = objectMapper.readValue(body, SERVER_OPS_TYPE);
+                    } catch (IOException e) {
+                        log.debug("batch: {}", body, e);
+                        return response(exchange.getResponse(), HttpStatus.BAD_REQUEST, "Failure".getBytes(StandardCharsets.UTF_8));
+                    }
+
+                    // 全部校验通过才执行
+                    String requestHost = ReqAddr.get(exchange).getHost();
+                    for (ServerOp serverOp : serverOps) {
+                        if (!isValid(serverOp, requestHost)) {
+                            log.debug("batch, invalid ServerOp: {}", serverOp);
+                            return response(exchange.getResponse(), HttpStatus.BAD_REQUEST, "Failure".getBytes(StandardCharsets.UTF_8));
+                        }
+                    }
+
+                    serverManager.batch(serverOps);
+                    return response(exchange.getResponse(), HttpStatus.OK, "Success".getBytes(StandardCharsets.UTF_8));
+                });
+    }
+
+    /**
+     * 校验并补全批量操作（与 register 接口的默认值一致）
+     *
+     * @param serverOp
+     * @param requestHost
+     * @return
+     */
+    private boolean isValid(ServerOp serverOp, String requestHost) {
+        if (Objects.isNull(serverOp) || !(ServerOp.REGISTER.equals(serverOp.getOp()) || ServerOp.DEREGISTER.equals(serverOp.getOp()))) {
+            return false;
+        }
+
+        serverOp.setApp(StringUtils.defaultIfEmpty(StringUtils.trim(serverOp.getApp()), App.DEFAULT));
+        if (!App.isValidName(serverOp.getApp()) || !App.isValidPrefix(serverOp.getPrefix()) || !App.isValidDomain(serverOp.getDomain())
+                || !App.isValidPrefix(serverOp.getPath())) {
+            return false;
+        }
+        if (StringUtils.isEmpty(serverOp.getHost())) {
+            serverOp.setHost(requestHost);
+        }
+        if (Objects.isNull(serverOp.getPort())) {
+            serverOp.setPort(80); // http
+        }
+        return serverOp.getPort() > 0 && serverOp.getPort() <= 65535;
+    }
+
+    private Mono<Void> serverCanary(ServerWebExchange exchange) {
+        String app = app(exchange);
+        Integer percent = Optional.ofNullable(param(exchange, "percent")).map(value -> NumberUtils.toInt(value, -1)).orElse(null);
+        if (Objects.nonNull(percent)) {
+            int step = NumberUtils.toInt(param(exchange, "step"), 0);
+            long interval = NumberUtils.toLong(param(exchange, "interval"), 0);
+            serverManager.canary(app, percent, step, interval);
+        }
+        return json(exchange, serverBalancer.canaryInfo(app));
+    }
+
+    private Mono<Void> serverWarmupPromote(ServerWebExchange exchange) {
+        String host = param(exchange, "host");
+        int port = NumberUtils.toInt(param(exchange, "port"), -1);
+        if (StringUtils.isEmpty(host)) {
+            host = ReqAddr.get(exchange).getHost();
+        }
+        byte[] body = serverWarmer.promote(app(exchange), host + ":" + port) ? "Success".getBytes(StandardCharsets.UTF_8) : "Failure".getBytes(StandardCharsets.UTF_8);
+        return response(exchange.getResponse(), HttpStatus.OK, body);
+    }
+
+    private Mono<Void> serverMirrorPromote(ServerWebExchange exchange) {
+        String host = param(exchange, "host");
+        int port = NumberUtils.toInt(param(exchange, "port"), -1);
+        if (StringUtils.isEmpty(host)) {
+            host = ReqAddr.get(exchange).getHost();
+        }
+        byte[] body = serverMirror.promote(app(exchange), host + ":" + port) ? "Success".getBytes(StandardCharsets.UTF_8) : "Failure".getBytes(StandardCharsets.UTF_8);
+        return response(exchange.getResponse(), HttpStatus.OK, body);
+    }
+
+    private Mono<Void> state(ServerWebExchange exchange) {
+        long sinceVersion = NumberUtils.toLong(param(exchange, "sinceVersion"), -1);
+        Mono<RegistryEvents.Snapshot> snapshot = sinceVersion < 0
+                ? Mono.fromCallable(() -> registryEvents.snapshot(this::snapshot))
+                : registryEvents.poll(sinceVersion, NumberUtils.toLong(param(exchange, "timeout"), 0), this::snapshot);
+        ServerHttpResponse response = exchange.getResponse();
+        return snapshot.flatMap(value -> {
+                    response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+                    response.getHeaders().set("X-Version", String.valueOf(value.getVersion()));
+                    return response(response, HttpStatus.OK, value.getJson());
+                })
+                .switchIfEmpty(Mono.defer(() -> response(response, HttpStatus.NOT_MODIFIED, null)));
+    }
+
+    private Mono<Void> events(ServerWebExchange exchange) {
+        long sinceVersion = NumberUtils.toLong(param(exchange, "sinceVersion"),
+                NumberUtils.toLong(exchange.getRequest().getHeaders().getFirst("Last-Event-ID"), -1));
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.OK);
+        response.getHeaders().setContentType(MediaType.TEXT_EVENT_STREAM);
+        response.getHeaders().setCacheControl(CacheControl.noCache());
+        DataBufferFactory dataBufferFactory = response.bufferFactory();
+        // 每个事件的字节由所有订阅者共享，只包装不复制
+        return response.writeAndFlushWith(registryEvents.stream(sinceVersion, this::snapshot)
+                .map(bytes -> Mono.just(dataBufferFactory.wrap(bytes))));
+    }
+
+    /**
+     * 状态快照的内容：所有应用及其注册的服务、路由
+     *
+     * @return
+     */
+    private Map<String, Object> snapshot() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("apps", serverManager.apps());
+        map.put("routes", routeService.list());
+        return map;
+    }
+
+    private Mono<Void> scrape(ServerWebExchange exchange) {
+        exchange.getResponse().getHeaders().setContentType(METRICS_CONTENT_TYPE);
+        return Mono.fromCallable(() -> metrics.scrape().getBytes(StandardCharsets.UTF_8))
+                .flatMap(body -> response(exchange.getResponse(), HttpStatus.OK, body));
+    }
+
+    private String app(ServerWebExchange exchange) {
+        return StringUtils.defaultIfEmpty(param(exchange, "app"), App.DEFAULT);
+    }
+
+    private String param(ServerWebExchange exchange, String name) {
+        List<String> values = exchange.getRequest().getQueryParams().get(name);
+        return CollectionUtils.isEmpty(values) ? null : StringUtils.trim(values.get(0));
+    }
+
+    private Mono<Void> json(ServerWebExchange exchange, Object value) {
+        return Mono.fromCallable(() -> objectMapper.writeValueAsBytes(value))
+                .flatMap(body -> response(exchange.getResponse(), HttpStatus.OK, body));
     }
 
     private Mono<Void> response(ServerHttpResponse response, HttpStatus httpStatus, byte[] body) {
@@ -150,4 +442,14 @@ public class ReqGlobalFilter implements GlobalFilter, Ordered {
         return -Integer.MAX_VALUE;
     }
 
+    @AllArgsConstructor
+    private static class Api {
+
+        // 是否需要校验密钥
+        private final boolean secret;
+
+        private final Function<ServerWebExchange, Mono<Void>> handler;
+
+    }
+
 }
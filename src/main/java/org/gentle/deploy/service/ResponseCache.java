@@ -0,0 +1,540 @@
+package org.gentle.deploy.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * 响应缓存
+ * <p>
+ * 小于 memory-max-object-size 的响应体保存在内存 LRU（总大小不超过 memory-max-size），
+ * 更大的保存在磁盘 LRU（dir 目录，总大小不超过 disk-max-size），由 {@link CacheGlobalFilter} 通过零拷贝（sendfile）发送。
+ * <p>
+ * 新鲜度按响应的 Cache-Control（s-maxage、max-age）、Expires 计算，都没有时按 Last-Modified 启发式计算（距今时长的 10%，不超过 heuristic-max-age）；
+ * no-store、private、no-cache 的响应不缓存，带 Cookie 的请求的响应只有明确 public 或 s-maxage 时才缓存。过期的缓存项直接淘汰，重新请求服务。
+ * <p>
+ * 同一 key 的并发未命中只有第一个请求（leader）转发到服务并写入缓存，其余请求等待写入完成后从缓存响应，等待超过 lock-timeout 时直接转发。
+ * 启动时删除目录中上次运行遗留的缓存文件（tmp-*、md5-时间戳），目录中的其他文件和子目录不受影响。
+ *
+ * @author xiangqian
+ * @date 10:45 2026/10/24
+ */
+@Slf4j
+@Component
+public class ResponseCache {
+
+    // 回放的响应头
+    private static final List<String> HEADER_NAMES = List.of(HttpHeaders.CONTENT_TYPE,
+            HttpHeaders.CONTENT_ENCODING,
+            HttpHeaders.CONTENT_LANGUAGE,
+            HttpHeaders.CONTENT_DISPOSITION,
+            HttpHeaders.ETAG,
+            HttpHeaders.LAST_MODIFIED,
+            HttpHeaders.CACHE_CONTROL,
+            HttpHeaders.EXPIRES);
+
+    // 缓存写入的文件名：临时文件 tmp-序号，缓存文件 key 的 md5-写入时间
+    private static final Pattern FILE_NAME_PATTERN = Pattern.compile("tmp-\\d+|[0-9a-f]{32}-\\d+");
+
+    @Value("${server.cache.enabled:false}")
+    private boolean enabled;
+
+    // 磁盘缓存目录
+    @Value("${server.cache.dir:data/cache}")
+    private String dir;
+
+    // 内存缓存总大小、单个对象最大大小（字节）
+    @Value("${server.cache.memory-max-size:67108864}")
+    private long memoryMaxSize;
+
+    @Value("${server.cache.memory-max-object-size:262144}")
+    private long memoryMaxObjectSize;
+
+    // 磁盘缓存总大小、单个对象最大大小（字节）
+    @Value("${server.cache.disk-max-size:10737418240}")
+    private long diskMaxSize;
+
+    @Value("${server.cache.disk-max-object-size:1073741824}")
+    private long diskMaxObjectSize;
+
+    // 没有 Cache-Control、Expires 时启发式新鲜度的上限（毫秒）
+    @Value("${server.cache.heuristic-max-age:3600000}")
+    private long heuristicMaxAge;
+
+    // 并发未命中时等待 leader 写入缓存的超时（毫秒）
+    @Value("${server.cache.lock-timeout:5000}")
+    private long lockTimeout;
+
+    private Path dirPath;
+
+    // 按访问顺序排列，内存、磁盘缓存项分开淘汰，均由 this 加锁
+    private final LinkedHashMap<String, CacheEntry> memoryMap = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, CacheEntry> diskMap = new LinkedHashMap<>(16, 0.75f, true);
+    private long memorySize;
+    private long diskSize;
+
+    // 正在写入缓存的 key（并发未命中合并），写入结束（成功或放弃）时通知等待的请求
+    private final Map<String, Sinks.Empty<Void>> lockMap = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private final AtomicInteger tmpId = new AtomicInteger();
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+
+        dirPath = Paths.get(dir);
+        Files.createDirectories(dirPath);
+        // 只删除缓存自己写入的文件，dir 可能与其他数据共用
+        try (Stream<Path> stream = Files.list(dirPath)) {
+            for (Path path : (Iterable<Path>) stream::iterator) {
+                if (isCacheFile(path.getFileName().toString()) && Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+        log.info("响应缓存目录: {}", dirPath.toAbsolutePath());
+    }
+
+    static boolean isCacheFile(String fileName) {
+        return FILE_NAME_PATTERN.matcher(fileName).matches();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 查找未过期的缓存项，找到时引用计数加 1，发送结束后需调用 {@link #release(CacheEntry)}
+     *
+     * @param key
+     * @return
+     */
+    public synchronized CacheEntry get(String key) {
+        CacheEntry entry = memoryMap.get(key);
+        if (Objects.isNull(entry)) {
+            entry = diskMap.get(key);
+        }
+        if (Objects.isNull(entry)) {
+            misses.increment();
+            return null;
+        }
+        if (entry.isExpired(System.currentTimeMillis())) {
+            remove(entry);
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        entry.acquire();
+        return entry;
+    }
+
+    public void release(CacheEntry entry) {
+        entry.release();
+    }
+
+    /**
+     * 获取写入锁
+     *
+     * @param key
+     * @return 获取成功返回 null（当前请求为 leader，写入结束后调用 {@link #unlock(String)}），否则返回等待写入结束的 Mono
+     */
+    public Mono<Void> lock(String key) {
+        Sinks.Empty<Void> sink = Sinks.empty();
+        Sinks.Empty<Void> current = lockMap.putIfAbsent(key, sink);
+        if (Objects.isNull(current)) {
+            return null;
+        }
+        return current.asMono()
+                .timeout(Duration.ofMillis(lockTimeout), Mono.empty());
+    }
+
+    public void unlock(String key) {
+        Sinks.Empty<Void> sink = lockMap.remove(key);
+        if (Objects.nonNull(sink)) {
+            sink.tryEmitEmpty();
+        }
+    }
+
+    /**
+     * 响应是否可以缓存，可以时返回新鲜度（毫秒）
+     *
+     * @param headers 响应头
+     * @param now
+     * @return 小于等于 0 表示不缓存
+     */
+    public long freshness(HttpHeaders headers, long now) {
+        // 只缓存 Vary 为空或仅为 Accept-Encoding 且未压缩的响应（所有客户端都接受未压缩的表示）
+        List<String> vary = headers.getVary();
+        if (!vary.isEmpty() && !(vary.size() == 1 && HttpHeaders.ACCEPT_ENCODING.equalsIgnoreCase(vary.get(0))
+                && Objects.isNull(headers.getFirst(HttpHeaders.CONTENT_ENCODING)))) {
+            return 0;
+        }
+        if (Objects.nonNull(headers.getFirst(HttpHeaders.SET_COOKIE))) {
+            return 0;
+        }
+
+        String cacheControl = StringUtils.join(headers.get(HttpHeaders.CACHE_CONTROL), ",");
+        if (StringUtils.isNotEmpty(cacheControl)) {
+            long maxAge = -1, sMaxAge = -1;
+            for (String directive : cacheControl.split(",")) {
+                String name = StringUtils.substringBefore(directive, "=").trim().toLowerCase();
+                String value = StringUtils.strip(StringUtils.substringAfter(directive, "=").trim(), "\"");
+                switch (name) {
+                    case "no-store":
+                    case "private":
+                    case "no-cache":
+                        return 0;
+                    case "max-age":
+                        maxAge = parseSeconds(value);
+                        break;
+                    case "s-maxage":
+                        sMaxAge = parseSeconds(value);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            if (sMaxAge >= 0) {
+                return sMaxAge * 1000;
+            }
+            if (maxAge >= 0) {
+                return maxAge * 1000;
+            }
+        }
+
+        long expires = headers.getExpires();
+        if (expires > 0) {
+            long date = headers.getDate();
+            return expires - (date > 0 ? date : now);
+        }
+
+        long lastModified = headers.getLastModified();
+        if (lastModified > 0) {
+            long date = headers.getDate();
+            return Math.min(((date > 0 ? date : now) - lastModified) / 10, heuristicMaxAge);
+        }
+        return 0;
+    }
+
+    /**
+     * 响应是否明确允许共享缓存（Cache-Control: public 或 s-maxage），用于带 Cookie 的请求的响应
+     *
+     * @param headers 响应头
+     * @return
+     */
+    public boolean isPublic(HttpHeaders headers) {
+        String cacheControl = StringUtils.join(headers.get(HttpHeaders.CACHE_CONTROL), ",");
+        if (StringUtils.isEmpty(cacheControl)) {
+            return false;
+        }
+        for (String directive : cacheControl.split(",")) {
+            String name = StringUtils.substringBefore(directive, "=").trim().toLowerCase();
+            if ("public".equals(name) || "s-maxage".equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long parseSeconds(String value) {
+        try {
+            return Math.max(0, Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 开始写入缓存
+     *
+     * @param key
+     * @param headers       响应头
+     * @param contentLength 响应体大小，未知时为 -1
+     * @param freshness     新鲜度（毫秒）
+     * @return 超过最大对象大小时返回 null
+     */
+    public Capture capture(String key, HttpHeaders headers, long contentLength, long freshness) {
+        if (contentLength > diskMaxObjectSize) {
+            return null;
+        }
+
+        HttpHeaders stored = new HttpHeaders();
+        for (String name : HEADER_NAMES) {
+            List<String> values = headers.get(name);
+            if (Objects.nonNull(values)) {
+                stored.put(name, values);
+            }
+        }
+        long now = System.currentTimeMillis();
+        return new Capture(key, stored, contentLength, now, now + freshness);
+    }
+
+    private synchronized void put(CacheEntry entry) {
+        CacheEntry old = memoryMap.get(entry.getKey());
+        if (Objects.isNull(old)) {
+            old = diskMap.get(entry.getKey());
+        }
+        if (Objects.nonNull(old)) {
+            remove(old);
+        }
+
+        if (entry.isOnDisk()) {
+            diskMap.put(entry.getKey(), entry);
+            diskSize += entry.getSize();
+            evict(diskMap, diskMaxSize, true);
+        } else {
+            memoryMap.put(entry.getKey(), entry);
+            memorySize += entry.getSize();
+            evict(memoryMap, memoryMaxSize, false);
+        }
+    }
+
+    private void remove(CacheEntry entry) {
+        if (entry.isOnDisk()) {
+            if (diskMap.remove(entry.getKey(), entry)) {
+                diskSize -= entry.getSize();
+            }
+        } else if (memoryMap.remove(entry.getKey(), entry)) {
+            memorySize -= entry.getSize();
+        }
+        entry.evict();
+    }
+
+    /**
+     * 淘汰最久未访问的缓存项，直到总大小不超过上限
+     */
+    private void evict(LinkedHashMap<String, CacheEntry> map, long maxSize, boolean disk) {
+        Iterator<CacheEntry> iterator = map.values().iterator();
+        while ((disk ? diskSize : memorySize) > maxSize && iterator.hasNext()) {
+            CacheEntry entry = iterator.next();
+            iterator.remove();
+            if (disk) {
+                diskSize -= entry.getSize();
+            } else {
+                memorySize -= entry.getSize();
+            }
+            entry.evict();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public synchronized long getMemorySize() {
+        return memorySize;
+    }
+
+    public synchronized long getDiskSize() {
+        return diskSize;
+    }
+
+    /**
+     * 写入中的响应体
+     * <p>
+     * 先写入内存，超过 memory-max-object-size 后转为写入磁盘临时文件（{@link AsynchronousFileChannel}，不阻塞事件循环线程），
+     * 响应体结束且所有写入完成后加入缓存并释放写入锁；出错、取消或超过最大对象大小时放弃。
+     */
+    public class Capture {
+
+        private final String key;
+        private final HttpHeaders headers;
+        private final long contentLength;
+        private final long storedAt;
+        private final long expiresAt;
+
+        private byte[] memory;
+        private Path tmpFile;
+        private AsynchronousFileChannel channel;
+
+        // 已接收的字节数
+        private long size;
+
+        // 未完成的磁盘写入数，加上“响应体未结束”的 1
+        private final AtomicInteger pending = new AtomicInteger(1);
+
+        // 响应体已结束（完成或放弃）
+        private final AtomicBoolean ended = new AtomicBoolean();
+
+        private volatile boolean failed;
+        private boolean finished;
+
+        private Capture(String key, HttpHeaders headers, long contentLength, long storedAt, long expiresAt) {
+            this.key = key;
+            this.headers = headers;
+            this.contentLength = contentLength;
+            this.storedAt = storedAt;
+            this.expiresAt = expiresAt;
+            // 已知大小超过内存对象上限时直接写入磁盘
+            this.memory = new byte[contentLength > memoryMaxObjectSize ? 0 : (int) Math.min(contentLength > 0 ? contentLength : 4096, memoryMaxObjectSize)];
+        }
+
+        /**
+         * 复制响应体数据（不改变 dataBuffer 的读位置）
+         *
+         * @param dataBuffer
+         */
+        public void write(DataBuffer dataBuffer) {
+            if (failed) {
+                return;
+            }
+
+            int length = dataBuffer.readableByteCount();
+            if (size + length > diskMaxObjectSize) {
+                abort();
+                return;
+            }
+
+            ByteBuffer byteBuffer = dataBuffer.asByteBuffer();
+            try {
+                if (Objects.isNull(channel) && contentLength <= memoryMaxObjectSize && size + length <= memoryMaxObjectSize) {
+                    if (size + length > memory.length) {
+                        memory = Arrays.copyOf(memory, (int) Math.min(Math.max(memory.length * 2L, size + length), memoryMaxObjectSize));
+                    }
+                    byteBuffer.get(memory, (int) size, length);
+                } else {
+                    // 转为写入磁盘
+                    if (Objects.isNull(channel)) {
+                        tmpFile = dirPath.resolve("tmp-" + tmpId.incrementAndGet());
+                        channel = AsynchronousFileChannel.open(tmpFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                        if (size > 0) {
+                            write(ByteBuffer.wrap(memory, 0, (int) size), 0);
+                        }
+                        memory = null;
+                    }
+                    ByteBuffer copy = ByteBuffer.allocate(length);
+                    copy.put(byteBuffer).flip();
+                    write(copy, size);
+                }
+                size += length;
+            } catch (IOException e) {
+                log.warn("写入缓存失败: " + key, e);
+                abort();
+            }
+        }
+
+        private void write(ByteBuffer byteBuffer, long position) {
+            pending.incrementAndGet();
+            channel.write(byteBuffer, position, null, new CompletionHandler<Integer, Void>() {
+                @Override
+                public void completed(Integer result, Void attachment) {
+                    if (byteBuffer.hasRemaining()) {
+                        // 未写完，继续写剩余部分
+                        channel.write(byteBuffer, position + byteBuffer.position(), null, this);
+                        return;
+                    }
+                    done();
+                }
+
+                @Override
+                public void failed(Throwable e, Void attachment) {
+                    log.warn("写入缓存失败: " + key, e);
+                    failed = true;
+                    done();
+                }
+            });
+        }
+
+        /**
+         * 响应体结束
+         */
+        public void complete() {
+            if (ended.compareAndSet(false, true)) {
+                done();
+            }
+        }
+
+        /**
+         * 放弃写入（出错、取消、超过大小）
+         */
+        public void abort() {
+            failed = true;
+            if (ended.compareAndSet(false, true)) {
+                done();
+            }
+        }
+
+        private void done() {
+            if (pending.decrementAndGet() != 0) {
+                return;
+            }
+            synchronized (this) {
+                if (finished) {
+                    return;
+                }
+                finished = true;
+            }
+
+            try {
+                if (Objects.nonNull(channel)) {
+                    channel.close();
+                }
+                if (!failed && (contentLength < 0 || contentLength == size)) {
+                    if (Objects.isNull(tmpFile)) {
+                        put(new CacheEntry(key, headers, Arrays.copyOf(memory, (int) size), null, size, storedAt, expiresAt));
+                    } else {
+                        Path file = dirPath.resolve(DigestUtils.md5DigestAsHex(key.getBytes(StandardCharsets.UTF_8)) + "-" + storedAt);
+                        Files.move(tmpFile, file, StandardCopyOption.ATOMIC_MOVE);
+                        tmpFile = null;
+                        put(new CacheEntry(key, headers, null, file, size, storedAt, expiresAt));
+                    }
+                    log.debug("已缓存: {}, {} 字节", key, size);
+                }
+            } catch (IOException e) {
+                log.warn("写入缓存失败: " + key, e);
+            } finally {
+                if (Objects.nonNull(tmpFile)) {
+                    try {
+                        Files.deleteIfExists(tmpFile);
+                    } catch (IOException e) {
+                        log.warn("删除缓存临时文件失败: " + tmpFile, e);
+                    }
+                }
+                unlock(key);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,121 @@
+package org.gentle.deploy.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 重试预算（按应用）
+ * <p>
+ * 重试和对冲请求都计为重试：应用进行中的重试数不超过 max(min-concurrency, 进行中的请求数 * budget-percent%)，
+ * 服务整体故障时重试量随流量按比例封顶，不会成倍放大对服务的压力。
+ *
+ * @author xiangqian
+ * @date 15:10 2026/10/24
+ */
+@Component
+public class RetryBudget {
+
+    // 进行中的重试数占进行中的请求数的百分比
+    @Value("${server.retry.budget-percent:20}")
+    private int budgetPercent;
+
+    // 不受百分比限制的最小重试并发数（低流量时仍可重试）
+    @Value("${server.retry.min-concurrency:3}")
+    private int minConcurrency;
+
+    // key: 应用名
+    private Map<String, Budget> budgetMap;
+
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        budgetMap = new ConcurrentHashMap<>();
+    }
+
+    public Budget get(String app) {
+        Budget budget = budgetMap.get(app);
+        if (Objects.isNull(budget)) {
+            budget = budgetMap.computeIfAbsent(app, key -> new Budget());
+        }
+        return budget;
+    }
+
+    public void hedgeWin() {
+        hedgeWins.increment();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    public long getHedges() {
+        return hedges.sum();
+    }
+
+    public long getHedgeWins() {
+        return hedgeWins.sum();
+    }
+
+    public long getExhausted() {
+        return exhausted.sum();
+    }
+
+    /**
+     * 应用的重试预算
+     */
+    public class Budget {
+
+        // 进行中的请求数、重试数
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicInteger active = new AtomicInteger();
+
+        private Budget() {
+        }
+
+        public void enter() {
+            requests.incrementAndGet();
+        }
+
+        public void leave() {
+            requests.decrementAndGet();
+        }
+
+        /**
+         * 申请一次重试（或对冲），成功后需调用 {@link #release()}
+         *
+         * @param hedge 是否为对冲请求
+         * @return 预算用尽时返回 false
+         */
+        public boolean acquire(boolean hedge) {
+            int max = Math.max(minConcurrency, requests.get() * budgetPercent / 100);
+            while (true) {
+                int current = active.get();
+                if (current >= max) {
+                    exhausted.increment();
+                    return false;
+                }
+                if (active.compareAndSet(current, current + 1)) {
+                    (hedge ? hedges : retries).increment();
+                    return true;
+                }
+            }
+        }
+
+        public void release() {
+            active.decrementAndGet();
+        }
+
+    }
+
+}
@@ -0,0 +1,391 @@
+package org.gentle.deploy.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.ReactiveLoadBalancerClientFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.ServerWebExchangeDecorator;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.netty.Connection;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 幂等请求的重试与对冲
+ * <p>
+ * 1、重试：连接被拒绝、重置等传输错误（收到响应头之前）时，换一个未尝试过的候选服务重新转发，
+ * 覆盖服务崩溃后到探测发现并切换路由之间的窗口；
+ * 2、对冲：安全方法（GET、HEAD 等）的请求超过应用首字节耗时的分位数（{@link HedgeDelay}）仍未响应时，
+ * 向另一个候选服务再发一份，先返回响应头的一份胜出，另一份取消。
+ * <p>
+ * 每次尝试在独立的 exchange 副本（属性、响应状态码和响应头）上执行，重新经过准入控制、处理中请求计数和被动健康检测，
+ * 只有胜出的一份合并回原 exchange，由 NettyWriteResponseFilter 写出响应体。重试和对冲受 {@link RetryBudget} 限制。
+ * 只处理没有请求体的请求，有请求体的请求直接转发。
+ *
+ * @author xiangqian
+ * @date 15:40 2026/10/24
+ */
+@Slf4j
+@Component
+public class RetryGlobalFilter implements GlobalFilter, Ordered {
+
+    // 重试、对冲请求的尝试序号（从 2 开始），准入控制不再对其限流
+    public static final String ATTEMPT_ATTR = RetryGlobalFilter.class.getName() + ".attempt";
+
+    // 可以重试的幂等方法
+    private static final Set<HttpMethod> IDEMPOTENT_METHODS = EnumSet.of(HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS, HttpMethod.TRACE, HttpMethod.PUT, HttpMethod.DELETE);
+
+    // 可以对冲（同时发送多份）的安全方法
+    private static final Set<HttpMethod> SAFE_METHODS = EnumSet.of(HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS, HttpMethod.TRACE);
+
+    @Value("${server.retry.enabled:false}")
+    private boolean enabled;
+
+    // 最多尝试次数（含第一次和对冲请求）
+    @Value("${server.retry.max-attempts:3}")
+    private int maxAttempts;
+
+    @Autowired
+    private ServerBalancer serverBalancer;
+
+    @Autowired
+    private RetryBudget retryBudget;
+
+    @Autowired
+    private HedgeDelay hedgeDelay;
+
+    @Autowired
+    private InflightTracker inflightTracker;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        if (!enabled && !hedgeDelay.isEnabled()) {
+            return chain.filter(exchange);
+        }
+
+        URI url = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        if (Objects.isNull(url) || Objects.isNull(url.getRawAuthority()) || ServerBalancer.SCHEME.equals(url.getScheme()) || Objects.isNull(route)) {
+            return chain.filter(exchange);
+        }
+
+        // 没有其他候选服务（当前目标可能已被摘除、尚未切换路由，仍需重试）
+        String app = route.getId();
+        if (Objects.isNull(serverBalancer.alternative(app, Collections.singleton(url.getRawAuthority())))) {
+            return chain.filter(exchange);
+        }
+
+        ServerHttpRequest request = exchange.getRequest();
+        HttpHeaders headers = request.getHeaders();
+        if (!IDEMPOTENT_METHODS.contains(request.getMethod()) || headers.getContentLength() > 0 || headers.containsKey(HttpHeaders.TRANSFER_ENCODING)) {
+            return chain.filter(exchange);
+        }
+
+        RetryBudget.Budget budget = retryBudget.get(app);
+        budget.enter();
+        Attempts attempts = new Attempts(exchange, chain, app, budget);
+        Mono<Fork> primary = attempts.send(url, false)
+                .doOnError(e -> attempts.failed.tryEmitValue(true));
+
+        Mono<Fork> result = primary;
+        long delay = hedgeDelay.isEnabled() && SAFE_METHODS.contains(request.getMethod()) ? hedgeDelay.get(app) : 0;
+        if (delay > 0) {
+            // 第一份在触发延迟内失败（已重试）时不再对冲
+            Mono<Fork> hedged = Mono.delay(Duration.ofMillis(delay))
+                    .takeUntilOther(attempts.failed.asMono())
+                    .flatMap(tick -> attempts.next(true))
+                    .doOnNext(fork -> retryBudget.hedgeWin());
+            result = Flux.mergeDelayError(1, primary, hedged)
+                    .next()
+                    .onErrorMap(Exceptions::isMultiple, e -> Exceptions.unwrapMultiple(e).get(0));
+        }
+        return result.flatMap(this::merge)
+                .doFinally(signalType -> budget.leave());
+    }
+
+    /**
+     * 胜出的一份合并回原 exchange
+     */
+    private Mono<Void> merge(Fork fork) {
+        ServerWebExchange exchange = fork.getDelegate();
+        ServerHttpResponse response = exchange.getResponse();
+        if (Objects.nonNull(fork.response.statusCode)) {
+            response.setRawStatusCode(fork.response.statusCode);
+        }
+        response.getHeaders().putAll(fork.response.headers);
+        exchange.getAttributes().putAll(fork.attributes);
+
+        // 过滤器直接结束了响应（如准入控制拒绝）
+        if (Objects.nonNull(fork.response.body)) {
+            return response.writeWith(fork.response.body);
+        }
+        if (fork.response.completed) {
+            return response.setComplete();
+        }
+        return Mono.empty();
+    }
+
+    /**
+     * 失败、取消或落败的一份：结束处理中请求计数，关闭已建立的连接
+     */
+    private void discard(Fork fork) {
+        inflightTracker.leave(fork);
+        Connection connection = (Connection) fork.attributes.remove(ServerWebExchangeUtils.CLIENT_RESPONSE_CONN_ATTR);
+        if (Objects.nonNull(connection)) {
+            connection.dispose();
+        }
+    }
+
+    /**
+     * 收到响应头之前的传输错误（连接被拒绝、连接超时、连接被重置、提前关闭）
+     */
+    private boolean isRetryable(Throwable e) {
+        for (Throwable cause = e; Objects.nonNull(cause); cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int getOrder() {
+        // BalanceGlobalFilter 之后，AdmissionGlobalFilter 之前，每次尝试都经过准入控制、处理中请求计数和被动健康检测
+        return ReactiveLoadBalancerClientFilter.LOAD_BALANCER_CLIENT_FILTER_ORDER - 30;
+    }
+
+    /**
+     * 一个请求的所有尝试
+     */
+    private class Attempts {
+
+        private final ServerWebExchange exchange;
+        private final GatewayFilterChain chain;
+        private final String app;
+        private final RetryBudget.Budget budget;
+        private final long startTime = System.nanoTime();
+
+        // 已尝试的服务，host:port
+        private final Set<String> tried = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger count = new AtomicInteger();
+
+        // 胜出的一份
+        private final AtomicReference<Fork> winner = new AtomicReference<>();
+
+        // 第一份（含其重试）最终失败
+        private final Sinks.One<Boolean> failed = Sinks.one();
+
+        private Attempts(ServerWebExchange exchange, GatewayFilterChain chain, String app, RetryBudget.Budget budget) {
+            this.exchange = exchange;
+            this.chain = chain;
+            this.app = app;
+            this.budget = budget;
+        }
+
+        /**
+         * 转发一份，失败时重试
+         *
+         * @param url
+         * @param budgeted 是否占用了重试预算
+         * @return 胜出时返回副本，落败时为空
+         */
+        private Mono<Fork> send(URI url, boolean budgeted) {
+            tried.add(url.getRawAuthority());
+            Fork fork = new Fork(exchange, url, count.incrementAndGet());
+            return Mono.defer(() -> chain.filter(fork))
+                    .then(Mono.fromSupplier(() -> fork))
+                    .filter(value -> {
+                        if (winner.compareAndSet(null, fork)) {
+                            if (hedgeDelay.isEnabled()) {
+                                hedgeDelay.record(app, System.nanoTime() - startTime);
+                            }
+                            return true;
+                        }
+                        discard(fork);
+                        return false;
+                    })
+                    .doOnCancel(() -> {
+                        // 胜出后下游取消其余的份（MonoNext 先取消再发出），胜出的一份不释放
+                        if (winner.get() != fork) {
+                            discard(fork);
+                        }
+                    })
+                    .doFinally(signalType -> {
+                        if (budgeted) {
+                            budget.release();
+                        }
+                    })
+                    .onErrorResume(e -> {
+                        discard(fork);
+                        if (!enabled || !isRetryable(e)) {
+                            return Mono.error(e);
+                        }
+                        log.debug("[{}] 转发到 {} 失败，重试: {}", app, url.getRawAuthority(), e.toString());
+                        return next(false).switchIfEmpty(Mono.error(e));
+                    });
+        }
+
+        /**
+         * 换一个未尝试过的候选服务转发
+         *
+         * @param hedge 是否为对冲请求
+         * @return 没有可选服务、超过最多尝试次数或重试预算用尽时为空
+         */
+        private Mono<Fork> next(boolean hedge) {
+            if (Objects.nonNull(winner.get()) || count.get() >= maxAttempts) {
+                return Mono.empty();
+            }
+            ServerAddr serverAddr = serverBalancer.alternative(app, tried);
+            if (Objects.isNull(serverAddr) || !budget.acquire(hedge)) {
+                return Mono.empty();
+            }
+
+            URI url = exchange.getRequiredAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+            url = UriComponentsBuilder.fromUri(url)
+                    .host(serverAddr.getHost())
+                    .port(serverAddr.getPort())
+                    .build(true)
+                    .toUri();
+            return send(url, true);
+        }
+
+    }
+
+    /**
+     * 一次尝试使用的 exchange 副本：独立的属性、响应状态码和响应头，请求体为空
+     */
+    private static class Fork extends ServerWebExchangeDecorator {
+
+        private final Map<String, Object> attributes;
+        private final ServerHttpRequest request;
+        private final ForkResponse response;
+
+        private Fork(ServerWebExchange exchange, URI url, int attempt) {
+            super(exchange);
+            attributes = new ConcurrentHashMap<>(exchange.getAttributes());
+            attributes.put(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR, url);
+            if (attempt > 1) {
+                attributes.put(ATTEMPT_ATTR, attempt);
+            }
+            // 只处理没有请求体的请求，每份不再订阅原请求体
+            request = new ServerHttpRequestDecorator(exchange.getRequest()) {
+                @Override
+                public Flux<DataBuffer> getBody() {
+                    return Flux.empty();
+                }
+            };
+            response = new ForkResponse(exchange.getResponse());
+        }
+
+        @Override
+        public ServerHttpRequest getRequest() {
+            return request;
+        }
+
+        @Override
+        public ServerHttpResponse getResponse() {
+            return response;
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+    }
+
+    /**
+     * 暂存响应状态码、响应头，胜出后再写入原响应
+     */
+    private static class ForkResponse extends ServerHttpResponseDecorator {
+
+        private final HttpHeaders headers = new HttpHeaders();
+        private volatile Integer statusCode;
+        private volatile boolean completed;
+        private volatile Publisher<? extends DataBuffer> body;
+
+        private ForkResponse(ServerHttpResponse delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public boolean setStatusCode(HttpStatus status) {
+            statusCode = Objects.isNull(status) ? null : status.value();
+            return true;
+        }
+
+        @Override
+        public HttpStatus getStatusCode() {
+            return Objects.isNull(statusCode) ? null : HttpStatus.resolve(statusCode);
+        }
+
+        @Override
+        public boolean setRawStatusCode(Integer value) {
+            statusCode = value;
+            return true;
+        }
+
+        @Override
+        public Integer getRawStatusCode() {
+            return statusCode;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public boolean isCommitted() {
+            return completed;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            this.body = body;
+            completed = true;
+            return Mono.empty();
+        }
+
+        @Override
+        public Mono<Void> setComplete() {
+            completed = true;
+            return Mono.empty();
+        }
+
+    }
+
+}
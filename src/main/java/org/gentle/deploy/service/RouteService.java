@@ -2,26 +2,29 @@ package org.gentle.deploy.service;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
-import org.springframework.cloud.gateway.event.RefreshRoutesEvent;
 import org.springframework.cloud.gateway.filter.FilterDefinition;
 import org.springframework.cloud.gateway.handler.predicate.PredicateDefinition;
 import org.springframework.cloud.gateway.route.RouteDefinition;
-import org.springframework.cloud.gateway.route.RouteDefinitionRepository;
-import org.springframework.context.ApplicationEventPublisher;
-import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.cloud.gateway.support.NameUtils;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import javax.annotation.PostConstruct;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.stream.Collectors;
 
 /**
  * 路由服务
@@ -31,134 +34,278 @@ import java.util.stream.Collectors;
  */
 @Slf4j
 @Service
-public class RouteService implements ApplicationEventPublisherAware, ApplicationRunner {
+public class RouteService implements ApplicationRunner {
+
+    private static final String API_ROUTE_ID = "_api";
 
     @Autowired
-    private RouteDefinitionRepository routeDefinitionRepository;
+    private RouteSnapshotLocator routeSnapshotLocator;
 
-    private ApplicationEventPublisher applicationEventPublisher;
+    @Autowired
+    private Metrics metrics;
 
-    @Override
-    public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
-        this.applicationEventPublisher = applicationEventPublisher;
+    @Autowired
+    private RegistryEvents registryEvents;
+
+    // 合并窗口（毫秒），窗口内的路由变更一次发布，0 表示立即发布
+    @Value("${server.route.coalesce-window:50}")
+    private long coalesceWindow;
+
+    // 待发布的路由变更，key: 路由 id，value: 路由定义（null 表示删除）
+    private Map<String, RouteDefinition> pending = new LinkedHashMap<>();
+
+    // 正在发布的路由变更
+    private Map<String, RouteDefinition> publishingChanges = Map.of();
+
+    private boolean flushScheduled;
+    private boolean publishing;
+
+    /**
+     * 内置 _api 路由，优先于所有应用的路由，由 {@link ReqGlobalFilter} 直接处理，不转发
+     */
+    @PostConstruct
+    public void init() throws URISyntaxException {
+        RouteDefinition routeDefinition = new RouteDefinition();
+        routeDefinition.setId(API_ROUTE_ID);
+        routeDefinition.setUri(new URI("no://op"));
+        routeDefinition.setPredicates(List.of(predicateDefinition("Path", "/_api", "/_api/**")));
+        routeDefinition.setOrder(Integer.MIN_VALUE);
+        routeSnapshotLocator.save(List.of(routeDefinition)).block();
+    }
+
+    public List<RouteDefinition> list() {
+        return routeSnapshotLocator.list();
     }
 
-    public synchronized List<RouteDefinition> list() {
-        Flux<RouteDefinition> flux = routeDefinitionRepository.getRouteDefinitions();
-        return flux.toStream().collect(Collectors.toList());
+    public Map<String, RouteDefinition> map() {
+        return routeSnapshotLocator.map();
     }
 
-    public synchronized Map<String, RouteDefinition> map() {
-        Flux<RouteDefinition> flux = routeDefinitionRepository.getRouteDefinitions();
-        return flux.toStream().collect(Collectors.toMap(RouteDefinition::getId, routeDefinition -> routeDefinition));
+    /**
+     * 路由是否存在，包括合并窗口内待发布、正在发布的变更
+     *
+     * @param id
+     * @return
+     */
+    public synchronized boolean contains(String id) {
+        if (pending.containsKey(id)) {
+            return Objects.nonNull(pending.get(id));
+        }
+        if (publishingChanges.containsKey(id)) {
+            return Objects.nonNull(publishingChanges.get(id));
+        }
+        return map().containsKey(id);
     }
 
-    public synchronized void delete(String... ids) {
+    public void delete(String... ids) {
         if (ArrayUtils.isEmpty(ids)) {
             return;
         }
 
-        // delete
-        StringBuilder messageBuilder = new StringBuilder();
-        messageBuilder.setLength(0);
-        Map<String, RouteDefinition> routeDefinitionMap = map();
+        Map<String, RouteDefinition> changes = new LinkedHashMap<>();
         for (String id : ids) {
-            RouteDefinition routeDefinition = routeDefinitionMap.get(id);
-            if (routeDefinition != null) {
-                routeDefinitionRepository.delete(Mono.just(id));
-                messageBuilder.append('\n').append('\t').append("[-] ").append(routeDefinition);
-            }
-        }
-
-        // publish event ?
-        if (messageBuilder.length() > 0) {
-            applicationEventPublisher.publishEvent(new RefreshRoutesEvent(this));
-            log.info("已发布删除路由事件:{}\n", messageBuilder);
-            printRouteInfo();
+            changes.put(id, null);
         }
+        publish(changes);
     }
 
-    public synchronized void saveAndOverwriteIfExists(RouteDefinition... routeDefinitions) {
+    public void saveAndOverwriteIfExists(RouteDefinition... routeDefinitions) {
         if (ArrayUtils.isEmpty(routeDefinitions)) {
             return;
         }
 
-        // save
-        StringBuilder messageBuilder = new StringBuilder();
-        messageBuilder.setLength(0);
-        Map<String, RouteDefinition> routeDefinitionMap = map();
+        Map<String, RouteDefinition> changes = new LinkedHashMap<>();
         for (RouteDefinition routeDefinition : routeDefinitions) {
-            RouteDefinition routeDefinitionOld = routeDefinitionMap.get(routeDefinition.getId());
-            // save
-            if (Objects.isNull(routeDefinitionOld)) {
-                routeDefinitionRepository.save(Mono.just(routeDefinition)).subscribe();
-                messageBuilder.append('\n').append('\t').append("[ +] ").append(routeDefinition);
-                continue;
-            }
+            changes.put(routeDefinition.getId(), routeDefinition);
+        }
+        publish(changes);
+    }
 
-            // delete & save
-            if (!routeDefinition.equals(routeDefinitionOld)) {
-                routeDefinitionRepository.delete(Mono.just(routeDefinition.getId()));
-                routeDefinitionRepository.save(Mono.just(routeDefinition)).subscribe();
-                messageBuilder.append('\n').append('\t').append("[-+] ").append(routeDefinition);
-                continue;
+    /**
+     * 发布路由变更
+     * <p>
+     * 合并窗口内的变更（同一路由以最后一次为准）在窗口结束时一次替换路由快照；上一次发布未完成时，新的变更继续等待，
+     * 发布完成后再合并发布，保证按顺序生效。批量注册或滚动发布多个服务时只替换一次路由。
+     *
+     * @param changes key: 路由 id，value: 路由定义（null 表示删除）
+     */
+    private void publish(Map<String, RouteDefinition> changes) {
+        synchronized (this) {
+            pending.putAll(changes);
+            if (flushScheduled || publishing) {
+                return;
             }
+            flushScheduled = true;
         }
 
-        // publish event ?
-        if (messageBuilder.length() > 0) {
-            applicationEventPublisher.publishEvent(new RefreshRoutesEvent(this));
-            log.info("已发布新增路由事件:{}\n", messageBuilder);
-            printRouteInfo();
+        if (coalesceWindow <= 0) {
+            flush();
+        } else {
+            Mono.delay(Duration.ofMillis(coalesceWindow)).subscribe(tick -> flush());
         }
     }
 
+    private void flush() {
+        Map<String, RouteDefinition> changes;
+        synchronized (this) {
+            flushScheduled = false;
+            if (publishing || pending.isEmpty()) {
+                return;
+            }
+            publishing = true;
+            changes = pending;
+            publishingChanges = changes;
+            pending = new LinkedHashMap<>();
+        }
+
+        List<RouteDefinition> routeDefinitions = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        changes.forEach((id, routeDefinition) -> {
+            if (Objects.isNull(routeDefinition)) {
+                ids.add(id);
+            } else {
+                routeDefinitions.add(routeDefinition);
+            }
+        });
+
+        // 只转换并替换发生变更的路由
+        Map<String, RouteDefinition> routeDefinitionMap = map();
+        long startTime = System.nanoTime();
+        update(routeDefinitions, ids)
+                .doFinally(signalType -> {
+                    boolean next;
+                    synchronized (this) {
+                        publishing = false;
+                        publishingChanges = Map.of();
+                        next = !pending.isEmpty() && !flushScheduled;
+                        flushScheduled |= next;
+                    }
+                    // 发布期间有新的变更
+                    if (next) {
+                        flush();
+                    }
+                })
+                .subscribe(change -> {
+                    if (change.getSaved().isEmpty() && change.getDeleted().isEmpty()) {
+                        return;
+                    }
+                    metrics.routeRefresh(System.nanoTime() - startTime);
+
+                    // 路由快照已替换，发布路由切换事件
+                    change.getSaved().forEach(routeDefinition -> registryEvents.publish(RegistryEvents.ROUTE, routeDefinition.getId(), null, String.valueOf(routeDefinition.getUri())));
+                    change.getDeleted().forEach(routeDefinition -> registryEvents.publish(RegistryEvents.ROUTE, routeDefinition.getId(), null, "deleted"));
+
+                    StringBuilder messageBuilder = new StringBuilder();
+                    for (RouteDefinition routeDefinition : change.getSaved()) {
+                        messageBuilder.append('\n').append('\t').append(routeDefinitionMap.containsKey(routeDefinition.getId()) ? "[-+] " : "[ +] ").append(routeDefinition);
+                    }
+                    for (RouteDefinition routeDefinition : change.getDeleted()) {
+                        messageBuilder.append('\n').append('\t').append("[-] ").append(routeDefinition);
+                    }
+                    log.info("已更新路由（合并 {} 项变更）:{}\n", changes.size(), messageBuilder);
+                    printRouteInfo();
+                }, e -> log.error("更新路由失败", e));
+    }
+
+    /**
+     * 一次替换路由快照
+     * <p>
+     * 转换失败时（网关配置 fail-on-route-definition-error 默认为 true，任一路由定义无法转换则整批失败）逐个转换、替换，
+     * 只跳过无法转换的路由定义（保留其原有路由），同一合并窗口内其他应用的变更照常生效。
+     *
+     * @param routeDefinitions
+     * @param ids
+     * @return
+     */
+    private Mono<RouteSnapshotLocator.Change> update(List<RouteDefinition> routeDefinitions, List<String> ids) {
+        return routeSnapshotLocator.update(routeDefinitions, ids)
+                .onErrorResume(e -> {
+                    log.warn("批量更新路由失败，逐个更新: {}", e.toString());
+                    List<Mono<RouteSnapshotLocator.Change>> monos = new ArrayList<>(routeDefinitions.size() + 1);
+                    for (RouteDefinition routeDefinition : routeDefinitions) {
+                        monos.add(routeSnapshotLocator.update(List.of(routeDefinition), Collections.emptyList())
+                                .onErrorResume(ex -> {
+                                    log.error("路由转换失败，跳过: {}", routeDefinition, ex);
+                                    return Mono.empty();
+                                }));
+                    }
+                    if (!ids.isEmpty()) {
+                        monos.add(routeSnapshotLocator.update(Collections.emptyList(), ids));
+                    }
+                    return Flux.concat(monos)
+                            .collectList()
+                            .map(changes -> {
+                                List<RouteDefinition> saved = new ArrayList<>();
+                                List<RouteDefinition> deleted = new ArrayList<>();
+                                changes.forEach(change -> {
+                                    saved.addAll(change.getSaved());
+                                    deleted.addAll(change.getDeleted());
+                                });
+                                return new RouteSnapshotLocator.Change(saved, deleted);
+                            });
+                });
+    }
+
     public void printRouteInfo() {
+        // 路由较多时输出全部路由开销较大，仅 debug 级别输出
+        if (!log.isDebugEnabled()) {
+            return;
+        }
+
         StringBuilder messageBuilder = new StringBuilder();
         List<RouteDefinition> routeDefinitionList = list();
         for (RouteDefinition routeDefinition : routeDefinitionList) {
             messageBuilder.append('\n').append('\t').append(routeDefinition);
         }
-        log.info("已配置的路由列表：{}\n", messageBuilder);
-    }
-
-    public RouteDefinition createRouteDefinition(URI uri, String path, Integer stripPrefix) {
-        return createRouteDefinition("test", uri, path, stripPrefix);
+        log.debug("已配置的路由列表：{}\n", messageBuilder);
     }
 
     /**
-     * 创建路由定义
+     * 创建应用的路由定义
+     * <p>
+     * 路由 id 为应用名，按路径前缀（Path）和域名（Host，含任意端口）匹配；
+     * 指定域名的路由优先，其次路径前缀层级越深越优先，默认应用（无前缀、无域名）最后匹配。
      *
-     * @param id
+     * @param app
      * @param uri
-     * @param path
-     * @param stripPrefix
      * @return
-     * @throws URISyntaxException
      */
-    private RouteDefinition createRouteDefinition(String id, URI uri, String path, Integer stripPrefix) {
+    public RouteDefinition createRouteDefinition(App app, URI uri) {
         // RouteDefinition
         RouteDefinition routeDefinition = new RouteDefinition();
 
         // id
-        routeDefinition.setId(id);
+        routeDefinition.setId(app.getName());
 
         // uri，要代理的服务
         routeDefinition.setUri(uri);
 
         // predicates
-        PredicateDefinition predicateDefinition = new PredicateDefinition();
+        List<PredicateDefinition> predicateDefinitions = new ArrayList<>(2);
         // 设置转发路径
-        predicateDefinition.setName("Path");
-        predicateDefinition.setArgs(Map.of("_genkey_0", path));
-        routeDefinition.setPredicates(List.of(predicateDefinition));
+        String prefix = app.getPrefix();
+        if (Objects.isNull(prefix)) {
+            predicateDefinitions.add(predicateDefinition("Path", "/**"));
+        } else {
+            predicateDefinitions.add(predicateDefinition("Path", prefix, prefix + "/**"));
+        }
+        // Host 请求头含端口，同时匹配 domain 和 domain:端口
+        String domain = app.getDomain();
+        if (Objects.nonNull(domain)) {
+            predicateDefinitions.add(predicateDefinition("Host", domain, domain + ":*"));
+        }
+        routeDefinition.setPredicates(predicateDefinitions);
 
-        // filters
-        if (Objects.nonNull(stripPrefix)) {
+        // order
+        int depth = Objects.isNull(prefix) ? 0 : StringUtils.countMatches(prefix, '/');
+        routeDefinition.setOrder((Objects.isNull(domain) ? 0 : -1000) - depth);
+
+        // filters，uri 中的路径（服务的 path）加在请求路径前，RouteToRequestUrlFilter 只取 uri 的 scheme、host、port
+        String pathPrefix = App.normalizePrefix(uri.getRawPath());
+        if (Objects.nonNull(pathPrefix)) {
             FilterDefinition filterDefinition = new FilterDefinition();
-            // StripPrefix的作用是去掉前缀的，值即对应层数
-            filterDefinition.setName("StripPrefix");
-            filterDefinition.setArgs(Map.of("_genkey_0", String.valueOf(stripPrefix)));
+            filterDefinition.setName("PrefixPath");
+            filterDefinition.addArg(NameUtils.generateName(0), pathPrefix);
             routeDefinition.setFilters(List.of(filterDefinition));
         }
 
@@ -166,19 +313,37 @@ public class RouteService implements ApplicationEventPublisherAware, Application
         //  cloud:
         //    gateway:
         //      routes:
-        //        - id: EXAMPLE-SERVICE
+        //        - id: order
         //          uri: http://example:8080
         //          predicates:
-        //            - Path=/example/**
+        //            - Path=/order,/order/**
+        //            - Host=example.com,example.com:*
+        //          order: -1001
         //          filters:
-        //            - StripPrefix=1
+        //            - PrefixPath=/api
 
         return routeDefinition;
     }
 
+    private PredicateDefinition predicateDefinition(String name, String... args) {
+        PredicateDefinition predicateDefinition = new PredicateDefinition();
+        predicateDefinition.setName(name);
+        Map<String, String> argMap = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            argMap.put(NameUtils.generateName(i), args[i]);
+        }
+        predicateDefinition.setArgs(argMap);
+        return predicateDefinition;
+    }
+
     @Override
     public void run(ApplicationArguments args) throws Exception {
-        RouteDefinition routeDefinition = createRouteDefinition(new URI("http://fr.rpmfind.net/linux/"), "/**", null);
+        // 已从注册日志恢复默认应用的路由（可能还在合并窗口内，未发布）
+        if (contains(App.DEFAULT)) {
+            return;
+        }
+
+        RouteDefinition routeDefinition = createRouteDefinition(new App(App.DEFAULT), new URI("http://fr.rpmfind.net/linux/"));
         saveAndOverwriteIfExists(routeDefinition);
     }
 
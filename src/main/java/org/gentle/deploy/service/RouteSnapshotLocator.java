@@ -0,0 +1,433 @@
+package org.gentle.deploy.service;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.gateway.config.GatewayProperties;
+import org.springframework.cloud.gateway.event.RefreshRoutesEvent;
+import org.springframework.cloud.gateway.filter.factory.GatewayFilterFactory;
+import org.springframework.cloud.gateway.handler.predicate.PredicateDefinition;
+import org.springframework.cloud.gateway.handler.predicate.RoutePredicateFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.cloud.gateway.route.RouteDefinitionRouteLocator;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import org.springframework.cloud.gateway.support.NameUtils;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.annotation.AnnotationAwareOrderComparator;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.reactive.ServerWebExchangeContextFilter;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * 路由快照
+ * <p>
+ * 作为网关主 {@link RouteLocator}（替换 CachingRouteLocator），并通过 {@link RouteSnapshotRepository} 提供路由定义存储。
+ * 路由定义与转换后的路由保存在不可变快照中，写入时只转换变更的路由，再通过 CAS 原子替换快照（copy-on-write），
+ * 无需发布 {@link RefreshRoutesEvent} 让网关重建所有路由；读取时直接返回当前快照，不加锁、不阻塞。
+ * <p>
+ * 快照同时按域名（Host）和路径段（Path）建立索引：请求匹配路由时（Reactor Context 中有当前请求，见 {@link ExchangeContextWebFilter}），
+ * 只返回域名和路径前缀可能匹配的候选路由，由网关继续判断断言，路由数量增加时匹配开销只与路径深度和候选路由数有关。
+ *
+ * @author xiangqian
+ * @date 21:20 2026/10/19
+ */
+@Slf4j
+@Primary
+@Component("cachedCompositeRouteLocator")
+public class RouteSnapshotLocator implements RouteLocator, ApplicationListener<RefreshRoutesEvent> {
+
+    private static final String DEFINITIONS_KEY = RouteSnapshotLocator.class.getName() + ".definitions";
+
+    @Autowired
+    private GatewayProperties gatewayProperties;
+
+    @Autowired
+    private List<RoutePredicateFactory<?>> predicates;
+
+    @Autowired
+    private List<GatewayFilterFactory<?>> gatewayFilterFactories;
+
+    @Autowired
+    private ConfigurationService configurationService;
+
+    // 路由定义 -> 路由 转换器，待转换的路由定义通过 Reactor Context 传入
+    private RouteDefinitionRouteLocator converter;
+
+    private AtomicReference<Snapshot> snapshot;
+
+    // 上次刷新时配置文件中的路由，再次刷新时删除配置中已移除的路由
+    private volatile Map<String, RouteDefinition> staticDefinitions = Collections.emptyMap();
+
+    @PostConstruct
+    public void init() {
+        converter = new RouteDefinitionRouteLocator(
+                () -> Flux.deferContextual(contextView -> Flux.fromIterable(contextView.<Collection<RouteDefinition>>get(DEFINITIONS_KEY))),
+                // RouteDefinitionRouteLocator 的参数是原始类型的 List
+                new ArrayList<>(predicates),
+                new ArrayList<>(gatewayFilterFactories),
+                gatewayProperties,
+                configurationService);
+        snapshot = new AtomicReference<>(new Snapshot(Collections.emptyMap(), Collections.emptyMap()));
+    }
+
+    @Override
+    public Flux<Route> getRoutes() {
+        return Flux.deferContextual(contextView -> {
+            Snapshot s = snapshot.get();
+            Optional<ServerWebExchange> exchange = contextView.getOrEmpty(ServerWebExchangeContextFilter.EXCHANGE_CONTEXT_ATTRIBUTE);
+            return Flux.fromIterable(exchange.isPresent() ? s.index.candidates(exchange.get().getRequest()) : s.sortedRoutes);
+        });
+    }
+
+    public Flux<RouteDefinition> getRouteDefinitions() {
+        return Flux.fromIterable(snapshot.get().definitions.values());
+    }
+
+    public List<RouteDefinition> list() {
+        return new ArrayList<>(snapshot.get().definitions.values());
+    }
+
+    public Map<String, RouteDefinition> map() {
+        return snapshot.get().definitions;
+    }
+
+    /**
+     * 新增或覆盖路由
+     *
+     * @param routeDefinitions
+     * @return 实际发生变更的路由定义
+     */
+    public Mono<List<RouteDefinition>> save(Collection<RouteDefinition> routeDefinitions) {
+        return update(routeDefinitions, Collections.emptyList()).map(Change::getSaved);
+    }
+
+    /**
+     * 删除路由
+     *
+     * @param ids
+     * @return 实际删除的路由定义
+     */
+    public Mono<List<RouteDefinition>> delete(Collection<String> ids) {
+        return update(Collections.emptyList(), ids).map(Change::getDeleted);
+    }
+
+    /**
+     * 新增或覆盖、删除路由，一次替换快照
+     *
+     * @param routeDefinitions 新增或覆盖的路由定义
+     * @param ids              删除的路由 id
+     * @return 实际发生的变更
+     */
+    public Mono<Change> update(Collection<RouteDefinition> routeDefinitions, Collection<String> ids) {
+        // 只转换与当前快照不同的路由定义
+        Map<String, RouteDefinition> current = snapshot.get().definitions;
+        List<RouteDefinition> changed = routeDefinitions.stream()
+                .filter(routeDefinition -> !routeDefinition.equals(current.get(routeDefinition.getId())))
+                .collect(Collectors.toList());
+        if (changed.isEmpty() && ids.stream().noneMatch(current::containsKey)) {
+            return Mono.just(new Change(Collections.emptyList(), Collections.emptyList()));
+        }
+
+        Mono<List<Route>> routes = changed.isEmpty() ? Mono.just(Collections.emptyList()) : convert(changed);
+        return routes.map(newRoutes -> {
+            Snapshot prev = snapshot.getAndUpdate(s -> s.update(changed, newRoutes, ids));
+            // 并发写入时，以实际替换前的快照计算变更
+            List<RouteDefinition> saved = changed.stream()
+                    .filter(routeDefinition -> !routeDefinition.equals(prev.definitions.get(routeDefinition.getId())))
+                    .collect(Collectors.toList());
+            List<RouteDefinition> deleted = ids.stream()
+                    .map(prev.definitions::get)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+            return new Change(saved, deleted);
+        });
+    }
+
+    private Mono<List<Route>> convert(Collection<RouteDefinition> routeDefinitions) {
+        return converter.getRoutes()
+                .collectList()
+                .contextWrite(Context.of(DEFINITIONS_KEY, routeDefinitions));
+    }
+
+    /**
+     * 外部触发的全量刷新（如网关启动、配置刷新），重新转换配置文件中的路由与快照中的所有路由，
+     * 删除上次刷新后从配置文件中移除的路由（期间被注册等覆盖的同 id 路由保留）
+     *
+     * @param event
+     */
+    @Override
+    public void onApplicationEvent(RefreshRoutesEvent event) {
+        Map<String, RouteDefinition> staticDefinitions = new LinkedHashMap<>();
+        gatewayProperties.getRoutes().forEach(routeDefinition -> staticDefinitions.put(routeDefinition.getId(), routeDefinition));
+        Map<String, RouteDefinition> prevStaticDefinitions = this.staticDefinitions;
+        List<String> removedIds = prevStaticDefinitions.keySet().stream()
+                .filter(id -> !staticDefinitions.containsKey(id))
+                .collect(Collectors.toList());
+
+        Map<String, RouteDefinition> definitions = new LinkedHashMap<>(snapshot.get().definitions);
+        removedIds.forEach(id -> definitions.remove(id, prevStaticDefinitions.get(id)));
+        definitions.putAll(staticDefinitions);
+        convert(definitions.values())
+                .subscribe(routes -> {
+                    // 转换期间被修改或删除的路由以最新快照为准
+                    snapshot.updateAndGet(s -> {
+                        List<RouteDefinition> fresh = definitions.values().stream()
+                                .filter(routeDefinition -> staticDefinitions.containsKey(routeDefinition.getId()) || routeDefinition.equals(s.definitions.get(routeDefinition.getId())))
+                                .collect(Collectors.toList());
+                        List<Route> freshRoutes = routes.stream()
+                                .filter(route -> fresh.stream().anyMatch(routeDefinition -> routeDefinition.getId().equals(route.getId())))
+                                .collect(Collectors.toList());
+                        List<String> deletedIds = removedIds.stream()
+                                .filter(id -> Objects.equals(s.definitions.get(id), prevStaticDefinitions.get(id)))
+                                .collect(Collectors.toList());
+                        return s.update(fresh, freshRoutes, deletedIds);
+                    });
+                    this.staticDefinitions = staticDefinitions;
+                    log.debug("已刷新全部路由: {}, 删除配置中已移除的路由: {}", routes.size(), removedIds);
+                }, e -> log.error("刷新路由失败", e));
+    }
+
+    /**
+     * 一次快照替换实际发生的变更
+     */
+    @Data
+    public static class Change {
+
+        private final List<RouteDefinition> saved;
+        private final List<RouteDefinition> deleted;
+
+    }
+
+    /**
+     * 不可变快照
+     */
+    private static class Snapshot {
+
+        private final Map<String, RouteDefinition> definitions;
+        private final Map<String, Route> routes;
+        private final List<Route> sortedRoutes;
+        private final Index index;
+
+        private Snapshot(Map<String, RouteDefinition> definitions, Map<String, Route> routes) {
+            this.definitions = Collections.unmodifiableMap(definitions);
+            this.routes = Collections.unmodifiableMap(routes);
+            List<Route> sortedRoutes = new ArrayList<>(routes.values());
+            AnnotationAwareOrderComparator.sort(sortedRoutes);
+            this.sortedRoutes = Collections.unmodifiableList(sortedRoutes);
+            this.index = new Index(definitions, sortedRoutes);
+        }
+
+        private Snapshot update(Collection<RouteDefinition> routeDefinitions, List<Route> newRoutes, Collection<String> ids) {
+            Map<String, RouteDefinition> definitions = new LinkedHashMap<>(this.definitions);
+            Map<String, Route> routes = new LinkedHashMap<>(this.routes);
+            routeDefinitions.forEach(routeDefinition -> definitions.put(routeDefinition.getId(), routeDefinition));
+            newRoutes.forEach(route -> routes.put(route.getId(), route));
+            ids.forEach(id -> {
+                definitions.remove(id);
+                routes.remove(id);
+            });
+            return new Snapshot(definitions, routes);
+        }
+
+    }
+
+    /**
+     * 路由索引：域名 -> 路径段前缀树
+     * <p>
+     * 路由按 Path 断言中各模式的字面量前缀（首个含通配符的路径段之前）挂在前缀树节点上，按 Host 断言中的字面量域名（忽略 :端口）
+     * 放入对应域名的前缀树，不含 Host 断言或域名含通配符的放入不限域名的前缀树；没有 Path 断言的路由总是作为候选。
+     * 索引只用于缩小候选范围（多返回不影响结果），候选路由按原有顺序返回。
+     */
+    private static class Index {
+
+        // 域名 -> 前缀树
+        private final Map<String, Node> hostMap = new HashMap<>();
+
+        // 不限域名的前缀树
+        private final Node anyHost = new Node();
+
+        // 无法索引的路由（按顺序）
+        private final List<Ranked> fallback = new ArrayList<>();
+
+        private Index(Map<String, RouteDefinition> definitions, List<Route> sortedRoutes) {
+            for (int rank = 0, size = sortedRoutes.size(); rank < size; rank++) {
+                Route route = sortedRoutes.get(rank);
+                Ranked ranked = new Ranked(rank, route);
+                RouteDefinition routeDefinition = definitions.get(route.getId());
+                List<String> paths = Objects.isNull(routeDefinition) ? null : patterns(routeDefinition, "Path");
+                if (Objects.isNull(paths) || paths.isEmpty()) {
+                    fallback.add(ranked);
+                    continue;
+                }
+
+                List<String> hosts = patterns(routeDefinition, "Host");
+                List<Node> roots = new ArrayList<>();
+                if (Objects.isNull(hosts) || hosts.isEmpty() || hosts.stream().anyMatch(host -> Objects.isNull(literalHost(host)))) {
+                    roots.add(anyHost);
+                } else {
+                    hosts.stream().map(Index::literalHost).distinct().forEach(host -> roots.add(hostMap.computeIfAbsent(host, key -> new Node())));
+                }
+
+                for (Node root : roots) {
+                    for (String path : paths) {
+                        Node node = root;
+                        for (String segment : StringUtils.split(path, '/')) {
+                            if (StringUtils.containsAny(segment, '*', '?', '{')) {
+                                break;
+                            }
+                            node = node.children.computeIfAbsent(segment, key -> new Node());
+                        }
+                        if (!node.routes.contains(ranked)) {
+                            node.routes.add(ranked);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * 断言的模式，没有该断言时返回 null
+         *
+         * @param routeDefinition
+         * @param name
+         * @return
+         */
+        private static List<String> patterns(RouteDefinition routeDefinition, String name) {
+            List<String> patterns = null;
+            for (PredicateDefinition predicateDefinition : routeDefinition.getPredicates()) {
+                if (!name.equals(predicateDefinition.getName())) {
+                    continue;
+                }
+                if (Objects.nonNull(patterns)) {
+                    // 多个同名断言，无法按单一断言索引
+                    return Collections.emptyList();
+                }
+                patterns = new ArrayList<>();
+                for (Map.Entry<String, String> entry : predicateDefinition.getArgs().entrySet()) {
+                    if (entry.getKey().startsWith(NameUtils.GENERATED_NAME_PREFIX) || entry.getKey().startsWith("patterns")) {
+                        patterns.add(entry.getValue());
+                    }
+                }
+            }
+            return patterns;
+        }
+
+        /**
+         * 字面量域名（去掉 :端口 或 :*），含通配符时返回 null
+         *
+         * @param pattern
+         * @return
+         */
+        private static String literalHost(String pattern) {
+            String host = StringUtils.removeEnd(pattern, ":*");
+            return StringUtils.containsAny(host, '*', '?', '{') ? null : stripPort(host);
+        }
+
+        private static String stripPort(String host) {
+            int index = host.lastIndexOf(':');
+            return index > host.lastIndexOf(']') ? host.substring(0, index) : host;
+        }
+
+        /**
+         * 请求的候选路由（按原有顺序）
+         *
+         * @param request
+         * @return
+         */
+        private List<Route> candidates(ServerHttpRequest request) {
+            List<Ranked> candidates = new ArrayList<>(fallback);
+            List<PathContainer.Element> elements = request.getPath().pathWithinApplication().elements();
+            collect(anyHost, elements, candidates);
+            String host = request.getHeaders().getFirst(HttpHeaders.HOST);
+            if (Objects.nonNull(host) && !hostMap.isEmpty()) {
+                Node root = hostMap.get(stripPort(host));
+                if (Objects.nonNull(root)) {
+                    collect(root, elements, candidates);
+                }
+            }
+
+            candidates.sort(null);
+            List<Route> routes = new ArrayList<>(candidates.size());
+            for (Ranked ranked : candidates) {
+                routes.add(ranked.route);
+            }
+            return routes;
+        }
+
+        private void collect(Node node, List<PathContainer.Element> elements, List<Ranked> candidates) {
+            candidates.addAll(node.routes);
+            for (PathContainer.Element element : elements) {
+                if (!(element instanceof PathContainer.PathSegment)) {
+                    continue;
+                }
+                String segment = ((PathContainer.PathSegment) element).valueToMatch();
+                if (segment.isEmpty()) {
+                    continue;
+                }
+                node = node.children.get(segment);
+                if (Objects.isNull(node)) {
+                    return;
+                }
+                candidates.addAll(node.routes);
+            }
+        }
+
+    }
+
+    /**
+     * 前缀树节点
+     */
+    private static class Node {
+
+        // 路径段 -> 子节点
+        private final Map<String, Node> children = new HashMap<>();
+
+        // 字面量前缀到此为止的路由
+        private final List<Ranked> routes = new ArrayList<>(1);
+
+    }
+
+    /**
+     * 带顺序的路由
+     */
+    private static class Ranked implements Comparable<Ranked> {
+
+        private final int rank;
+        private final Route route;
+
+        private Ranked(int rank, Route route) {
+            this.rank = rank;
+            this.route = route;
+        }
+
+        @Override
+        public int compareTo(Ranked other) {
+            return Integer.compare(rank, other.rank);
+        }
+
+    }
+
+}
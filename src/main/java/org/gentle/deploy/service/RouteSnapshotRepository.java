@@ -0,0 +1,39 @@
+package org.gentle.deploy.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.cloud.gateway.route.RouteDefinitionRepository;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * 路由定义存储，替换 InMemoryRouteDefinitionRepository，数据保存在 {@link RouteSnapshotLocator} 快照中
+ *
+ * @author xiangqian
+ * @date 22:05 2026/10/19
+ */
+@Component
+public class RouteSnapshotRepository implements RouteDefinitionRepository {
+
+    @Autowired
+    private RouteSnapshotLocator routeSnapshotLocator;
+
+    @Override
+    public Flux<RouteDefinition> getRouteDefinitions() {
+        return routeSnapshotLocator.getRouteDefinitions();
+    }
+
+    @Override
+    public Mono<Void> save(Mono<RouteDefinition> route) {
+        return route.flatMap(routeDefinition -> routeSnapshotLocator.save(List.of(routeDefinition))).then();
+    }
+
+    @Override
+    public Mono<Void> delete(Mono<String> routeId) {
+        return routeId.flatMap(id -> routeSnapshotLocator.delete(List.of(id))).then();
+    }
+
+}
@@ -1,8 +1,11 @@
 package org.gentle.deploy.service;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
 
 /**
  * @author xiangqian
@@ -15,7 +18,49 @@ public class ServerAddr {
 
     private String host;
     private int port;
+
+    // 转发时加在请求路径前的路径，如 /api，格式同应用的路径前缀
     private String path;
 
+    // 权重，weighted 模式下使用
+    private int weight = 1;
+
+    // 注册版本（集群模式下的混合逻辑时钟），栈中按版本排序，0 表示单机注册或从注册日志恢复
+    @EqualsAndHashCode.Exclude
+    private long version;
+
+    // 代数：应用每次注册服务递增，区分同一地址的多次部署
+    @EqualsAndHashCode.Exclude
+    private long generation;
+
+    /**
+     * 复制（注册时写入代数，注册表副本之间不共享同一对象）
+     *
+     * @return
+     */
+    public ServerAddr copy() {
+        return new ServerAddr(host, port, path, weight, version, generation);
+    }
+
+    /**
+     * host:port
+     *
+     * @return
+     */
+    @JsonIgnore
+    public String getKey() {
+        return host + ":" + port;
+    }
+
+    /**
+     * 规范化的 path（以 / 开头，不以 / 结尾）
+     *
+     * @return 没有 path 时返回空字符串
+     */
+    @JsonIgnore
+    public String getPathPrefix() {
+        return StringUtils.defaultString(App.normalizePrefix(path));
+    }
+
 }
 
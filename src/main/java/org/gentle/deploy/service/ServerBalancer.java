@@ -0,0 +1,255 @@
+package org.gentle.deploy.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 服务负载均衡
+ * <p>
+ * 1、weighted 模式：在应用的所有健康服务间做平滑加权轮询（smooth weighted round-robin）；
+ * 2、灰度：将指定百分比的流量分配给应用最新注册的服务（栈顶），其余流量在其他健康服务间加权轮询，百分比可按步长逐步提升。
+ *
+ * @author xiangqian
+ * @date 22:14 2026/10/18
+ */
+@Slf4j
+@Component
+public class ServerBalancer {
+
+    /**
+     * 路由 uri scheme，由 {@link BalanceGlobalFilter} 解析为具体服务
+     */
+    public static final String SCHEME = "deploy";
+
+    // 负载均衡模式：single（仅栈顶服务）、weighted（所有健康服务加权轮询）
+    @Value("${server.balance.mode:single}")
+    private String mode;
+
+    // 应用的候选服务（栈底 -> 栈顶），整体替换，key: 应用名
+    private Map<String, Candidates> candidatesMap;
+
+    // 应用的灰度状态，key: 应用名
+    private Map<String, Canary> canaryMap;
+
+    @PostConstruct
+    public void init() {
+        candidatesMap = new ConcurrentHashMap<>();
+        canaryMap = new ConcurrentHashMap<>();
+    }
+
+    public boolean isWeighted() {
+        return "weighted".equalsIgnoreCase(mode);
+    }
+
+    public boolean isCanary(String app) {
+        Canary canary = canaryMap.get(app);
+        return Objects.nonNull(canary) && canary.percent >= 0;
+    }
+
+    /**
+     * 应用是否需要通过负载均衡选择服务
+     *
+     * @param app
+     * @return
+     */
+    public boolean isActive(String app) {
+        return isWeighted() || isCanary(app);
+    }
+
+    /**
+     * 更新应用的候选服务
+     *
+     * @param app
+     * @param serverAddrs 健康服务（栈底 -> 栈顶）
+     */
+    public void update(String app, List<ServerAddr> serverAddrs) {
+        candidatesMap.put(app, new Candidates(serverAddrs));
+    }
+
+    /**
+     * 选择服务
+     *
+     * @param app
+     * @return
+     */
+    public ServerAddr choose(String app) {
+        Candidates candidates = candidatesMap.get(app);
+        int size = Objects.isNull(candidates) ? 0 : candidates.serverAddrs.length;
+        if (size == 0) {
+            return null;
+        }
+
+        Canary canary = canaryMap.get(app);
+        int percent = Objects.isNull(canary) ? -1 : canary.percent;
+        if (percent < 0) {
+            return candidates.next(size);
+        }
+
+        // 灰度，最新注册的服务位于末尾
+        if (size == 1 || ThreadLocalRandom.current().nextInt(100) < percent) {
+            return candidates.serverAddrs[size - 1];
+        }
+        return candidates.next(size - 1);
+    }
+
+    /**
+     * 选择一个未尝试过的候选服务（重试、对冲），优先最新注册的服务
+     *
+     * @param app
+     * @param excluded 已尝试的服务，host:port
+     * @return 没有可选服务时返回 null
+     */
+    public ServerAddr alternative(String app, Set<String> excluded) {
+        Candidates candidates = candidatesMap.get(app);
+        if (Objects.isNull(candidates)) {
+            return null;
+        }
+        for (int i = candidates.serverAddrs.length - 1; i >= 0; i--) {
+            ServerAddr serverAddr = candidates.serverAddrs[i];
+            if (!excluded.contains(serverAddr.getKey())) {
+                return serverAddr;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 设置应用的灰度百分比
+     *
+     * @param app
+     * @param percent  灰度百分比 [0, 100]，小于 0 表示关闭灰度
+     * @param step     每次提升的百分比，小于等于 0 表示不自动提升
+     * @param interval 自动提升间隔（毫秒）
+     */
+    public synchronized void canary(String app, int percent, int step, long interval, Runnable onChange) {
+        Canary canary = canaryMap.computeIfAbsent(app, key -> new Canary());
+        if (Objects.nonNull(canary.disposable)) {
+            canary.disposable.dispose();
+            canary.disposable = null;
+        }
+
+        canary.percent = Math.min(percent, 100);
+        canary.step = step;
+        canary.interval = interval;
+        log.info("[{}] 灰度流量: {}%, 步长: {}%, 间隔: {}ms", app, canary.percent, step, interval);
+        onChange.run();
+
+        if (canary.percent < 0 || canary.percent >= 100 || step <= 0 || interval <= 0) {
+            return;
+        }
+
+        // 逐步提升灰度百分比，达到 100% 后结束灰度（全部流量已切换到最新注册的服务）
+        canary.disposable = Flux.interval(Duration.ofMillis(interval), Duration.ofMillis(interval))
+                .subscribe(tick -> {
+                    synchronized (this) {
+                        if (canary.percent < 0) {
+                            return;
+                        }
+                        int next = canary.percent + canary.step;
+                        if (next >= 100) {
+                            log.info("[{}] 灰度流量已达到 100%，结束灰度", app);
+                            canary.percent = -1;
+                            canary.disposable.dispose();
+                            canary.disposable = null;
+                        } else {
+                            log.info("[{}] 灰度流量: {}% -> {}%", app, canary.percent, next);
+                            canary.percent = next;
+                            return;
+                        }
+                    }
+                    onChange.run();
+                });
+    }
+
+    public Map<String, Object> canaryInfo(String app) {
+        Canary canary = canaryMap.getOrDefault(app, new Canary());
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("app", app);
+        map.put("mode", mode);
+        map.put("percent", canary.percent);
+        map.put("step", canary.step);
+        map.put("interval", canary.interval);
+        return map;
+    }
+
+    @PreDestroy
+    public synchronized void destroy() {
+        canaryMap.values().forEach(canary -> {
+            if (Objects.nonNull(canary.disposable)) {
+                canary.disposable.dispose();
+            }
+        });
+    }
+
+    /**
+     * 灰度状态
+     */
+    private static class Canary {
+
+        // 灰度百分比，-1 表示未开启灰度
+        private volatile int percent = -1;
+        private volatile int step;
+        private volatile long interval;
+        private Disposable disposable;
+
+    }
+
+    /**
+     * 候选服务及其平滑加权轮询状态
+     */
+    private static class Candidates {
+
+        private final ServerAddr[] serverAddrs;
+        private final int[] weights;
+        private final int[] currentWeights;
+
+        private Candidates(List<ServerAddr> serverAddrs) {
+            this.serverAddrs = serverAddrs.toArray(new ServerAddr[0]);
+            this.weights = new int[this.serverAddrs.length];
+            this.currentWeights = new int[this.serverAddrs.length];
+            for (int i = 0; i < this.serverAddrs.length; i++) {
+                weights[i] = Math.max(this.serverAddrs[i].getWeight(), 1);
+            }
+        }
+
+        /**
+         * 在前 n 个服务中平滑加权轮询
+         *
+         * @param n
+         * @return
+         */
+        private synchronized ServerAddr next(int n) {
+            if (n == 1) {
+                return serverAddrs[0];
+            }
+
+            int total = 0;
+            int selected = 0;
+            for (int i = 0; i < n; i++) {
+                currentWeights[i] += weights[i];
+                total += weights[i];
+                if (currentWeights[i] > currentWeights[selected]) {
+                    selected = i;
+                }
+            }
+            currentWeights[selected] -= total;
+            return serverAddrs[selected];
+        }
+
+    }
+
+}
@@ -1,178 +1,752 @@
 package org.gentle.deploy.service;
 
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import javax.annotation.PostConstruct;
-import java.net.InetSocketAddress;
-import java.net.Socket;
+import javax.annotation.PreDestroy;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.Stack;
-import java.util.concurrent.TimeUnit;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * 服务管理
+ * <p>
+ * 每个应用（{@link App}）有独立的部署栈和路由，不指定应用时使用默认应用。
+ * 新注册的服务可先预热（{@link ServerWarmer}）、复制影子流量对比（{@link ServerMirror}），期间路由仍指向当前服务。
+ *
  * @author xiangqian
  * @date 12:32 2022/09/25
  */
 @Slf4j
 @Component
+// 先于 RouteService 恢复注册表，已恢复路由时不再配置默认路由
+@Order(Ordered.HIGHEST_PRECEDENCE)
 public class ServerManager implements ApplicationRunner {
 
-    private final int MAX_STACK = 2;
-    private Stack<ServerAddr> stack;
+    // 每个应用保留的服务数（当前服务 + 可回退的历史服务）
+    @Value("${server.registry.depth:2}")
+    private int depth;
+
+    // 超过 depth 时的淘汰策略：unreachable-first（优先淘汰不可达的服务）、oldest（淘汰最早注册的服务）
+    @Value("${server.registry.eviction:" + ServerRegistry.UNREACHABLE_FIRST + "}")
+    private String eviction;
+
+    // 慢启动每次提升的流量百分比
+    private final int SLOW_START_STEP = 10;
+
+    // 应用，key: 应用名
+    private Map<String, App> appMap;
+
+    // 探测周期（毫秒）
+    @Value("${server.probe.interval:10000}")
+    private long probeInterval;
+
+    @Autowired
+    private RouteService routeService;
+
+    @Autowired
+    private ServerProber serverProber;
+
+    @Autowired
+    private ServerBalancer serverBalancer;
+
+    @Autowired
+    private InflightTracker inflightTracker;
+
+    @Autowired
+    private Metrics metrics;
+
+    @Autowired
+    private OutlierDetector outlierDetector;
+
+    @Autowired
+    private RegistryJournal registryJournal;
+
+    @Autowired
+    private ServerWarmer serverWarmer;
+
+    @Autowired
+    private ServerMirror serverMirror;
+
+    @Autowired
+    private ServerPools serverPools;
+
+    @Autowired
+    private ConcurrencyLimiter concurrencyLimiter;
 
     @Autowired
     private ThreadExecutor threadExecutor;
 
     @Autowired
-    private RouteService routeService;
+    private ClusterNode clusterNode;
+
+    @Autowired
+    private RegistryEvents registryEvents;
+
+    // 排空超时（毫秒）
+    @Value("${server.drain.timeout:30000}")
+    private long drainTimeout;
+
+    // 排空检测间隔（毫秒）
+    @Value("${server.drain.check-interval:100}")
+    private long drainCheckInterval;
+
+    // 排空中的服务，key: 应用名/host:port
+    private Map<String, DrainState> drainMap;
+
+    // 服务地址的引用数（注册在应用中、在应用中排空），同一地址可注册在多个应用中，
+    // 探测、被动健康检测、连接池、并发限制、指标等按地址共享的状态在引用数归零时才清理，仅在持有锁时访问，key: host:port
+    private Map<String, Integer> addressRefs;
+
+    private Disposable probeDisposable;
 
     @PostConstruct
     public void init() {
-        stack = new Stack<>();
+        appMap = new LinkedHashMap<>();
+        drainMap = new ConcurrentHashMap<>();
+        addressRefs = new HashMap<>();
+
+        // 被动健康检测摘除或恢复服务时，立即刷新路由（回调在事件循环线程上，刷新交给 ThreadExecutor，短时间内的多次变化合并为一次刷新）
+        outlierDetector.onChange(() -> threadExecutor.execute("route-refresh", this::refreshRouteDefinition));
+
+        // 预热结束后复制影子流量对比，未开启时切换路由（或开始慢启动）；
+        // 持有锁清除预热状态并开始对比，路由刷新（同样持有锁）不会在两者之间把流量切给新服务后又切回；
+        // 回调在事件循环线程上，切换交给 ThreadExecutor，切换前服务仍处于预热状态，不接收流量
+        serverWarmer.onDone(state -> threadExecutor.execute(() -> {
+            synchronized (ServerManager.this) {
+                if (!serverWarmer.finish(state)) {
+                    return;
+                }
+                if (!serverMirror.mirror(state.getApp(), state.getServerAddr(), state.getBaseline())) {
+                    promote(state.getApp());
+                }
+            }
+        }));
+
+        // 影子流量对比通过后切换路由（或开始慢启动）
+        serverMirror.onDone(state -> promote(state.getApp()));
+
+        // 集群模式：采纳其他节点的注册、移除后，在 ThreadExecutor 上更新注册表
+        clusterNode.onApply(entries -> threadExecutor.execute(() -> replicate(entries)));
+    }
+
+    /**
+     * 所有应用
+     *
+     * @return
+     */
+    public synchronized List<App> apps() {
+        List<App> apps = new ArrayList<>(appMap.size());
+        appMap.values().forEach(app -> apps.add(app.copy()));
+        return apps;
     }
 
-    public synchronized List<ServerAddr> list() {
-        return stack;
+    public List<ServerAddr> list() {
+        return list(App.DEFAULT);
     }
 
-    public synchronized boolean add(ServerAddr serverAddr) {
-        // 栈已超过规定大小，清理栈中不可达服务；若是都可达，则清理栈底元素
-        if (stack.size() >= MAX_STACK) {
-            int count = stack.size() - MAX_STACK;
-            while (count-- >= 0) {
-                int removeIndex = -1;
-                for (int i = 0, size = stack.size(); i < size; i++) {
-                    if (!isReachable(stack.get(i))) {
-                        removeIndex = i;
-                        break;
-                    }
+    public synchronized List<ServerAddr> list(String name) {
+        App app = appMap.get(name);
+        return Objects.isNull(app) ? List.of() : app.getStack();
+    }
+
+    public boolean add(ServerAddr serverAddr) {
+        return add(App.DEFAULT, null, null, serverAddr);
+    }
+
+    /**
+     * 注册服务
+     *
+     * @param name       应用名
+     * @param prefix     路径前缀，null 表示不修改
+     * @param domain     域名，null 表示不修改
+     * @param serverAddr
+     * @return
+     */
+    public synchronized boolean add(String name, String prefix, String domain, ServerAddr serverAddr) {
+        if (clusterNode.isEnabled()) {
+            serverAddr.setVersion(clusterNode.nextVersion());
+        }
+        List<ClusterEntry> entries = new ArrayList<>(1);
+        App app = push(name, prefix, domain, serverAddr, entries);
+
+        // 刷新路由定义
+        refreshRouteDefinition(app);
+
+        entries.add(clusterNode.register(app, serverAddr));
+        clusterNode.publish(entries);
+        return true;
+    }
+
+    /**
+     * 批量注册、移除服务
+     * <p>
+     * 所有操作在同一把锁内依次执行，受影响应用的路由在最后一次发布，整个批次只替换一次路由快照；
+     * 操作已由调用方校验，移除未注册的服务时忽略。
+     *
+     * @param serverOps
+     */
+    public synchronized void batch(List<ServerOp> serverOps) {
+        Map<String, App> changed = new LinkedHashMap<>();
+        List<String> deleted = new ArrayList<>();
+        List<ClusterEntry> entries = new ArrayList<>(serverOps.size());
+        for (ServerOp serverOp : serverOps) {
+            String name = StringUtils.defaultIfEmpty(serverOp.getApp(), App.DEFAULT);
+            ServerAddr serverAddr = serverOp.toServerAddr();
+            if (ServerOp.REGISTER.equals(serverOp.getOp())) {
+                if (clusterNode.isEnabled()) {
+                    serverAddr.setVersion(clusterNode.nextVersion());
                 }
+                App app = push(name, serverOp.getPrefix(), serverOp.getDomain(), serverAddr, entries);
+                changed.put(name, app);
+                deleted.remove(name);
+                entries.add(clusterNode.register(app, serverAddr));
+                continue;
+            }
 
-                if (removeIndex == -1) {
-                    removeIndex = 0;
+            entries.add(clusterNode.deregister(name, serverAddr));
+            if (pop(name, serverAddr)) {
+                if (appMap.containsKey(name)) {
+                    changed.put(name, appMap.get(name));
+                } else {
+                    changed.remove(name);
+                    deleted.add(name);
                 }
-                ServerAddr removeServerAddr = stack.remove(removeIndex);
-                log.info("栈已超过规定大小，清理栈中不可达服务；若是都可达，则清理栈底元素: [{}] -> {}", removeIndex, removeServerAddr);
             }
         }
 
-        // push
-        stack.push(serverAddr);
+        publish(changed, deleted);
+        clusterNode.publish(entries);
+        log.info("批量注册、移除服务: {} 项操作，{} 个应用的路由变更", serverOps.size(), changed.size() + deleted.size());
+    }
 
-        // 刷新路由定义
-        refreshRouteDefinition();
+    /**
+     * 应用其他节点复制的注册、移除（已被更新的条目覆盖的跳过）
+     * <p>
+     * 注册时先移除栈中的同一服务，再按版本插入，重复收到同一条目不会重复入栈；受影响应用的路由一次发布。
+     * 条目按版本从旧到新应用，与各节点的写入顺序一致：服务数已达到 depth 时，比栈底服务更旧的注册直接跳过
+     * （写入方已按容量淘汰，不能反过来淘汰更新的服务）；按容量淘汰的服务以墓碑复制给其他节点。
+     *
+     * @param entries
+     */
+    private synchronized void replicate(List<ClusterEntry> entries) {
+        Map<String, App> changed = new LinkedHashMap<>();
+        List<String> deleted = new ArrayList<>();
+        List<ClusterEntry> evicted = new ArrayList<>();
+        List<ClusterEntry> sorted = new ArrayList<>(entries);
+        sorted.sort(ClusterEntry.VERSION_ORDER);
+        for (ClusterEntry entry : sorted) {
+            if (!clusterNode.isCurrent(entry)) {
+                continue;
+            }
 
-        return true;
+            String name = entry.getApp();
+            ServerAddr serverAddr = entry.toServerAddr();
+            if (entry.isRegister()) {
+                if (isOlderThanBottom(name, serverAddr)) {
+                    log.debug("[{}] 服务数已达到 {}，跳过比栈底更旧的集群注册: {}", name, depth, serverAddr);
+                    continue;
+                }
+                changed.put(name, push(name, entry.getPrefix(), entry.getDomain(), serverAddr, evicted));
+                deleted.remove(name);
+            } else if (pop(name, serverAddr)) {
+                if (appMap.containsKey(name)) {
+                    changed.put(name, appMap.get(name));
+                } else {
+                    changed.remove(name);
+                    deleted.add(name);
+                }
+            }
+        }
+
+        clusterNode.publish(evicted);
+        if (changed.isEmpty() && deleted.isEmpty()) {
+            return;
+        }
+        publish(changed, deleted);
+        log.info("集群复制: {} 个条目，{} 个应用的路由变更", entries.size(), changed.size() + deleted.size());
     }
 
-    public synchronized ServerAddr get() {
-        if (stack.isEmpty()) {
-            return null;
+    /**
+     * 应用的服务数已达到 depth，且服务未注册、版本比栈底服务旧
+     *
+     * @param name
+     * @param serverAddr
+     * @return
+     */
+    private boolean isOlderThanBottom(String name, ServerAddr serverAddr) {
+        App app = appMap.get(name);
+        if (Objects.isNull(app)) {
+            return false;
+        }
+        ServerRegistry registry = app.getRegistry();
+        List<ServerAddr> snapshot = registry.snapshot();
+        return !registry.contains(serverAddr.getKey())
+                && snapshot.size() >= Math.max(depth, 1)
+                && serverAddr.getVersion() < snapshot.get(0).getVersion();
+    }
+
+    /**
+     * 一次发布多个应用的路由变更
+     *
+     * @param changed
+     * @param deleted 已删除的应用
+     */
+    private void publish(Map<String, App> changed, List<String> deleted) {
+        List<RouteDefinition> routeDefinitions = new ArrayList<>(changed.size());
+        for (App app : changed.values()) {
+            RouteDefinition routeDefinition = createRouteDefinition(app);
+            if (Objects.nonNull(routeDefinition)) {
+                routeDefinitions.add(routeDefinition);
+            }
+        }
+        routeService.delete(deleted.toArray(String[]::new));
+        routeService.saveAndOverwriteIfExists(routeDefinitions.toArray(RouteDefinition[]::new));
+    }
+
+    /**
+     * 注册服务（不刷新路由）
+     *
+     * @param name
+     * @param prefix
+     * @param domain
+     * @param serverAddr
+     * @param evicted    集群模式下按容量淘汰的服务的墓碑（由调用方复制给其他节点）
+     * @return
+     */
+    private App push(String name, String prefix, String domain, ServerAddr serverAddr, List<ClusterEntry> evicted) {
+        App app = appMap.computeIfAbsent(name, App::new);
+        if (Objects.nonNull(prefix)) {
+            app.setPrefix(App.normalizePrefix(prefix));
+        }
+        if (Objects.nonNull(domain)) {
+            app.setDomain(App.normalizeDomain(domain));
+        }
+
+        // 当前接收流量的服务，作为预热的对比服务
+        ServerAddr serving = serving(app);
+
+        // 服务数将超过 depth 时按淘汰策略清理（重复注册同一服务时替换原条目，不增加服务数）
+        // 可达性取自探测状态表，不在锁内等待网络 I/O
+        ServerRegistry registry = app.getRegistry();
+        if (!registry.contains(serverAddr.getKey())) {
+            while (registry.size() >= Math.max(depth, 1)) {
+                ServerAddr removeServerAddr = registry.evictionCandidate(eviction, this::isReachable);
+                registry.remove(removeServerAddr.getKey());
+                registryJournal.remove(app, removeServerAddr);
+                drain(name, removeServerAddr);
+                registryEvents.publish(RegistryEvents.EVICT, name, removeServerAddr.getKey(), "capacity");
+                if (clusterNode.isEnabled()) {
+                    // 墓碑版本不早于引起淘汰的注册，各节点淘汰同一服务时版本一致，且不会覆盖之后对该服务的重新注册
+                    evicted.add(clusterNode.deregister(name, removeServerAddr, Math.max(serverAddr.getVersion(), removeServerAddr.getVersion() + 1)));
+                }
+                log.info("[{}] 服务数已达到 {}，按 {} 策略清理服务: {}", name, depth, eviction, removeServerAddr);
+            }
+        }
+
+        // 注册：按版本插入（集群模式下延迟到达的旧注册不覆盖更新的注册），单机模式下即压入栈顶
+        boolean referenced = addressRefs.containsKey(serverAddr.getKey());
+        boolean redeploy = Objects.nonNull(registry.register(serverAddr));
+        if (!redeploy) {
+            retain(serverAddr);
+        }
+
+        // 重新注册本应用中排空中的服务，取消排空（排空持有的引用随之释放）
+        DrainState drainState = drainMap.remove(drainKey(name, serverAddr));
+        if (Objects.nonNull(drainState)) {
+            drainState.getDisposable().dispose();
+            release(serverAddr);
+            redeploy = true;
+            log.info("[{}] 服务重新注册，取消排空: {}", name, serverAddr);
+        }
+
+        // 重新注册（新部署）或首次注册的服务，清除此前的摘除状态；已在其他应用中接收流量的服务保留其状态
+        if (redeploy || !referenced) {
+            outlierDetector.remove(serverAddr);
+            metrics.register(serverAddr);
         }
+        registryJournal.register(app, serverAddr);
+        registryEvents.publish(RegistryEvents.REGISTER, name, serverAddr.getKey(), null);
+        serverPools.open(serverAddr);
 
-        return stack.peek();
+        // 异步探测新注册的服务
+        serverProber.probe(serverAddr).subscribe();
+
+        // 已有服务接收流量时，先预热新服务、复制影子流量对比，再切换路由；都未开启时直接慢启动
+        if (registry.top() == serverAddr && Objects.nonNull(serving) && !serving.getKey().equals(serverAddr.getKey())
+                && !serverWarmer.warmup(name, serverAddr, serving)
+                && !serverMirror.mirror(name, serverAddr, serving)) {
+            slowStart(name);
+        }
+        return app;
     }
 
     /**
-     * 检测栈顶服务是否可达
+     * 预热、影子流量对比结束后切换路由（或开始慢启动）
+     *
+     * @param name
      */
-    public synchronized boolean checkStackTopReachable() {
-        // 判断栈是否为空
-        if (stack.isEmpty()) {
+    private void promote(String name) {
+        threadExecutor.execute("route-refresh:" + name, () -> {
+            refreshRouteDefinition(name);
+            slowStart(name);
+        });
+    }
+
+    /**
+     * 应用当前接收流量的服务（最上层的可达、未摘除、未在预热或对比的服务）
+     *
+     * @param app
+     * @return
+     */
+    private ServerAddr serving(App app) {
+        List<ServerAddr> serverAddrs = app.getStack();
+        for (int i = serverAddrs.size() - 1; i >= 0; i--) {
+            ServerAddr serverAddr = serverAddrs.get(i);
+            if (isReachable(serverAddr) && !outlierDetector.isEjected(serverAddr) && !serverWarmer.isWarming(app.getName(), serverAddr)
+                    && !serverMirror.isMirroring(app.getName(), serverAddr)) {
+                return serverAddr;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 慢启动：通过灰度将新服务（栈顶）的流量从 SLOW_START_STEP% 逐步提升到 100%
+     *
+     * @param name
+     */
+    private void slowStart(String name) {
+        long slowStart = serverWarmer.getSlowStart();
+        if (slowStart <= 0) {
+            return;
+        }
+        log.info("[{}] 慢启动: {}ms", name, slowStart);
+        canary(name, SLOW_START_STEP, SLOW_START_STEP, slowStart / (100 / SLOW_START_STEP));
+    }
+
+    /**
+     * 移除服务并排空（不刷新路由），应用的服务全部移除后删除应用
+     *
+     * @param name
+     * @param serverAddr
+     * @return 是否已移除
+     */
+    private boolean pop(String name, ServerAddr serverAddr) {
+        App app = appMap.get(name);
+        if (Objects.isNull(app)) {
             return false;
         }
 
-        // 窥视栈顶元素
-        ServerAddr serverAddr = stack.peek();
-        log.debug("检测栈顶服务({})是否可达 ...", serverAddr);
-        if (isReachable(serverAddr)) {
-            log.debug("栈顶服务({})可达", serverAddr);
-            return true;
+        ServerAddr removeServerAddr = app.getRegistry().remove(serverAddr.getKey());
+        if (Objects.isNull(removeServerAddr)) {
+            return false;
         }
 
-        // 弹出栈顶元素
-        log.debug("栈顶服务不可达，将移除不可达的栈顶服务: {}", stack.pop());
+        registryJournal.remove(app, removeServerAddr);
+        drain(name, removeServerAddr);
+        registryEvents.publish(RegistryEvents.EVICT, name, removeServerAddr.getKey(), "deregister");
+        log.info("[{}] 移除服务: {}", name, removeServerAddr);
+        if (app.getRegistry().isEmpty()) {
+            appMap.remove(name);
+        }
+        return true;
+    }
 
-        // 继续检测栈顶服务是否可达
-        checkStackTopReachable();
+    public ServerAddr get() {
+        return get(App.DEFAULT);
+    }
 
+    public synchronized ServerAddr get(String name) {
+        App app = appMap.get(name);
+        return Objects.isNull(app) ? null : app.getRegistry().top();
+    }
+
+    /**
+     * 检测栈顶服务是否可达，移除不可达的栈顶服务
+     *
+     * @param app
+     * @return 栈顶服务是否可达
+     */
+    private synchronized boolean checkStackTopReachable(App app) {
+        ServerRegistry registry = app.getRegistry();
+        boolean reachable = true;
+        while (!registry.isEmpty()) {
+            // 窥视栈顶元素
+            ServerAddr serverAddr = registry.top();
+            if (isReachable(serverAddr)) {
+                log.debug("[{}] 栈顶服务({})可达", app.getName(), serverAddr);
+                return reachable;
+            }
+
+            // 弹出栈顶元素，继续检测栈顶服务是否可达
+            reachable = false;
+            registry.remove(serverAddr.getKey());
+            registryJournal.remove(app, serverAddr);
+            drain(app.getName(), serverAddr);
+            registryEvents.publish(RegistryEvents.EVICT, app.getName(), serverAddr.getKey(), "unreachable");
+            log.debug("[{}] 栈顶服务不可达，已移除不可达的栈顶服务: {}", app.getName(), serverAddr);
+        }
         return false;
     }
 
+    private String drainKey(String name, ServerAddr serverAddr) {
+        return name + "/" + serverAddr.getKey();
+    }
+
     /**
-     * 刷新路由定义
+     * 引用服务地址（持有锁时调用）
      *
-     * @throws URISyntaxException
+     * @param serverAddr
      */
-    private void refreshRouteDefinition() {
-        ServerAddr serverAddr = get();
-        if (Objects.isNull(serverAddr)) {
+    private void retain(ServerAddr serverAddr) {
+        if (addressRefs.merge(serverAddr.getKey(), 1, Integer::sum) == 1) {
+            serverProber.add(serverAddr);
+        }
+    }
+
+    /**
+     * 释放服务地址的引用（持有锁时调用），引用数归零时清理按地址共享的服务状态
+     *
+     * @param serverAddr
+     */
+    private void release(ServerAddr serverAddr) {
+        if (Objects.nonNull(addressRefs.computeIfPresent(serverAddr.getKey(), (key, refs) -> refs > 1 ? refs - 1 : null))) {
             return;
         }
+        serverProber.remove(serverAddr);
+        inflightTracker.remove(serverAddr);
+        metrics.remove(serverAddr);
+        outlierDetector.remove(serverAddr);
+        serverPools.close(serverAddr);
+        concurrencyLimiter.remove(serverAddr);
+        log.info("服务已不被任何应用引用，清理服务状态: {}", serverAddr);
+    }
+
+    /**
+     * 排空服务：服务已从应用的栈中移除（路由刷新后不再接收新请求），等待处理中的请求结束或超时后释放引用；
+     * 服务仍注册在其他应用中时不清理按地址共享的状态
+     *
+     * @param name
+     * @param serverAddr
+     */
+    private void drain(String name, ServerAddr serverAddr) {
+        serverWarmer.cancel(name, serverAddr);
+        serverMirror.cancel(name, serverAddr);
+        long now = System.currentTimeMillis();
+        DrainState drainState = new DrainState(name, serverAddr, now, now + drainTimeout);
+        drainState.setInflight(inflightTracker.count(serverAddr));
+        String drainKey = drainKey(name, serverAddr);
+        DrainState previous = drainMap.put(drainKey, drainState);
+        if (Objects.nonNull(previous)) {
+            // 同一应用中的同一服务已在排空（不会发生：重新注册时已取消排空），保持引用数一致
+            previous.getDisposable().dispose();
+            release(serverAddr);
+        }
+        log.info("[{}] 开始排空服务: {}, 处理中的请求数: {}", name, serverAddr, drainState.getInflight());
+
+        drainState.setDisposable(Flux.interval(Duration.ZERO, Duration.ofMillis(drainCheckInterval))
+                .map(tick -> inflightTracker.count(serverAddr))
+                .doOnNext(drainState::setInflight)
+                .takeUntil(inflight -> inflight <= 0 || System.currentTimeMillis() >= drainState.getDeadline())
+                .subscribe(null, e -> log.error("", e), () -> {
+                    synchronized (this) {
+                        // 排空期间已被重新注册
+                        if (!drainMap.remove(drainKey, drainState)) {
+                            return;
+                        }
+                        release(serverAddr);
+                    }
+                    log.info("[{}] 服务排空结束: {}, 耗时: {}ms, 剩余处理中的请求数: {}", name, serverAddr, System.currentTimeMillis() - drainState.getStartTime(), drainState.getInflight());
+                }));
+    }
+
+    public List<DrainState> drainList() {
+        return new ArrayList<>(drainMap.values());
+    }
+
+    /**
+     * 设置灰度流量百分比（分配给应用最新注册的服务）
+     *
+     * @param name
+     * @param percent
+     * @param step
+     * @param interval
+     */
+    public void canary(String name, int percent, int step, long interval) {
+        serverBalancer.canary(name, percent, step, interval, () -> refreshRouteDefinition(name));
+    }
+
+    /**
+     * 刷新所有应用的路由定义
+     */
+    private synchronized void refreshRouteDefinition() {
+        for (App app : appMap.values()) {
+            refreshRouteDefinition(app);
+        }
+    }
+
+    private synchronized void refreshRouteDefinition(String name) {
+        App app = appMap.get(name);
+        if (Objects.nonNull(app)) {
+            refreshRouteDefinition(app);
+        }
+    }
+
+    /**
+     * 刷新应用的路由定义（持有锁时调用）
+     * <p>
+     * 路由定义在锁内创建并提交给 {@link RouteService}（只读写内存），提交顺序与注册表的修改顺序一致，
+     * 合并发布时以最后一次提交为准，不会用修改前的注册表创建的路由覆盖之后的路由。
+     * <p>
+     * 单服务模式直接路由到最上层的健康服务；weighted 模式或灰度期间路由到 deploy://应用名，由 {@link BalanceGlobalFilter} 选择服务。
+     * 所有服务均被摘除时，退回到可达的服务（栈顶），避免无服务可用。
+     *
+     * @param app
+     */
+    private void refreshRouteDefinition(App app) {
+        RouteDefinition routeDefinition = createRouteDefinition(app);
+        if (Objects.nonNull(routeDefinition)) {
+            routeService.saveAndOverwriteIfExists(routeDefinition);
+        }
+    }
+
+    /**
+     * 创建应用的路由定义，并更新负载均衡的候选服务
+     *
+     * @param app
+     * @return 没有已注册服务时返回 null
+     */
+    private RouteDefinition createRouteDefinition(App app) {
+        List<ServerAddr> serverAddrs = new ArrayList<>(app.getStack());
+        ServerAddr top = serverAddrs.isEmpty() ? null : serverAddrs.get(serverAddrs.size() - 1);
+        serverAddrs.removeIf(serverAddr -> !isReachable(serverAddr));
+        List<ServerAddr> healthyServerAddrs = new ArrayList<>(serverAddrs);
+        healthyServerAddrs.removeIf(serverAddr -> outlierDetector.isEjected(serverAddr) || serverWarmer.isWarming(app.getName(), serverAddr)
+                || serverMirror.isMirroring(app.getName(), serverAddr));
+        if (!healthyServerAddrs.isEmpty()) {
+            serverAddrs = healthyServerAddrs;
+        }
+        serverBalancer.update(app.getName(), serverAddrs);
+
+        ServerAddr serverAddr = healthyServerAddrs.isEmpty() ? top : healthyServerAddrs.get(healthyServerAddrs.size() - 1);
+        if (Objects.isNull(serverAddr)) {
+            return null;
+        }
 
         URI routeUri = null;
         try {
-            routeUri = new URI(String.format("http://%s:%s%s", serverAddr.getHost(), serverAddr.getPort(), StringUtils.trimToEmpty(serverAddr.getPath())));
+            if (serverBalancer.isActive(app.getName())) {
+                routeUri = new URI(ServerBalancer.SCHEME + "://" + app.getName());
+            } else {
+                routeUri = new URI(String.format("http://%s:%s%s", serverAddr.getHost(), serverAddr.getPort(), serverAddr.getPathPrefix()));
+            }
         } catch (URISyntaxException e) {
             throw new RuntimeException(e);
         }
-        RouteDefinition routeDefinition = routeService.createRouteDefinition(routeUri, "/**", null);
-        threadExecutor.execute(() -> routeService.saveAndOverwriteIfExists(routeDefinition));
-    }
-
-    public boolean isReachable(ServerAddr serverAddr) {
-        return isReachable(serverAddr.getHost(), serverAddr.getPort(), 30, TimeUnit.SECONDS);
+        return routeService.createRouteDefinition(app, routeUri);
     }
 
     /**
-     * host:port 是否可达
+     * 服务是否可达（读取探测状态表）
      *
-     * @param host
-     * @param port
-     * @param timeout
-     * @param timeUnit
+     * @param serverAddr
      * @return
      */
-    public boolean isReachable(String host, int port, long timeout, TimeUnit timeUnit) {
-        Socket socket = null;
-        try {
-            socket = new Socket();
-            InetSocketAddress address = new InetSocketAddress(host, port);
-            socket.connect(address, (int) timeUnit.toMillis(timeout));
-            return socket.isConnected();
-        } catch (Exception e) {
-//            log.error("", e);
-            return false;
-        } finally {
-            IOUtils.closeQuietly(socket);
-        }
+    public boolean isReachable(ServerAddr serverAddr) {
+        return serverProber.isReachable(serverAddr);
     }
 
     @Override
     public void run(ApplicationArguments args) throws Exception {
-        Runnable runnable = () -> {
-            while (true) {
-                try {
-                    TimeUnit.SECONDS.sleep(10);
-                    if (!checkStackTopReachable()) {
-                        refreshRouteDefinition();
+        // 恢复上次的注册表，立即按恢复的注册表路由，并在后台探测校验
+        List<App> restored = registryJournal.replay();
+        if (!restored.isEmpty()) {
+            synchronized (this) {
+                restored.forEach(app -> appMap.put(app.getName(), app.copy()));
+                restored.forEach(app -> app.getStack().forEach(serverAddr -> {
+                    retain(serverAddr);
+                    serverPools.open(serverAddr);
+                }));
+            }
+            refreshRouteDefinition();
+            probe().subscribe();
+        }
+
+        // 集群模式：以恢复的注册表为初始条目，开始与其他节点同步
+        clusterNode.start(restored);
+
+        // 周期性并发探测所有已注册服务，上一轮未结束时丢弃本轮
+        probeDisposable = Flux.interval(Duration.ofMillis(probeInterval))
+                .onBackpressureDrop()
+                .concatMap(tick -> probe(), 1)
+                .subscribe();
+    }
+
+    /**
+     * 并发探测所有已注册服务，移除不可达的栈顶服务并刷新路由
+     *
+     * @return
+     */
+    private Mono<Void> probe() {
+        return serverProber.probeAll(snapshot())
+                .then()
+                // 探测结果在事件循环线程上返回，加锁、刷新路由交给 ThreadExecutor
+                .publishOn(threadExecutor.getScheduler())
+                .doOnSuccess(unused -> {
+                    List<App> apps;
+                    synchronized (this) {
+                        apps = new ArrayList<>(appMap.values());
                     }
-                } catch (Exception e) {
+                    for (App app : apps) {
+                        if (!checkStackTopReachable(app) || serverBalancer.isActive(app.getName())) {
+                            refreshRouteDefinition(app.getName());
+                        }
+                    }
+                })
+                .onErrorResume(e -> {
                     log.error("", e);
-                }
-            }
-        };
-        new Thread(runnable).start();
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * 所有应用已注册的服务（去重）
+     *
+     * @return
+     */
+    private synchronized List<ServerAddr> snapshot() {
+        Set<ServerAddr> serverAddrs = new LinkedHashSet<>();
+        appMap.values().forEach(app -> serverAddrs.addAll(app.getStack()));
+        return new ArrayList<>(serverAddrs);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (Objects.nonNull(probeDisposable)) {
+            probeDisposable.dispose();
+        }
     }
 
 }
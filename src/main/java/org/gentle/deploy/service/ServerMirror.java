@@ -0,0 +1,492 @@
+package org.gentle.deploy.service;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.HttpMethod;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.netty.http.client.HttpClient;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 影子流量
+ * <p>
+ * 新注册的服务（预热之后）先不接收流量：按 percent% 抽样应用的真实请求，异步复制一份发给新服务（不等待、不影响原请求，响应丢弃），
+ * 对比同一请求在当前服务和新服务上的首字节耗时和响应状态码。至少 min-samples 个样本、状态码不一致的比例不超过 max-mismatch-percent、
+ * 新服务的 P50、P99 不超过当前服务的 latency-ratio 倍（至少放宽 1ms）后才切换路由。
+ * 超过 max-duration 时：样本不足直接切换；样本足够但未通过对比时 reject-on-failure 为 true 则保持不接收流量（rejected），等待手动切换或移除。
+ * <p>
+ * 请求体不复制：原请求体的每个 DataBuffer 保留（retainedDuplicate，共享内存、独立读写位置）一份写给新服务，写出后释放。
+ * 所有新服务处理中的复制请求数不超过 max-inflight，超过时丢弃本次复制。
+ *
+ * @author xiangqian
+ * @date 11:05 2026/10/26
+ */
+@Slf4j
+@Component
+public class ServerMirror {
+
+    // 复制请求的请求头，便于服务识别影子流量
+    static final String MIRROR_HEADER = "X-Mirror";
+
+    // 不复制的请求头（逐跳请求头及 Host）
+    private static final Set<String> SKIP_HEADERS = Set.of("host", "connection", "keep-alive", "proxy-connection", "proxy-authorization",
+            "te", "trailer", "transfer-encoding", "upgrade", "expect");
+
+    @Value("${server.mirror.enabled:false}")
+    private boolean enabled;
+
+    // 抽样比例（%）
+    @Value("${server.mirror.percent:10}")
+    private double percent;
+
+    // 复制的请求方法，非幂等方法会在新服务上重复执行（共享存储时谨慎开启）
+    @Value("${server.mirror.methods:GET,HEAD}")
+    private String methods;
+
+    // 所有新服务处理中的复制请求数上限
+    @Value("${server.mirror.max-inflight:64}")
+    private int maxInflight;
+
+    // 单个复制请求超时（毫秒）
+    @Value("${server.mirror.timeout:5000}")
+    private long timeout;
+
+    // 最少样本数
+    @Value("${server.mirror.min-samples:100}")
+    private long minSamples;
+
+    // 状态码不一致的最大比例（%）
+    @Value("${server.mirror.max-mismatch-percent:1.0}")
+    private double maxMismatchPercent;
+
+    // 新服务延迟不超过当前服务延迟的倍数
+    @Value("${server.mirror.latency-ratio:1.2}")
+    private double latencyRatio;
+
+    // 对比检查间隔（毫秒）
+    @Value("${server.mirror.check-interval:1000}")
+    private long checkInterval;
+
+    // 最长对比时间（毫秒）
+    @Value("${server.mirror.max-duration:300000}")
+    private long maxDuration;
+
+    // 样本足够但未通过对比时，是否保持不接收流量
+    @Value("${server.mirror.reject-on-failure:true}")
+    private boolean rejectOnFailure;
+
+    @Autowired
+    private ServerPools serverPools;
+
+    private HttpClient httpClient;
+
+    private Set<String> methodSet;
+
+    // 对比中的服务，key: 应用名/host:port（同一服务可注册在多个应用中）
+    private Map<String, MirrorState> mirrorMap;
+
+    // 处理中的复制请求数
+    private final AtomicInteger inflight = new AtomicInteger();
+
+    // 已复制、因超过 max-inflight 丢弃的请求数
+    private final LongAdder mirrored = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    // 对比结束时回调（刷新路由）
+    private volatile Consumer<MirrorState> onDone;
+
+    @PostConstruct
+    public void init() {
+        httpClient = HttpClient.create().responseTimeout(Duration.ofMillis(timeout));
+        mirrorMap = new ConcurrentHashMap<>();
+        methodSet = new HashSet<>();
+        for (String method : StringUtils.split(methods, ", ")) {
+            methodSet.add(method.toUpperCase());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void onDone(Consumer<MirrorState> onDone) {
+        this.onDone = onDone;
+    }
+
+    /**
+     * 开始对比服务，对比期间 {@link #isMirroring} 返回 true，通过后回调 onDone
+     *
+     * @param app
+     * @param serverAddr 新注册的服务
+     * @param baseline   当前接收流量的服务
+     * @return 是否开始对比，未启用时返回 false
+     */
+    public boolean mirror(String app, ServerAddr serverAddr, ServerAddr baseline) {
+        if (!enabled) {
+            return false;
+        }
+
+        cancel(app, serverAddr);
+        long now = System.currentTimeMillis();
+        MirrorState state = new MirrorState(app, serverAddr, baseline, now, now + maxDuration);
+        mirrorMap.put(key(app, serverAddr), state);
+        log.info("[{}] 开始复制影子流量: {}, 对比服务: {}, 抽样比例: {}%", app, serverAddr, baseline, percent);
+
+        state.setDisposable(Flux.interval(Duration.ofMillis(checkInterval))
+                .subscribe(tick -> check(state), e -> log.error("", e)));
+        return true;
+    }
+
+    private void check(MirrorState state) {
+        if (!MirrorState.MIRRORING.equals(state.getStatus())) {
+            return;
+        }
+
+        boolean enough = state.getSamples() >= minSamples;
+        if (enough && isPassed(state)) {
+            log.info("[{}] 影子流量对比通过: {}, 耗时: {}ms, {}", state.getApp(), state.getServerAddr(), System.currentTimeMillis() - state.getStartTime(), summary(state));
+            done(state);
+            return;
+        }
+        if (System.currentTimeMillis() < state.getDeadline()) {
+            return;
+        }
+
+        if (enough && rejectOnFailure) {
+            state.setStatus(MirrorState.REJECTED);
+            state.getDisposable().dispose();
+            log.warn("[{}] 影子流量对比未通过，服务不接收流量: {}, {}", state.getApp(), state.getServerAddr(), summary(state));
+            return;
+        }
+        log.warn("[{}] 影子流量对比超时，直接切换: {}, {}", state.getApp(), state.getServerAddr(), summary(state));
+        done(state);
+    }
+
+    private boolean isPassed(MirrorState state) {
+        if (state.getMismatchPercent() > maxMismatchPercent) {
+            return false;
+        }
+        return isWithin(state.getCandidateP50(), state.getPrimaryP50()) && isWithin(state.getCandidateP99(), state.getPrimaryP99());
+    }
+
+    private boolean isWithin(double latency, double baselineLatency) {
+        if (baselineLatency < 0) {
+            return true;
+        }
+        return latency >= 0 && latency <= Math.max(baselineLatency * latencyRatio, baselineLatency + 1);
+    }
+
+    private String summary(MirrorState state) {
+        return String.format("样本数: %d, 状态码不一致: %d（%.2f%%）, 请求失败: %d, P50: %.1fms / %.1fms, P99: %.1fms / %.1fms",
+                state.getSamples(), state.getMismatches(), state.getMismatchPercent(), state.getErrors(),
+                state.getCandidateP50(), state.getPrimaryP50(), state.getCandidateP99(), state.getPrimaryP99());
+    }
+
+    /**
+     * 结束对比并切换路由（对比中或已拒绝的服务均可手动切换）
+     *
+     * @param app
+     * @param key host:port
+     * @return 服务不在对比中时返回 false
+     */
+    public boolean promote(String app, String key) {
+        MirrorState state = mirrorMap.get(app + "/" + key);
+        if (Objects.isNull(state)) {
+            return false;
+        }
+        log.info("[{}] 手动切换影子流量对比中的服务: {}, {}", state.getApp(), state.getServerAddr(), summary(state));
+        done(state);
+        return true;
+    }
+
+    private void done(MirrorState state) {
+        if (!mirrorMap.remove(key(state.getApp(), state.getServerAddr()), state)) {
+            return;
+        }
+        if (Objects.nonNull(state.getDisposable())) {
+            state.getDisposable().dispose();
+        }
+
+        Consumer<MirrorState> onDone = this.onDone;
+        if (Objects.nonNull(onDone)) {
+            try {
+                onDone.accept(state);
+            } catch (Exception e) {
+                log.error("", e);
+            }
+        }
+    }
+
+    private static String key(String app, ServerAddr serverAddr) {
+        return app + "/" + serverAddr.getKey();
+    }
+
+    public boolean isMirroring(String app, ServerAddr serverAddr) {
+        return !mirrorMap.isEmpty() && mirrorMap.containsKey(key(app, serverAddr));
+    }
+
+    /**
+     * 取消对比（服务已从应用中移除或重新注册），不回调 onDone
+     *
+     * @param app
+     * @param serverAddr
+     */
+    public void cancel(String app, ServerAddr serverAddr) {
+        MirrorState state = mirrorMap.remove(key(app, serverAddr));
+        if (Objects.nonNull(state) && Objects.nonNull(state.getDisposable())) {
+            state.getDisposable().dispose();
+        }
+    }
+
+    public List<MirrorState> list() {
+        return new ArrayList<>(mirrorMap.values());
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    public long getMirrored() {
+        return mirrored.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * 抽样复制请求：选中时向应用对比中的新服务发出复制请求，并返回请求体被分流（tee）的 exchange
+     *
+     * @param exchange 已选定当前服务（请求 url 为 http://host:port/...）
+     * @return 复制结果，未选中时返回 null
+     */
+    public Tee tee(ServerWebExchange exchange) {
+        if (!enabled || mirrorMap.isEmpty()) {
+            return null;
+        }
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        URI url = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+        ServerHttpRequest request = exchange.getRequest();
+        if (Objects.isNull(route) || Objects.isNull(url) || !"http".equals(url.getScheme())
+                || !methodSet.contains(request.getMethodValue())) {
+            return null;
+        }
+
+        List<MirrorState> states = null;
+        for (MirrorState state : mirrorMap.values()) {
+            if (state.getApp().equals(route.getId()) && MirrorState.MIRRORING.equals(state.getStatus())
+                    && !state.getServerAddr().getKey().equals(url.getRawAuthority())) {
+                if (Objects.isNull(states)) {
+                    // 每个请求只抽样一次
+                    if (ThreadLocalRandom.current().nextDouble(100) >= percent) {
+                        return null;
+                    }
+                    states = new ArrayList<>(1);
+                }
+                states.add(state);
+            }
+        }
+        if (Objects.isNull(states)) {
+            return null;
+        }
+
+        Tee tee = new Tee(exchange);
+        for (MirrorState state : states) {
+            if (inflight.incrementAndGet() > maxInflight) {
+                inflight.decrementAndGet();
+                dropped.increment();
+                continue;
+            }
+            mirrored.increment();
+            tee.send(state, url);
+        }
+        return tee.branches.isEmpty() ? null : tee;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        mirrorMap.values().forEach(state -> {
+            if (Objects.nonNull(state.getDisposable())) {
+                state.getDisposable().dispose();
+            }
+        });
+    }
+
+    /**
+     * 一个被抽样的请求：原请求体分流给各新服务，原请求完成后与新服务的结果对比
+     */
+    public class Tee {
+
+        private final ServerWebExchange exchange;
+
+        private final boolean hasBody;
+
+        private final List<Branch> branches = new ArrayList<>(1);
+
+        // 原请求体是否已被订阅
+        private final AtomicBoolean subscribed = new AtomicBoolean();
+
+        private final long startTime = System.nanoTime();
+
+        private Tee(ServerWebExchange exchange) {
+            this.exchange = exchange;
+            HttpHeaders headers = exchange.getRequest().getHeaders();
+            this.hasBody = headers.getContentLength() > 0 || headers.containsKey(HttpHeaders.TRANSFER_ENCODING);
+        }
+
+        private void send(MirrorState state, URI url) {
+            Branch branch = new Branch();
+            branches.add(branch);
+
+            ServerAddr serverAddr = state.getServerAddr();
+            String uri = UriComponentsBuilder.fromUri(url).host(serverAddr.getHost()).port(serverAddr.getPort()).build(true).toUriString();
+            HttpHeaders requestHeaders = exchange.getRequest().getHeaders();
+            // 通过服务的连接池发送，切换路由时直接复用这些连接
+            HttpClient pooled = serverPools.get(serverAddr);
+            HttpClient client = (Objects.isNull(pooled) ? httpClient : pooled.responseTimeout(Duration.ofMillis(timeout)))
+                    .headers(headers -> {
+                        requestHeaders.forEach((name, values) -> {
+                            if (!SKIP_HEADERS.contains(name.toLowerCase())) {
+                                headers.add(name, values);
+                            }
+                        });
+                        headers.set(MIRROR_HEADER, "true");
+                    });
+
+            HttpClient.RequestSender sender = client.request(HttpMethod.valueOf(exchange.getRequest().getMethodValue())).uri(uri);
+            HttpClient.ResponseReceiver<?> receiver = hasBody
+                    ? sender.send(branch.body.asFlux().doOnDiscard(ByteBuf.class, ByteBuf::release))
+                    : sender;
+
+            // 记录首字节耗时，读完并丢弃响应体
+            Mono.defer(() -> receiver.responseConnection((response, connection) -> {
+                        branch.latency = System.nanoTime() - startTime;
+                        branch.status = response.status().code();
+                        return connection.inbound().receive().then();
+                    }).then())
+                    .timeout(Duration.ofMillis(timeout * 2))
+                    .onErrorResume(e -> {
+                        log.debug("影子流量请求失败: {}, {}", uri, e.toString());
+                        if (branch.status == 0) {
+                            branch.status = -1;
+                        }
+                        return Mono.empty();
+                    })
+                    // 请求体未被（完整）写出时释放其余的 DataBuffer：连接失败等情况下没有订阅者，队列中的 DataBuffer 不会被丢弃
+                    .doFinally(signalType -> {
+                        if (hasBody) {
+                            branch.drain();
+                        }
+                    })
+                    .then(branch.primary.asMono())
+                    .doFinally(signalType -> inflight.decrementAndGet())
+                    .subscribe(primary -> state.record((int) primary[0], primary[1], branch.status, branch.latency));
+        }
+
+        /**
+         * 分流请求体的 exchange，原请求体的每个 DataBuffer 保留一份写给新服务
+         *
+         * @return
+         */
+        public ServerWebExchange exchange() {
+            if (!hasBody) {
+                return exchange;
+            }
+            ServerHttpRequest request = new ServerHttpRequestDecorator(exchange.getRequest()) {
+                @Override
+                public Flux<DataBuffer> getBody() {
+                    return super.getBody()
+                            .doOnSubscribe(subscription -> subscribed.set(true))
+                            .doOnNext(buffer -> branches.forEach(branch -> branch.next(buffer)))
+                            .doOnComplete(() -> branches.forEach(branch -> branch.body.tryEmitComplete()))
+                            .doOnError(e -> branches.forEach(branch -> branch.body.tryEmitError(e)))
+                            .doOnCancel(() -> branches.forEach(branch -> branch.body.tryEmitError(new CancellationException())));
+                }
+            };
+            return exchange.mutate().request(request).build();
+        }
+
+        /**
+         * 原请求结束（收到响应头或转发失败）
+         *
+         * @param status 原请求的响应状态码，-1 表示转发失败
+         */
+        public void complete(int status) {
+            long latency = System.nanoTime() - startTime;
+            for (Branch branch : branches) {
+                // 原请求没有读取请求体（转发前失败），结束新服务的请求体
+                if (hasBody && !subscribed.get()) {
+                    branch.body.tryEmitError(new CancellationException());
+                }
+                branch.primary.tryEmitValue(new long[]{status, latency});
+            }
+        }
+
+    }
+
+    private static class Branch {
+
+        // 写给新服务的请求体
+        private final Sinks.Many<ByteBuf> body = Sinks.many().unicast().onBackpressureBuffer();
+
+        // 原请求的响应状态码、首字节耗时（纳秒）
+        private final Sinks.One<long[]> primary = Sinks.one();
+
+        // 新服务的响应状态码（-1 表示请求失败）、首字节耗时（纳秒）
+        private volatile int status;
+        private volatile long latency;
+
+        private void next(DataBuffer buffer) {
+            ByteBuf byteBuf = buffer instanceof NettyDataBuffer
+                    ? ((NettyDataBuffer) buffer).getNativeBuffer().retainedDuplicate()
+                    : Unpooled.copiedBuffer(buffer.asByteBuffer());
+            if (body.tryEmitNext(byteBuf).isFailure()) {
+                byteBuf.release();
+            }
+        }
+
+        /**
+         * 复制请求结束后订阅请求体并释放：未被订阅过时释放已排队和之后写入的 DataBuffer；
+         * 已被订阅过时（单播，再次订阅会失败）由原订阅者写出或丢弃时释放
+         */
+        private void drain() {
+            body.asFlux().subscribe(ByteBuf::release, e -> {
+            });
+        }
+
+    }
+
+}
@@ -0,0 +1,43 @@
+package org.gentle.deploy.service;
+
+import lombok.Data;
+
+import java.util.Objects;
+
+/**
+ * 批量注册中的一项操作
+ *
+ * @author xiangqian
+ * @date 15:10 2026/10/22
+ */
+@Data
+public class ServerOp {
+
+    public static final String REGISTER = "register";
+    public static final String DEREGISTER = "deregister";
+
+    // register、deregister
+    private String op;
+
+    // 应用名，默认 default
+    private String app;
+
+    // 路径前缀、域名，仅 register，null 表示不修改
+    private String prefix;
+    private String domain;
+
+    private String host;
+    private Integer port;
+    private String path;
+    private Integer weight;
+
+    public ServerAddr toServerAddr() {
+        ServerAddr serverAddr = new ServerAddr();
+        serverAddr.setHost(host);
+        serverAddr.setPort(port);
+        serverAddr.setPath(path);
+        serverAddr.setWeight(Objects.isNull(weight) ? 1 : weight);
+        return serverAddr;
+    }
+
+}
@@ -0,0 +1,204 @@
+package org.gentle.deploy.service;
+
+import io.netty.channel.ChannelOption;
+import io.netty.handler.codec.http.HttpMethod;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 服务连接池
+ * <p>
+ * 每个已注册的服务使用独立的连接池（最大连接数、空闲保活时间独立配置），注册时预先建立 prewarm 个长连接，
+ * 路由切换到新服务后，首批请求直接复用已建立的连接，不再等待 TCP 建连；服务排空结束后立即关闭连接池，
+ * 不再保留到已移除服务的空闲连接。
+ * <p>
+ * 连接池按后进先出（LIFO）分配连接，优先复用最近使用的连接，多余的连接空闲超时后关闭。
+ *
+ * @author xiangqian
+ * @date 20:10 2026/10/22
+ */
+@Slf4j
+@Component
+public class ServerPools {
+
+    @Value("${server.pool.enabled:true}")
+    private boolean enabled;
+
+    // 每个服务的最大连接数
+    @Value("${server.pool.max-connections:500}")
+    private int maxConnections;
+
+    // 注册时预先建立的连接数
+    @Value("${server.pool.prewarm:8}")
+    private int prewarm;
+
+    // 预建连接时请求的路径（HEAD）
+    @Value("${server.pool.prewarm-path:/}")
+    private String prewarmPath;
+
+    // 连接空闲保活时间（毫秒）
+    @Value("${server.pool.max-idle-time:60000}")
+    private long maxIdleTime;
+
+    // 连接最长存活时间（毫秒），0 表示不限制
+    @Value("${server.pool.max-life-time:0}")
+    private long maxLifeTime;
+
+    // 等待获取连接超时（毫秒）
+    @Value("${server.pool.pending-acquire-timeout:45000}")
+    private long pendingAcquireTimeout;
+
+    // 后台清理空闲连接的间隔（毫秒）
+    @Value("${server.pool.evict-interval:30000}")
+    private long evictInterval;
+
+    @Autowired
+    private HttpClientProperties httpClientProperties;
+
+    // key: host:port
+    private Map<String, Pool> poolMap;
+
+    @PostConstruct
+    public void init() {
+        poolMap = new ConcurrentHashMap<>();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 创建服务的连接池并预先建立连接，已存在时不重复创建
+     *
+     * @param serverAddr
+     */
+    public void open(ServerAddr serverAddr) {
+        if (!enabled) {
+            return;
+        }
+
+        String key = serverAddr.getKey();
+        if (poolMap.containsKey(key)) {
+            return;
+        }
+        Pool pool = poolMap.computeIfAbsent(key, k -> new Pool(serverAddr));
+        prewarm(serverAddr, pool).subscribe();
+    }
+
+    /**
+     * 预先建立连接：并发发出 prewarm 个 HEAD 请求，连接在响应后归还连接池保持长连接
+     *
+     * @param serverAddr
+     * @param pool
+     * @return 成功的请求数
+     */
+    private Mono<Long> prewarm(ServerAddr serverAddr, Pool pool) {
+        if (prewarm <= 0) {
+            return Mono.just(0L);
+        }
+
+        String uri = "http://" + serverAddr.getKey() + prewarmPath;
+        return Flux.range(0, prewarm)
+                .flatMap(i -> pool.httpClient
+                        .headers(headers -> headers.set(ServerWarmer.WARMUP_HEADER, "true"))
+                        .request(HttpMethod.HEAD)
+                        .uri(uri)
+                        .responseSingle((response, body) -> body.then(Mono.just(response.status().code())))
+                        .timeout(Duration.ofMillis(pendingAcquireTimeout))
+                        .onErrorResume(e -> Mono.empty()), prewarm)
+                .count()
+                .doOnNext(count -> log.debug("已预建连接: {}, {}/{}", serverAddr, count, prewarm));
+    }
+
+    /**
+     * 服务的 HttpClient，没有连接池时返回 null
+     *
+     * @param key host:port
+     * @return
+     */
+    public HttpClient get(String key) {
+        Pool pool = poolMap.get(key);
+        return Objects.isNull(pool) ? null : pool.httpClient;
+    }
+
+    public HttpClient get(ServerAddr serverAddr) {
+        return get(serverAddr.getKey());
+    }
+
+    /**
+     * 关闭服务的连接池（服务已移除且排空结束）
+     *
+     * @param serverAddr
+     */
+    public void close(ServerAddr serverAddr) {
+        Pool pool = poolMap.remove(serverAddr.getKey());
+        if (Objects.nonNull(pool)) {
+            pool.connectionProvider.disposeLater()
+                    .subscribe(null, e -> log.warn("关闭连接池失败: " + serverAddr, e), () -> log.debug("已关闭连接池: {}", serverAddr));
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        poolMap.values().forEach(pool -> pool.connectionProvider.dispose());
+        poolMap.clear();
+    }
+
+    /**
+     * 单个服务的连接池
+     */
+    private class Pool {
+
+        private final ConnectionProvider connectionProvider;
+        private final HttpClient httpClient;
+
+        private Pool(ServerAddr serverAddr) {
+            ConnectionProvider.Builder builder = ConnectionProvider.builder("server-" + serverAddr.getKey())
+                    .maxConnections(maxConnections)
+                    .maxIdleTime(Duration.ofMillis(maxIdleTime))
+                    .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeout))
+                    .evictInBackground(Duration.ofMillis(evictInterval))
+                    .lifo();
+            if (maxLifeTime > 0) {
+                builder.maxLifeTime(Duration.ofMillis(maxLifeTime));
+            }
+            connectionProvider = builder.build();
+
+            // 与网关默认 HttpClient 保持一致的连接、解码配置（spring.cloud.gateway.httpclient.*）
+            HttpClient httpClient = HttpClient.create(connectionProvider)
+                    .compress(httpClientProperties.isCompression())
+                    .wiretap(httpClientProperties.isWiretap());
+            if (Objects.nonNull(httpClientProperties.getConnectTimeout())) {
+                httpClient = httpClient.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, httpClientProperties.getConnectTimeout());
+            }
+            if (Objects.nonNull(httpClientProperties.getMaxHeaderSize()) || Objects.nonNull(httpClientProperties.getMaxInitialLineLength())) {
+                httpClient = httpClient.httpResponseDecoder(spec -> {
+                    if (Objects.nonNull(httpClientProperties.getMaxHeaderSize())) {
+                        spec.maxHeaderSize((int) httpClientProperties.getMaxHeaderSize().toBytes());
+                    }
+                    if (Objects.nonNull(httpClientProperties.getMaxInitialLineLength())) {
+                        spec.maxInitialLineLength((int) httpClientProperties.getMaxInitialLineLength().toBytes());
+                    }
+                    return spec;
+                });
+            }
+            this.httpClient = httpClient;
+        }
+
+    }
+
+}
@@ -0,0 +1,168 @@
+package org.gentle.deploy.service;
+
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.tcp.TcpClient;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 服务探测器
+ * <p>
+ * 基于 Reactor Netty 非阻塞连接并发探测 host:port 是否可达，探测结果发布到无锁状态表，
+ * 注册、切换路由时只读状态表，不等待网络 I/O。
+ * 连续失败 failure-threshold 次才视为不可达，偶发的探测超时不会摘除正在接收流量的服务。
+ *
+ * @author xiangqian
+ * @date 21:08 2026/10/18
+ */
+@Slf4j
+@Component
+public class ServerProber {
+
+    // 连接超时（毫秒）
+    @Value("${server.probe.timeout:1000}")
+    private int timeout;
+
+    // 并发探测数
+    @Value("${server.probe.concurrency:32}")
+    private int concurrency;
+
+    // 连续失败多少次视为不可达
+    @Value("${server.probe.failure-threshold:3}")
+    private int failureThreshold;
+
+    @Autowired
+    private Metrics metrics;
+
+    @Autowired
+    private RegistryEvents registryEvents;
+
+    private TcpClient tcpClient;
+
+    // 状态表，key: host:port
+    private Map<String, ProbeStatus> statusMap;
+
+    // 已注册（被应用引用）的服务，只记录这些服务的探测结果，移除后返回的探测结果被丢弃，key: host:port
+    private Map<String, Boolean> registered;
+
+    @PostConstruct
+    public void init() {
+        // 探测连接不放入连接池，连接成功后立即关闭
+        tcpClient = TcpClient.newConnection()
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, timeout)
+                // 使用 netty 的 DNS 解析器，避免在事件循环线程上阻塞解析域名
+                .resolver(spec -> spec.queryTimeout(Duration.ofMillis(timeout)));
+        statusMap = new ConcurrentHashMap<>();
+        registered = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * 探测服务是否可达，并将结果发布到状态表
+     *
+     * @param serverAddr
+     * @return
+     */
+    public Mono<ProbeStatus> probe(ServerAddr serverAddr) {
+        String key = serverAddr.getKey();
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return tcpClient.host(serverAddr.getHost())
+                    .port(serverAddr.getPort())
+                    .connect()
+                    .map(connection -> {
+                        connection.dispose();
+                        return System.nanoTime() - start;
+                    })
+                    // 兜底超时，DNS 解析等不受 CONNECT_TIMEOUT_MILLIS 约束
+                    .timeout(Duration.ofMillis(timeout * 2L))
+                    .map(rtt -> {
+                        metrics.probe(serverAddr, true, rtt);
+                        return new ProbeStatus(true, Duration.ofNanos(rtt).toMillis(), System.currentTimeMillis(), 0);
+                    })
+                    .onErrorResume(e -> {
+                        log.debug("服务({})不可达: {}", key, e.toString());
+                        metrics.probe(serverAddr, false, 0);
+                        ProbeStatus last = statusMap.get(key);
+                        int failures = Objects.isNull(last) ? 1 : last.getFailures() + 1;
+                        // 连续失败次数达到阈值前仍视为可达
+                        return Mono.just(new ProbeStatus(failures < failureThreshold, -1, System.currentTimeMillis(), failures));
+                    });
+        }).doOnNext(status -> {
+            ProbeStatus[] last = new ProbeStatus[1];
+            // 与 remove 互斥：服务已移除时不写回状态表
+            if (Objects.isNull(registered.computeIfPresent(key, (k, v) -> {
+                last[0] = statusMap.put(key, status);
+                return v;
+            }))) {
+                return;
+            }
+            // 可达性变化（尚未探测过的服务视为可达）
+            if ((Objects.isNull(last[0]) || last[0].isReachable()) != status.isReachable()) {
+                registryEvents.publish(RegistryEvents.HEALTH, null, key, status.isReachable() ? "reachable" : "unreachable");
+            }
+        });
+    }
+
+    /**
+     * 并发探测所有服务
+     *
+     * @param serverAddrs
+     * @return
+     */
+    public Flux<ProbeStatus> probeAll(Collection<ServerAddr> serverAddrs) {
+        return Flux.fromIterable(serverAddrs).flatMap(this::probe, concurrency);
+    }
+
+    /**
+     * 服务是否可达
+     * <p>
+     * 尚未探测过的服务视为可达（刚注册的服务立即接收流量，与探测并行），连续失败 failure-threshold 次后视为不可达。
+     *
+     * @param serverAddr
+     * @return
+     */
+    public boolean isReachable(ServerAddr serverAddr) {
+        ProbeStatus status = statusMap.get(serverAddr.getKey());
+        return Objects.isNull(status) || status.isReachable();
+    }
+
+    public ProbeStatus getStatus(ServerAddr serverAddr) {
+        return statusMap.get(serverAddr.getKey());
+    }
+
+    public Map<String, ProbeStatus> statusMap() {
+        return Collections.unmodifiableMap(statusMap);
+    }
+
+    /**
+     * 开始记录服务的探测结果（服务被应用引用时调用）
+     *
+     * @param serverAddr
+     */
+    public void add(ServerAddr serverAddr) {
+        registered.put(serverAddr.getKey(), Boolean.TRUE);
+    }
+
+    /**
+     * 清除服务的探测状态（服务不再被任何应用引用时调用），之后返回的探测结果被丢弃
+     *
+     * @param serverAddr
+     */
+    public void remove(ServerAddr serverAddr) {
+        registered.remove(serverAddr.getKey());
+        statusMap.remove(serverAddr.getKey());
+    }
+
+}
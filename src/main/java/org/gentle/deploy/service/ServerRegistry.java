@@ -0,0 +1,165 @@
+package org.gentle.deploy.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * 应用已注册的服务（替代 java.util.Stack）
+ * <p>
+ * 1、按 host:port 索引，O(1) 查找；同一服务重复注册时替换原条目（移到最上层），不会重复出现；
+ * 2、每次注册分配递增的代数（generation），区分同一地址的多次部署；
+ * 3、按版本排序（栈底 -> 栈顶，集群模式下延迟到达的旧注册不覆盖更新的注册，单机模式下版本均为 0，即按注册顺序）；
+ * 4、写入时复制：读取方获得不可变快照，无需加锁，也不会读到修改中的状态。
+ * <p>
+ * 写入只修改内存，不做任何网络 I/O。
+ *
+ * @author xiangqian
+ * @date 16:30 2026/10/25
+ */
+public class ServerRegistry {
+
+    /**
+     * 淘汰策略：优先淘汰不可达的服务（都可达时淘汰最下层的服务）
+     */
+    public static final String UNREACHABLE_FIRST = "unreachable-first";
+
+    /**
+     * 淘汰策略：淘汰最下层（最早注册）的服务
+     */
+    public static final String OLDEST = "oldest";
+
+    // key: host:port
+    private final Map<String, ServerAddr> index = new HashMap<>();
+
+    // 栈底 -> 栈顶，不可变
+    private volatile List<ServerAddr> snapshot = Collections.emptyList();
+
+    private long generation;
+
+    /**
+     * 不可变快照（栈底 -> 栈顶）
+     *
+     * @return
+     */
+    public List<ServerAddr> snapshot() {
+        return snapshot;
+    }
+
+    public int size() {
+        return snapshot.size();
+    }
+
+    public boolean isEmpty() {
+        return snapshot.isEmpty();
+    }
+
+    /**
+     * 最上层的服务
+     *
+     * @return 没有服务时返回 null
+     */
+    public ServerAddr top() {
+        List<ServerAddr> snapshot = this.snapshot;
+        return snapshot.isEmpty() ? null : snapshot.get(snapshot.size() - 1);
+    }
+
+    public synchronized ServerAddr get(String key) {
+        return index.get(key);
+    }
+
+    public synchronized boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * 注册服务：已注册的同一服务先移除，再按版本插入，并分配新的代数
+     *
+     * @param serverAddr
+     * @return 被替换的原条目，没有时返回 null
+     */
+    public synchronized ServerAddr register(ServerAddr serverAddr) {
+        List<ServerAddr> serverAddrs = new ArrayList<>(snapshot);
+        ServerAddr replaced = index.remove(serverAddr.getKey());
+        if (Objects.nonNull(replaced)) {
+            serverAddrs.remove(replaced);
+        }
+
+        int position = serverAddrs.size();
+        while (position > 0 && serverAddrs.get(position - 1).getVersion() > serverAddr.getVersion()) {
+            position--;
+        }
+        serverAddr.setGeneration(++generation);
+        serverAddrs.add(position, serverAddr);
+        index.put(serverAddr.getKey(), serverAddr);
+        snapshot = Collections.unmodifiableList(serverAddrs);
+        return replaced;
+    }
+
+    /**
+     * 移除服务
+     *
+     * @param key host:port
+     * @return 被移除的条目，未注册时返回 null
+     */
+    public synchronized ServerAddr remove(String key) {
+        ServerAddr removed = index.remove(key);
+        if (Objects.isNull(removed)) {
+            return null;
+        }
+
+        List<ServerAddr> serverAddrs = new ArrayList<>(snapshot);
+        serverAddrs.remove(removed);
+        snapshot = Collections.unmodifiableList(serverAddrs);
+        return removed;
+    }
+
+    /**
+     * 按淘汰策略选出一个要淘汰的服务
+     *
+     * @param policy    unreachable-first、oldest
+     * @param reachable 服务是否可达（读取探测状态表，不做网络 I/O）
+     * @return 没有服务时返回 null
+     */
+    public ServerAddr evictionCandidate(String policy, Predicate<ServerAddr> reachable) {
+        List<ServerAddr> snapshot = this.snapshot;
+        if (snapshot.isEmpty()) {
+            return null;
+        }
+        if (UNREACHABLE_FIRST.equalsIgnoreCase(policy)) {
+            for (ServerAddr serverAddr : snapshot) {
+                if (!reachable.test(serverAddr)) {
+                    return serverAddr;
+                }
+            }
+        }
+        return snapshot.get(0);
+    }
+
+    /**
+     * 复制（代数计数一并复制）
+     *
+     * @return
+     */
+    public synchronized ServerRegistry copy() {
+        ServerRegistry registry = new ServerRegistry();
+        registry.index.putAll(index);
+        registry.snapshot = snapshot;
+        registry.generation = generation;
+        return registry;
+    }
+
+    @Override
+    public String toString() {
+        return snapshot.toString();
+    }
+
+}
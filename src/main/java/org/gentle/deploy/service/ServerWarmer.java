@@ -0,0 +1,448 @@
+package org.gentle.deploy.service;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * 服务预热
+ * <p>
+ * 新注册的服务（JVM 刚启动，未经 JIT、缓存为空）先不接收流量：按应用记录最近转发的幂等请求（GET、HEAD），
+ * 或使用配置的预热脚本，并发重放到新服务，每轮统计延迟中位数，与同一批请求在当前服务上的延迟对比，
+ * 至少 min-rounds 轮且不超过当前服务延迟的 latency-ratio 倍（至少放宽 1ms）后才切换路由；超过 max-duration 仍未达到时，
+ * 最近一轮成功则直接切换，最近一轮失败（超过一半请求失败）则拒绝切换，服务保持不接收流量，等待手动切换或移除。
+ * <p>
+ * 预热结束后可按 slow-start 逐步提升新服务的流量（见 {@link ServerManager}）。
+ *
+ * @author xiangqian
+ * @date 17:10 2026/10/22
+ */
+@Slf4j
+@Component
+public class ServerWarmer {
+
+    // 预热请求头，便于服务识别预热流量
+    static final String WARMUP_HEADER = "X-Warmup";
+
+    @Value("${server.warmup.enabled:false}")
+    private boolean enabled;
+
+    // 每个应用保留的最近请求数，即每轮重放的请求数
+    @Value("${server.warmup.samples:100}")
+    private int samples;
+
+    // 预热脚本，每行一个请求：[METHOD] /path?query，# 开头为注释；配置后不再记录转发的请求
+    @Value("${server.warmup.script:}")
+    private String script;
+
+    // 并发请求数
+    @Value("${server.warmup.concurrency:4}")
+    private int concurrency;
+
+    // 最少轮数
+    @Value("${server.warmup.min-rounds:3}")
+    private int minRounds;
+
+    // 轮间隔（毫秒）
+    @Value("${server.warmup.round-interval:200}")
+    private long roundInterval;
+
+    // 新服务延迟不超过当前服务延迟的倍数
+    @Value("${server.warmup.latency-ratio:1.2}")
+    private double latencyRatio;
+
+    // 最长预热时间（毫秒）
+    @Value("${server.warmup.max-duration:60000}")
+    private long maxDuration;
+
+    // 单个请求超时（毫秒）
+    @Value("${server.warmup.timeout:5000}")
+    private long timeout;
+
+    // 慢启动时长（毫秒），预热结束后逐步提升新服务的流量，0 表示直接切换
+    @Value("${server.warmup.slow-start:0}")
+    private long slowStart;
+
+    @Autowired
+    private ServerPools serverPools;
+
+    private HttpClient httpClient;
+
+    // 最近转发的请求，key: 应用名
+    private Map<String, SampleRing> sampleMap;
+
+    // 预热脚本中的请求
+    private List<Sample> scriptSamples;
+
+    // 预热中的服务，key: 应用名/host:port（同一服务可注册在多个应用中）
+    private Map<String, WarmupState> warmupMap;
+
+    // 预热结束时回调（刷新路由）
+    private volatile Consumer<WarmupState> onDone;
+
+    @PostConstruct
+    public void init() {
+        httpClient = HttpClient.create().responseTimeout(Duration.ofMillis(timeout));
+        sampleMap = new ConcurrentHashMap<>();
+        warmupMap = new ConcurrentHashMap<>();
+        scriptSamples = Collections.emptyList();
+        if (StringUtils.isNotBlank(script)) {
+            try {
+                scriptSamples = loadScript(script);
+                log.info("已加载预热脚本: {}, 请求数: {}", script, scriptSamples.size());
+            } catch (IOException e) {
+                log.error("加载预热脚本失败: " + script, e);
+            }
+        }
+    }
+
+    private List<Sample> loadScript(String script) throws IOException {
+        List<Sample> samples = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(script), StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = StringUtils.split(line, " \t", 2);
+            if (parts.length == 1) {
+                samples.add(new Sample(HttpMethod.GET, parts[0], null));
+            } else {
+                samples.add(new Sample(HttpMethod.valueOf(parts[0].toUpperCase()), parts[1].trim(), null));
+            }
+        }
+        return samples;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getSlowStart() {
+        return slowStart;
+    }
+
+    public void onDone(Consumer<WarmupState> onDone) {
+        this.onDone = onDone;
+    }
+
+    /**
+     * 记录转发成功的幂等请求，用于预热重放
+     *
+     * @param exchange
+     */
+    public void record(ServerWebExchange exchange) {
+        if (!enabled || !scriptSamples.isEmpty()) {
+            return;
+        }
+
+        ServerHttpRequest request = exchange.getRequest();
+        String method = request.getMethodValue();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return;
+        }
+        Integer status = exchange.getResponse().getRawStatusCode();
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        if (Objects.isNull(status) || status >= 400 || Objects.isNull(route)) {
+            return;
+        }
+
+        SampleRing ring = sampleMap.get(route.getId());
+        if (Objects.isNull(ring)) {
+            ring = sampleMap.computeIfAbsent(route.getId(), key -> new SampleRing(samples));
+        }
+        String rawQuery = request.getURI().getRawQuery();
+        String uri = Objects.isNull(rawQuery) ? request.getURI().getRawPath() : request.getURI().getRawPath() + "?" + rawQuery;
+        ring.add(new Sample(HttpMethod.valueOf(method), uri, request.getHeaders().getFirst(HttpHeaders.ACCEPT)));
+    }
+
+    /**
+     * 开始预热服务，预热期间 {@link #isWarming} 返回 true，结束后回调 onDone（回调通过 {@link #finish} 结束预热状态）
+     *
+     * @param app
+     * @param serverAddr 新注册的服务
+     * @param baseline   当前接收流量的服务
+     * @return 是否开始预热，未启用或没有可重放的请求时返回 false
+     */
+    public boolean warmup(String app, ServerAddr serverAddr, ServerAddr baseline) {
+        if (!enabled) {
+            return false;
+        }
+        List<Sample> samples = samples(app);
+        if (samples.isEmpty()) {
+            log.debug("[{}] 没有可重放的请求，跳过预热: {}", app, serverAddr);
+            return false;
+        }
+
+        cancel(app, serverAddr);
+        long now = System.currentTimeMillis();
+        WarmupState state = new WarmupState(app, serverAddr, baseline, now, now + maxDuration);
+        warmupMap.put(key(app, serverAddr), state);
+        log.info("[{}] 开始预热服务: {}, 对比服务: {}, 每轮请求数: {}", app, serverAddr, baseline, samples.size());
+
+        state.setDisposable(round(baseline, samples)
+                .doOnNext(latency -> state.setBaselineLatency(toMillis(latency)))
+                .then(Mono.defer(() -> rounds(state, samples)))
+                .subscribe(warmed -> done(state, warmed), e -> {
+                    log.error("", e);
+                    done(state, false);
+                }));
+        return true;
+    }
+
+    private List<Sample> samples(String app) {
+        if (!scriptSamples.isEmpty()) {
+            return scriptSamples;
+        }
+        SampleRing ring = sampleMap.get(app);
+        return Objects.isNull(ring) ? Collections.emptyList() : ring.list();
+    }
+
+    private Mono<Boolean> rounds(WarmupState state, List<Sample> samples) {
+        return round(state.getServerAddr(), samples).flatMap(latency -> {
+            state.setRounds(state.getRounds() + 1);
+            state.setLatency(toMillis(latency));
+            log.debug("[{}] 预热服务: {}, 第 {} 轮, 延迟: {}ms, 对比服务延迟: {}ms", state.getApp(), state.getServerAddr(), state.getRounds(), state.getLatency(), state.getBaselineLatency());
+            if (latency >= 0 && state.getRounds() >= minRounds && isWarm(state)) {
+                return Mono.just(true);
+            }
+            if (System.currentTimeMillis() >= state.getDeadline()) {
+                return Mono.just(false);
+            }
+            return Mono.delay(Duration.ofMillis(roundInterval)).then(Mono.defer(() -> rounds(state, samples)));
+        });
+    }
+
+    private boolean isWarm(WarmupState state) {
+        double baselineLatency = state.getBaselineLatency();
+        if (baselineLatency < 0) {
+            return true;
+        }
+        return state.getLatency() <= Math.max(baselineLatency * latencyRatio, baselineLatency + 1);
+    }
+
+    /**
+     * 重放一轮请求
+     *
+     * @param serverAddr
+     * @param samples
+     * @return 延迟中位数（纳秒），超过一半请求失败时返回 -1
+     */
+    private Mono<Long> round(ServerAddr serverAddr, List<Sample> samples) {
+        // 与转发一致，服务的 path 加在请求路径前
+        String origin = "http://" + serverAddr.getHost() + ":" + serverAddr.getPort() + serverAddr.getPathPrefix();
+        // 通过服务的连接池重放，预热后切换路由时直接复用这些连接
+        HttpClient pooled = serverPools.get(serverAddr);
+        HttpClient httpClient = Objects.isNull(pooled) ? this.httpClient : pooled.responseTimeout(Duration.ofMillis(timeout));
+        return Flux.fromIterable(samples)
+                .flatMap(sample -> send(httpClient, origin, sample), concurrency)
+                .filter(latency -> latency >= 0)
+                .collectSortedList()
+                .map(latencies -> latencies.size() * 2 < samples.size() ? -1L : latencies.get(latencies.size() / 2));
+    }
+
+    private Mono<Long> send(HttpClient httpClient, String origin, Sample sample) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return httpClient.headers(headers -> {
+                        headers.set(WARMUP_HEADER, "true");
+                        if (Objects.nonNull(sample.accept)) {
+                            headers.set(HttpHeaderNames.ACCEPT, sample.accept);
+                        }
+                    })
+                    .request(sample.method)
+                    .uri(origin + sample.uri)
+                    // 读完响应体
+                    .responseSingle((response, body) -> body.asByteArray().then(Mono.just(response.status().code())))
+                    .map(status -> status >= 500 ? -1L : System.nanoTime() - start)
+                    .timeout(Duration.ofMillis(timeout * 2))
+                    .onErrorReturn(-1L);
+        });
+    }
+
+    private double toMillis(long nanos) {
+        return nanos < 0 ? -1 : nanos / 1_000_000.0;
+    }
+
+    private void done(WarmupState state, boolean warmed) {
+        // 已取消或重新开始预热
+        if (warmupMap.get(key(state.getApp(), state.getServerAddr())) != state) {
+            return;
+        }
+
+        long elapsed = System.currentTimeMillis() - state.getStartTime();
+        if (warmed) {
+            log.info("[{}] 服务预热完成: {}, 耗时: {}ms, 轮数: {}, 延迟: {}ms, 对比服务延迟: {}ms",
+                    state.getApp(), state.getServerAddr(), elapsed, state.getRounds(), state.getLatency(), state.getBaselineLatency());
+        } else if (state.getLatency() < 0) {
+            // 最近一轮失败（或一轮都没有完成）：拒绝切换，保留预热状态，服务不接收流量
+            state.setStatus(WarmupState.REJECTED);
+            log.warn("[{}] 服务预热超时且最近一轮失败，服务不接收流量: {}, 耗时: {}ms, 轮数: {}, 对比服务延迟: {}ms",
+                    state.getApp(), state.getServerAddr(), elapsed, state.getRounds(), state.getBaselineLatency());
+            return;
+        } else {
+            log.warn("[{}] 服务预热超时，直接切换: {}, 耗时: {}ms, 轮数: {}, 延迟: {}ms, 对比服务延迟: {}ms",
+                    state.getApp(), state.getServerAddr(), elapsed, state.getRounds(), state.getLatency(), state.getBaselineLatency());
+        }
+
+        switchover(state);
+    }
+
+    /**
+     * 结束预热并切换（预热中或已拒绝的服务均可手动切换）
+     *
+     * @param app
+     * @param key host:port
+     * @return 服务不在预热中时返回 false
+     */
+    public boolean promote(String app, String key) {
+        WarmupState state = warmupMap.get(app + "/" + key);
+        if (Objects.isNull(state)) {
+            return false;
+        }
+        if (Objects.nonNull(state.getDisposable())) {
+            state.getDisposable().dispose();
+        }
+        log.info("[{}] 手动切换预热中的服务: {}, 状态: {}, 轮数: {}, 延迟: {}ms, 对比服务延迟: {}ms",
+                state.getApp(), state.getServerAddr(), state.getStatus(), state.getRounds(), state.getLatency(), state.getBaselineLatency());
+        switchover(state);
+        return true;
+    }
+
+    private void switchover(WarmupState state) {
+        // 预热状态由 onDone 在切换（开始影子流量对比或切换路由）时通过 finish 清除，两者之间不会有路由刷新看到既不在预热也不在对比的新服务
+        Consumer<WarmupState> onDone = this.onDone;
+        if (Objects.isNull(onDone)) {
+            finish(state);
+            return;
+        }
+        try {
+            onDone.accept(state);
+        } catch (Exception e) {
+            log.error("", e);
+            finish(state);
+        }
+    }
+
+    /**
+     * 清除预热结束的服务的预热状态，由 onDone 回调在切换时调用
+     *
+     * @param state
+     * @return 是否仍是该服务当前的预热（期间被取消或重新开始预热时返回 false）
+     */
+    public boolean finish(WarmupState state) {
+        return warmupMap.remove(key(state.getApp(), state.getServerAddr()), state);
+    }
+
+    private static String key(String app, ServerAddr serverAddr) {
+        return app + "/" + serverAddr.getKey();
+    }
+
+    public boolean isWarming(String app, ServerAddr serverAddr) {
+        return !warmupMap.isEmpty() && warmupMap.containsKey(key(app, serverAddr));
+    }
+
+    /**
+     * 取消预热（服务已从应用中移除或重新注册），不回调 onDone
+     *
+     * @param app
+     * @param serverAddr
+     */
+    public void cancel(String app, ServerAddr serverAddr) {
+        WarmupState state = warmupMap.remove(key(app, serverAddr));
+        if (Objects.nonNull(state) && Objects.nonNull(state.getDisposable())) {
+            state.getDisposable().dispose();
+        }
+    }
+
+    public List<WarmupState> list() {
+        return new ArrayList<>(warmupMap.values());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        warmupMap.values().forEach(state -> {
+            if (Objects.nonNull(state.getDisposable())) {
+                state.getDisposable().dispose();
+            }
+        });
+    }
+
+    /**
+     * 可重放的请求
+     */
+    private static class Sample {
+
+        private final HttpMethod method;
+
+        // 原始路径及查询参数
+        private final String uri;
+
+        private final String accept;
+
+        private Sample(HttpMethod method, String uri, String accept) {
+            this.method = method;
+            this.uri = uri;
+            this.accept = accept;
+        }
+
+    }
+
+    /**
+     * 最近请求的环形缓冲区，写入无锁，覆盖最早的请求
+     */
+    private static class SampleRing {
+
+        private final AtomicReferenceArray<Sample> samples;
+        private final AtomicLong next = new AtomicLong();
+
+        private SampleRing(int size) {
+            samples = new AtomicReferenceArray<>(Math.max(size, 1));
+        }
+
+        private void add(Sample sample) {
+            samples.lazySet((int) (next.getAndIncrement() % samples.length()), sample);
+        }
+
+        private List<Sample> list() {
+            List<Sample> list = new ArrayList<>(samples.length());
+            for (int i = 0, length = samples.length(); i < length; i++) {
+                Sample sample = samples.get(i);
+                if (Objects.nonNull(sample)) {
+                    list.add(sample);
+                }
+            }
+            return list;
+        }
+
+    }
+
+}
@@ -0,0 +1,143 @@
+package org.gentle.deploy.service;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 静态资源缓存
+ * <p>
+ * 启动时读取一次资源并预先压缩（gzip），响应时返回共享只读缓冲区（不复制），支持 ETag / If-None-Match 返回 304。
+ * 压缩和未压缩是两种表示，使用不同的强 ETag（压缩的加 -gzip 后缀），If-None-Match 与任一个匹配即返回 304（内容相同）。
+ *
+ * @author xiangqian
+ * @date 20:18 2026/10/20
+ */
+public class StaticResource {
+
+    private final MediaType contentType;
+    private final String etag;
+    private final String gzipEtag;
+
+    // 只读缓冲区，响应时 duplicate，不复制数据
+    private final ByteBuffer identity;
+    private final ByteBuffer gzip;
+
+    private StaticResource(MediaType contentType, byte[] bytes) throws IOException {
+        this.contentType = contentType;
+        String md5 = DigestUtils.md5DigestAsHex(bytes);
+        this.etag = "\"" + md5 + "\"";
+        this.gzipEtag = "\"" + md5 + "-gzip\"";
+        this.identity = ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream(bytes.length);
+        try (GZIPOutputStream gzipOutput = new GZIPOutputStream(output)) {
+            gzipOutput.write(bytes);
+        }
+        this.gzip = ByteBuffer.wrap(output.toByteArray()).asReadOnlyBuffer();
+    }
+
+    /**
+     * 加载 classpath 资源
+     *
+     * @param location
+     * @param contentType
+     * @return
+     * @throws IOException
+     */
+    public static StaticResource load(String location, MediaType contentType) throws IOException {
+        try (InputStream input = StaticResource.class.getClassLoader().getResourceAsStream(location)) {
+            Objects.requireNonNull(input, location);
+            return new StaticResource(contentType, IOUtils.toByteArray(input));
+        }
+    }
+
+    public Mono<Void> write(ServerWebExchange exchange) {
+        ServerHttpRequest request = exchange.getRequest();
+        ServerHttpResponse response = exchange.getResponse();
+        HttpHeaders headers = response.getHeaders();
+        boolean gzipped = acceptGzip(request.getHeaders());
+        headers.setETag(gzipped ? gzipEtag : etag);
+        // 每次使用前校验（命中返回 304）
+        headers.setCacheControl("no-cache");
+        headers.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+
+        if (request.getHeaders().getIfNoneMatch().stream().anyMatch(value -> value.equals(etag) || value.equals(gzipEtag) || value.equals("*"))) {
+            response.setStatusCode(HttpStatus.NOT_MODIFIED);
+            return response.setComplete();
+        }
+
+        ByteBuffer buffer = identity;
+        if (gzipped) {
+            buffer = gzip;
+            headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+
+        response.setStatusCode(HttpStatus.OK);
+        headers.setContentType(contentType);
+        headers.setContentLength(buffer.remaining());
+        if (request.getMethod() == HttpMethod.HEAD) {
+            return response.setComplete();
+        }
+        return response.writeWith(Mono.just(DefaultDataBufferFactory.sharedInstance.wrap(buffer.duplicate())));
+    }
+
+    /**
+     * Accept-Encoding 是否接受 gzip：gzip（或 x-gzip）的 q 值大于 0，没有列出 gzip 时取 * 的 q 值
+     *
+     * @param headers
+     * @return
+     */
+    static boolean acceptGzip(HttpHeaders headers) {
+        double gzip = -1;
+        double any = -1;
+        for (String value : headers.getOrEmpty(HttpHeaders.ACCEPT_ENCODING)) {
+            for (String coding : value.split(",")) {
+                String[] parts = coding.split(";");
+                String name = parts[0].trim();
+                if ("gzip".equalsIgnoreCase(name) || "x-gzip".equalsIgnoreCase(name)) {
+                    gzip = Math.max(gzip, qValue(parts));
+                } else if ("*".equals(name)) {
+                    any = Math.max(any, qValue(parts));
+                }
+            }
+        }
+        return gzip >= 0 ? gzip > 0 : any > 0;
+    }
+
+    /**
+     * 参数中的 q 值
+     *
+     * @param parts 编码及其参数
+     * @return 没有 q 参数时为 1，格式错误时为 0（不接受）
+     */
+    private static double qValue(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String param = parts[i].trim();
+            int index = param.indexOf('=');
+            if (index > 0 && "q".equalsIgnoreCase(param.substring(0, index).trim())) {
+                double q = NumberUtils.toDouble(param.substring(index + 1).trim(), 0);
+                return q > 0 && q <= 1 ? q : 0;
+            }
+        }
+        return 1;
+    }
+
+}
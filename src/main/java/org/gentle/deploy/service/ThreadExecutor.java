@@ -1,53 +1,258 @@
 package org.gentle.deploy.service;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.event.ContextClosedEvent;
 import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 import javax.annotation.PostConstruct;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
 
 /**
+ * 执行阻塞任务（文件 I/O、持有 ServerManager 锁的操作等），不占用事件循环线程
+ * <p>
+ * JDK 21+ 且开启 virtual-threads 时每个任务使用一个虚拟线程（通过反射创建，兼容当前编译目标），
+ * 否则使用命名的平台线程池。排队的任务数达到 queue-capacity 时执行器饱和：外部请求（_api）通过 {@link #isSaturated()} 得知后直接拒绝（503），
+ * 不再堆积；网关内部的任务（路由刷新、探测结果、预热结束等）数量有限（按服务、按 key 合并），始终接收。
+ * 带 key 的任务在排队期间合并：同一 key 已在排队时不再重复提交（开始执行后再提交的任务重新排队，保证执行到最新状态）。
+ * {@link #getScheduler()} 供 Reactor 的 subscribeOn、publishOn 使用。
+ *
  * @author xiangqian
  * @date 13:15 2022/09/25
  */
+@Slf4j
 @Component
 public class ThreadExecutor implements ApplicationListener<ContextClosedEvent> {
 
-    private ThreadPoolExecutor threadPoolExecutor;
+    // 可用时使用虚拟线程
+    @Value("${server.executor.virtual-threads:true}")
+    private boolean virtualThreads;
+
+    // 平台线程数，0 表示 max(4, CPU 核数)
+    @Value("${server.executor.threads:0}")
+    private int threads;
+
+    // 排队任务数上限，达到后拒绝外部请求
+    @Value("${server.executor.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${server.executor.thread-name-prefix:executor}")
+    private String threadNamePrefix;
+
+    // 关闭时等待已提交任务执行完成的时间（毫秒）
+    @Value("${server.executor.shutdown-timeout:10000}")
+    private long shutdownTimeout;
+
+    private ExecutorService executorService;
+
+    // 是否使用虚拟线程
+    private boolean virtual;
+
+    private Scheduler scheduler;
+
+    // 已提交、未开始执行的任务数，执行中的任务数
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final LongAdder completed = new LongAdder();
+
+    // 排队期间被合并的任务数
+    private final LongAdder coalesced = new LongAdder();
+
+    // 执行器饱和时被拒绝的请求数
+    private final LongAdder rejected = new LongAdder();
+
+    // 排队中的 key
+    private final Map<String, Boolean> queuedKeys = new ConcurrentHashMap<>();
+
+    // 任务执行结束时回调：排队耗时、执行耗时（纳秒）
+    private volatile BiConsumer<Long, Long> onTask = (wait, run) -> {
+    };
 
     @PostConstruct
     public void init() {
-        int corePoolSize = 2;
-        int maximumPoolSize = 4;
-        long keepAliveTime = 5;
-        TimeUnit unit = TimeUnit.MINUTES;
-        BlockingQueue<Runnable> workQueue = new ArrayBlockingQueue<>(16);
-        ThreadFactory threadFactory = Executors.defaultThreadFactory();
-        RejectedExecutionHandler handler = new ThreadPoolExecutor.AbortPolicy();
-        threadPoolExecutor = new ThreadPoolExecutor(corePoolSize,
-                maximumPoolSize,
-                keepAliveTime,
-                unit,
-                workQueue,
-                threadFactory,
-                handler);
+        if (virtualThreads) {
+            executorService = newVirtualThreadExecutor();
+        }
+        virtual = Objects.nonNull(executorService);
+        if (!virtual) {
+            int n = threads > 0 ? threads : Math.max(4, Runtime.getRuntime().availableProcessors());
+            // 队列长度由 queue-capacity 在提交外部请求时限制（见 isSaturated），内部任务不因队列满被拒绝
+            ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(n,
+                    n,
+                    1,
+                    TimeUnit.MINUTES,
+                    new LinkedBlockingQueue<>(),
+                    namedThreadFactory());
+            threadPoolExecutor.allowCoreThreadTimeOut(true);
+            executorService = threadPoolExecutor;
+        }
+        scheduler = Schedulers.fromExecutor(this::execute);
+        log.info("任务执行器: {}", virtual ? "虚拟线程" : "平台线程池");
+    }
+
+    /**
+     * JDK 21+：Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix, 1).factory())
+     *
+     * @return 不支持虚拟线程时返回 null
+     */
+    private ExecutorService newVirtualThreadExecutor() {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, threadNamePrefix + "-", 1L);
+            ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, threadFactory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug("不支持虚拟线程，使用平台线程池: {}", e.toString());
+            return null;
+        }
+    }
+
+    private ThreadFactory namedThreadFactory() {
+        AtomicInteger number = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, threadNamePrefix + "-" + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
     }
 
     public void execute(Runnable command) {
-        threadPoolExecutor.execute(command);
+        dispatch(task(command, null));
+    }
+
+    /**
+     * 提交任务，同一 key 的任务在排队期间合并
+     *
+     * @param key
+     * @param command
+     * @return 已有同一 key 的任务在排队（本次被合并）时返回 false
+     */
+    public boolean execute(String key, Runnable command) {
+        if (Objects.nonNull(queuedKeys.putIfAbsent(key, Boolean.TRUE))) {
+            coalesced.increment();
+            return false;
+        }
+        dispatch(task(command, key));
+        return true;
     }
 
     public <T> Future<T> submit(Callable<T> task) {
-        return threadPoolExecutor.submit(task);
+        FutureTask<T> futureTask = new FutureTask<>(task);
+        execute(futureTask);
+        return futureTask;
+    }
+
+    private void dispatch(Runnable task) {
+        try {
+            executorService.execute(task);
+        } catch (RejectedExecutionException e) {
+            // 已关闭（应用关闭期间提交的任务），只能由提交任务的线程执行
+            task.run();
+        }
+    }
+
+    /**
+     * 执行器是否饱和：排队的任务数达到 queue-capacity，饱和时返回 true 并计入拒绝数，调用方应拒绝请求（503）
+     *
+     * @return
+     */
+    public boolean isSaturated() {
+        if (queued.get() < queueCapacity) {
+            return false;
+        }
+        rejected.increment();
+        return true;
+    }
+
+    private Runnable task(Runnable command, String key) {
+        long submitTime = System.nanoTime();
+        queued.incrementAndGet();
+        return () -> {
+            queued.decrementAndGet();
+            if (Objects.nonNull(key)) {
+                queuedKeys.remove(key);
+            }
+            active.incrementAndGet();
+            long startTime = System.nanoTime();
+            try {
+                command.run();
+            } catch (Throwable e) {
+                log.error("任务执行失败", e);
+            } finally {
+                active.decrementAndGet();
+                completed.increment();
+                onTask.accept(startTime - submitTime, System.nanoTime() - startTime);
+            }
+        };
+    }
+
+    /**
+     * Reactor 调度器（不支持定时调度）
+     *
+     * @return
+     */
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * 注册任务执行结束的回调
+     *
+     * @param onTask 排队耗时、执行耗时（纳秒）
+     */
+    public void onTask(BiConsumer<Long, Long> onTask) {
+        this.onTask = onTask;
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    public int getQueueSize() {
+        return queued.get();
+    }
+
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    public long getCompletedCount() {
+        return completed.sum();
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
     }
 
     @Override
     public void onApplicationEvent(ContextClosedEvent event) {
-        if (Objects.nonNull(threadPoolExecutor)) {
-            threadPoolExecutor.shutdown();
-            threadPoolExecutor = null;
+        ExecutorService executorService = this.executorService;
+        if (Objects.isNull(executorService) || executorService.isShutdown()) {
+            return;
+        }
+
+        // 不再接收新任务（之后提交的任务由提交任务的线程执行），等待已提交的任务执行完成
+        executorService.shutdown();
+        try {
+            if (!executorService.awaitTermination(shutdownTimeout, TimeUnit.MILLISECONDS)) {
+                log.warn("任务执行器关闭超时，未完成的任务数: {}", queued.get() + active.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
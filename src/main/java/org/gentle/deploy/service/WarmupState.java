@@ -0,0 +1,47 @@
+package org.gentle.deploy.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+import reactor.core.Disposable;
+
+/**
+ * 服务预热状态
+ *
+ * @author xiangqian
+ * @date 17:05 2026/10/22
+ */
+@Data
+public class WarmupState {
+
+    public static final String WARMING = "warming";
+    public static final String REJECTED = "rejected";
+
+    private final String app;
+
+    private final ServerAddr serverAddr;
+
+    // 对比的服务（当前接收流量的服务）
+    private final ServerAddr baseline;
+
+    // 开始预热时间
+    private final long startTime;
+
+    // 截止时间，超过后不再等待：最近一轮成功时直接切换，否则拒绝切换
+    private final long deadline;
+
+    // warming：预热中；rejected：超时且最近一轮失败，不接收流量，等待手动切换或移除
+    private volatile String status = WARMING;
+
+    // 对比服务的延迟中位数（毫秒），-1 表示未知
+    private volatile double baselineLatency = -1;
+
+    // 最近一轮的延迟中位数（毫秒），-1 表示未知或失败过多
+    private volatile double latency = -1;
+
+    // 已完成的轮数
+    private volatile int rounds;
+
+    @JsonIgnore
+    private volatile Disposable disposable;
+
+}
@@ -0,0 +1,332 @@
+package org.gentle.deploy;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 切换压测：恒定速率请求下注册新服务、关闭旧服务，统计错误数、延迟分布（p99 尖刺）以及流量完全切换到新服务的耗时
+ * <p>
+ * 1、启动网关（随机端口，或通过 -Dgateway=http://host:port 压测已运行的网关）；
+ * 2、启动 backends 个 Reactor Netty 桩服务，响应头 x-backend 标识服务；
+ * 3、开环发压：按计划时间发送请求，延迟从计划发送时间开始计算（修正协调遗漏 coordinated omission），
+ * 请求变慢时不会减少发送量；
+ * 4、运行期间依次通过 /_api/server/register 注册下一个服务，kill.delay 毫秒后关闭上一个服务；
+ * 5、输出每秒延迟、整体 HdrHistogram 分布，并将区间直方图写入 target/switchover.hlog（可用 HistogramLogAnalyzer 对比）。
+ * <p>
+ * 参数（-Dxxx=yyy）：
+ * rate 每秒请求数（默认 1000）、duration 压测时长秒（默认 30）、warmup 预热秒（默认 5）、backends 桩服务数（默认 3）、
+ * kill.delay 注册新服务后关闭旧服务的延迟毫秒（默认 1000）、backend.latency 桩服务响应延迟毫秒（默认 0）、
+ * max.errors / max.p99（毫秒）超出时以非 0 退出，用作性能回归门禁。
+ *
+ * @author xiangqian
+ * @date 10:12 2026/10/21
+ */
+@Slf4j
+public class SwitchoverLoadTest {
+
+    private static final String SECRET = "3a5f0c4a-3bc7-11ed-911e-0242ac110002";
+
+    private static final String BACKEND_HEADER = "x-backend";
+
+    private static final int RATE = Integer.getInteger("rate", 1000);
+    private static final int DURATION = Integer.getInteger("duration", 30);
+    private static final int WARMUP = Integer.getInteger("warmup", 5);
+    private static final int BACKENDS = Math.max(Integer.getInteger("backends", 3), 2);
+    private static final long KILL_DELAY = Long.getLong("kill.delay", 1000);
+    private static final long BACKEND_LATENCY = Long.getLong("backend.latency", 0);
+    private static final long MAX_ERRORS = Long.getLong("max.errors", -1);
+    private static final long MAX_P99 = Long.getLong("max.p99", -1);
+
+    // 最长记录 1 分钟（微秒），3 位有效数字
+    private final Recorder recorder = new Recorder(TimeUnit.MINUTES.toMicros(1), 3);
+    private final Histogram total = new Histogram(TimeUnit.MINUTES.toMicros(1), 3);
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder intervalErrors = new LongAdder();
+    private final Map<String, LongAdder> intervalBackends = new ConcurrentHashMap<>();
+
+    // 是否记录（预热期间不记录）
+    private volatile boolean recording;
+
+    // 当前切换
+    private volatile Switch current;
+    private final List<Switch> switches = new ArrayList<>();
+
+    private HttpClient httpClient;
+
+    public static void main(String[] args) throws Exception {
+        int status = new SwitchoverLoadTest().run();
+        System.exit(status);
+    }
+
+    private int run() throws Exception {
+        ConfigurableApplicationContext context = null;
+        if (Objects.isNull(System.getProperty("gateway"))) {
+            // 关闭 DEBUG 日志，避免日志输出影响压测结果；关闭注册日志，桩服务的注册不写入工作目录，不被之后启动的网关恢复
+            context = new SpringApplicationBuilder(GentleDeployApplication.class).run("--server.port=0", "--logging.level.root=INFO", "--server.journal.enabled=false");
+        }
+        String gateway = Objects.isNull(context)
+                ? System.getProperty("gateway")
+                : "http://127.0.0.1:" + context.getEnvironment().getProperty("local.server.port");
+        log.info("网关: {}, 速率: {}/s, 时长: {}s, 桩服务数: {}", gateway, RATE, DURATION, BACKENDS);
+
+        List<DisposableServer> backends = new ArrayList<>();
+        for (int i = 0; i < BACKENDS; i++) {
+            backends.add(backend());
+        }
+
+        ConnectionProvider connectionProvider = ConnectionProvider.builder("switchover")
+                .maxConnections(RATE)
+                .pendingAcquireMaxCount(-1)
+                .build();
+        httpClient = HttpClient.create(connectionProvider)
+                .baseUrl(gateway)
+                .responseTimeout(Duration.ofSeconds(10));
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        File hlog = new File("target", "switchover.hlog");
+        hlog.getParentFile().mkdirs();
+        try (PrintStream hlogOutput = new PrintStream(hlog)) {
+            register(gateway, backends.get(0));
+
+            // 预热
+            load(TimeUnit.SECONDS.toNanos(WARMUP));
+            recorder.reset();
+            errors.reset();
+
+            // 每秒输出一次区间统计
+            HistogramLogWriter hlogWriter = new HistogramLogWriter(hlogOutput);
+            hlogWriter.outputLogFormatVersion();
+            hlogWriter.outputLegend();
+            long startTime = System.currentTimeMillis();
+            hlogWriter.outputStartTime(startTime);
+            hlogWriter.setBaseTime(startTime);
+            System.out.printf("%8s %8s %8s %10s %10s %10s %10s  %s%n", "time(s)", "count", "errors", "p50(ms)", "p99(ms)", "p999(ms)", "max(ms)", "backends");
+            scheduler.scheduleAtFixedRate(() -> interval(hlogWriter, startTime), 1, 1, TimeUnit.SECONDS);
+
+            // 依次切换到下一个服务
+            recording = true;
+            long period = TimeUnit.SECONDS.toMillis(DURATION) / BACKENDS;
+            for (int i = 1; i < BACKENDS; i++) {
+                DisposableServer previous = backends.get(i - 1);
+                DisposableServer next = backends.get(i);
+                scheduler.schedule(() -> switchover(gateway, previous, next), period * i, TimeUnit.MILLISECONDS);
+            }
+            load(TimeUnit.SECONDS.toNanos(DURATION));
+
+            // 等待未完成的请求
+            TimeUnit.SECONDS.sleep(1);
+            recording = false;
+            scheduler.shutdown();
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+            interval(hlogWriter, startTime);
+        } finally {
+            backends.forEach(DisposableServer::disposeNow);
+            connectionProvider.disposeLater().block();
+            if (Objects.nonNull(context)) {
+                context.close();
+            }
+        }
+
+        return report();
+    }
+
+    /**
+     * 开环发压：按计划时间发送，不等待响应
+     *
+     * @param durationNanos
+     */
+    private void load(long durationNanos) {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / RATE;
+        long start = System.nanoTime();
+        for (long i = 0; ; i++) {
+            long intended = start + i * intervalNanos;
+            if (intended - start >= durationNanos) {
+                break;
+            }
+            long now;
+            while ((now = System.nanoTime()) < intended) {
+                LockSupport.parkNanos(intended - now);
+            }
+            send(intended);
+        }
+    }
+
+    private void send(long intended) {
+        httpClient.get()
+                .uri("/")
+                .responseSingle((response, body) -> body.then(Mono.just(response)))
+                .subscribe(response -> {
+                    String backend = response.responseHeaders().get(BACKEND_HEADER);
+                    boolean success = response.status().equals(HttpResponseStatus.OK) && Objects.nonNull(backend);
+                    complete(intended, success ? backend : null);
+                }, e -> complete(intended, null));
+    }
+
+    private void complete(long intended, String backend) {
+        if (!recording) {
+            return;
+        }
+
+        // 从计划发送时间开始计算延迟
+        recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intended));
+        if (Objects.isNull(backend)) {
+            errors.increment();
+            intervalErrors.increment();
+            backend = "error";
+        }
+        intervalBackends.computeIfAbsent(backend, key -> new LongAdder()).increment();
+
+        // 切换后发送、但未落到新服务的请求
+        Switch current = this.current;
+        if (Objects.nonNull(current) && intended >= current.registeredAt && !current.backend.equals(backend)) {
+            current.lastMissedAt.accumulateAndGet(intended, Math::max);
+        }
+    }
+
+    private void interval(HistogramLogWriter hlogWriter, long startTime) {
+        Histogram histogram = recorder.getIntervalHistogram();
+        total.add(histogram);
+        hlogWriter.outputIntervalHistogram(histogram);
+
+        StringBuilder backends = new StringBuilder();
+        intervalBackends.forEach((backend, count) -> backends.append(backend).append('=').append(count.sumThenReset()).append(' '));
+        System.out.printf("%8.1f %8d %8d %10.2f %10.2f %10.2f %10.2f  %s%n",
+                (System.currentTimeMillis() - startTime) / 1000.0,
+                histogram.getTotalCount(),
+                intervalErrors.sumThenReset(),
+                histogram.getValueAtPercentile(50) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMaxValue() / 1000.0,
+                backends);
+    }
+
+    private void switchover(String gateway, DisposableServer previous, DisposableServer next) {
+        try {
+            register(gateway, next);
+            TimeUnit.MILLISECONDS.sleep(KILL_DELAY);
+            log.info("关闭服务: {}", previous.port());
+            previous.disposeNow();
+        } catch (Exception e) {
+            log.error("", e);
+        }
+    }
+
+    private void register(String gateway, DisposableServer server) {
+        String backend = "b" + server.port();
+        long start = System.nanoTime();
+        String result = HttpClient.create()
+                .get()
+                .uri(String.format("%s/_api/server/register?secret=%s&host=127.0.0.1&port=%s",
+                        gateway, URLEncoder.encode(SECRET, StandardCharsets.UTF_8), server.port()))
+                .responseContent()
+                .aggregate()
+                .asString()
+                .block(Duration.ofSeconds(10));
+        Switch sw = new Switch(backend, start);
+        sw.registerCost = System.nanoTime() - start;
+        log.info("注册服务: {}, 结果: {}, 耗时: {}ms", server.port(), result, TimeUnit.NANOSECONDS.toMillis(sw.registerCost));
+        current = sw;
+        if (recording) {
+            switches.add(sw);
+        }
+    }
+
+    private int report() {
+        System.out.println();
+        System.out.println("延迟分布（毫秒，从计划发送时间开始计算）:");
+        total.outputPercentileDistribution(System.out, 5, 1000.0);
+
+        System.out.println();
+        System.out.printf("请求数: %d, 错误数: %d, p50: %.2fms, p99: %.2fms, p999: %.2fms, max: %.2fms%n",
+                total.getTotalCount(), errors.sum(),
+                total.getValueAtPercentile(50) / 1000.0, total.getValueAtPercentile(99) / 1000.0,
+                total.getValueAtPercentile(99.9) / 1000.0, total.getMaxValue() / 1000.0);
+        for (Switch sw : switches) {
+            long lastMissedAt = sw.lastMissedAt.get();
+            System.out.printf("切换到 %s: 注册耗时 %.2fms, 流量完全切换耗时 %s%n",
+                    sw.backend, sw.registerCost / 1_000_000.0,
+                    lastMissedAt == 0 ? "0ms" : String.format("%.2fms", (lastMissedAt - sw.registeredAt) / 1_000_000.0));
+        }
+
+        int status = 0;
+        if (MAX_ERRORS >= 0 && errors.sum() > MAX_ERRORS) {
+            System.out.printf("错误数 %d 超出 max.errors=%d%n", errors.sum(), MAX_ERRORS);
+            status = 1;
+        }
+        if (MAX_P99 >= 0 && total.getValueAtPercentile(99) > TimeUnit.MILLISECONDS.toMicros(MAX_P99)) {
+            System.out.printf("p99 %.2fms 超出 max.p99=%dms%n", total.getValueAtPercentile(99) / 1000.0, MAX_P99);
+            status = 1;
+        }
+        return status;
+    }
+
+    /**
+     * 桩服务，响应头 x-backend 标识服务（b + 端口）
+     *
+     * @return
+     */
+    private static DisposableServer backend() {
+        return HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .handle((request, response) -> {
+                    String backend = "b" + request.hostAddress().getPort();
+                    Mono<String> body = Mono.just(backend);
+                    if (BACKEND_LATENCY > 0) {
+                        body = body.delayElement(Duration.ofMillis(BACKEND_LATENCY));
+                    }
+                    return response.header(BACKEND_HEADER, backend).sendString(body);
+                })
+                .bindNow();
+    }
+
+    private static class Switch {
+
+        // 新服务
+        private final String backend;
+
+        // 注册时间（纳秒）
+        private final long registeredAt;
+
+        // 注册请求耗时（纳秒）
+        private long registerCost;
+
+        // 注册后发送、但未落到新服务的最后一个请求的计划发送时间（纳秒）
+        private final AtomicLong lastMissedAt = new AtomicLong();
+
+        private Switch(String backend, long registeredAt) {
+            this.backend = backend;
+            this.registeredAt = registeredAt;
+        }
+
+    }
+
+}
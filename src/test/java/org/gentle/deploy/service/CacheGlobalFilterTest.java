@@ -0,0 +1,67 @@
+package org.gentle.deploy.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * {@link CacheGlobalFilter} Range 请求头解析
+ *
+ * @author xiangqian
+ * @date 11:30 2026/10/27
+ */
+public class CacheGlobalFilterTest {
+
+    @Test
+    public void range() {
+        assertArrayEquals(new long[]{0, 99}, CacheGlobalFilter.range("bytes=0-99", 1000));
+        assertArrayEquals(new long[]{0, 0}, CacheGlobalFilter.range("bytes=0-0", 1000));
+        assertArrayEquals(new long[]{999, 999}, CacheGlobalFilter.range("bytes=999-999", 1000));
+        assertArrayEquals(new long[]{100, 199}, CacheGlobalFilter.range("bytes= 100-199 ", 1000));
+        // 结束位置超出时截断
+        assertArrayEquals(new long[]{0, 999}, CacheGlobalFilter.range("bytes=0-5000", 1000));
+        assertArrayEquals(new long[]{999, 999}, CacheGlobalFilter.range("bytes=999-1000", 1000));
+    }
+
+    @Test
+    public void openRange() {
+        assertArrayEquals(new long[]{500, 999}, CacheGlobalFilter.range("bytes=500-", 1000));
+        assertArrayEquals(new long[]{0, 999}, CacheGlobalFilter.range("bytes=0-", 1000));
+        assertArrayEquals(new long[]{999, 999}, CacheGlobalFilter.range("bytes=999-", 1000));
+    }
+
+    @Test
+    public void suffixRange() {
+        assertArrayEquals(new long[]{900, 999}, CacheGlobalFilter.range("bytes=-100", 1000));
+        assertArrayEquals(new long[]{999, 999}, CacheGlobalFilter.range("bytes=-1", 1000));
+        // 后缀长度超过大小时返回完整内容
+        assertArrayEquals(new long[]{0, 999}, CacheGlobalFilter.range("bytes=-2000", 1000));
+    }
+
+    @Test
+    public void unsatisfiable() {
+        // 416
+        assertArrayEquals(new long[0], CacheGlobalFilter.range("bytes=1000-", 1000));
+        assertArrayEquals(new long[0], CacheGlobalFilter.range("bytes=1000-1999", 1000));
+        assertArrayEquals(new long[0], CacheGlobalFilter.range("bytes=2000-1000", 1000));
+        assertArrayEquals(new long[0], CacheGlobalFilter.range("bytes=-0", 1000));
+        assertArrayEquals(new long[0], CacheGlobalFilter.range("bytes=0-", 0));
+        assertArrayEquals(new long[0], CacheGlobalFilter.range("bytes=-1", 0));
+    }
+
+    @Test
+    public void ignored() {
+        // 多个范围、格式错误：返回完整响应
+        assertNull(CacheGlobalFilter.range("bytes=0-1,5-6", 1000));
+        assertNull(CacheGlobalFilter.range("items=0-99", 1000));
+        assertNull(CacheGlobalFilter.range("bytes=100", 1000));
+        assertNull(CacheGlobalFilter.range("bytes=a-b", 1000));
+        assertNull(CacheGlobalFilter.range("bytes=-", 1000));
+        assertNull(CacheGlobalFilter.range("bytes=1-a", 1000));
+        assertNull(CacheGlobalFilter.range("bytes=99999999999999999999-", 1000));
+        // 结束位置小于开始位置
+        assertNull(CacheGlobalFilter.range("bytes=500-100", 1000));
+    }
+
+}
@@ -0,0 +1,168 @@
+package org.gentle.deploy.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link CidrTrie} 地址解析、网段匹配
+ *
+ * @author xiangqian
+ * @date 10:30 2026/10/27
+ */
+public class CidrTrieTest {
+
+    @Test
+    public void parseV4() {
+        assertArrayEquals(new long[]{0, 0xffffL << 32 | 0x01020304L}, parse("1.2.3.4", 4));
+        assertArrayEquals(new long[]{0, 0xffffL << 32 | 0xffffffffL}, parse("255.255.255.255", 4));
+        assertArrayEquals(new long[]{0, 0xffffL << 32}, parse("0.0.0.0", 4));
+    }
+
+    @Test
+    public void parseV6() {
+        assertArrayEquals(new long[]{0, 0}, parse("::", 6));
+        assertArrayEquals(new long[]{0, 1}, parse("::1", 6));
+        assertArrayEquals(new long[]{1L << 48, 0}, parse("1::", 6));
+        assertArrayEquals(new long[]{0x0001000200030004L, 0x0005000600070008L}, parse("1:2:3:4:5:6:7:8", 6));
+        assertArrayEquals(new long[]{0x20010db800000000L, 0x17}, parse("2001:DB8::17", 6));
+        assertArrayEquals(new long[]{0x20010db8cafe0000L, 0x17}, parse("2001:db8:cafe::17", 6));
+        assertArrayEquals(new long[]{0x0001000000000000L, 0x0000000000000008L}, parse("1::8", 6));
+    }
+
+    @Test
+    public void parseV4Mapped() {
+        // 与 IPv4 地址解析结果相同，共用一棵树
+        assertArrayEquals(parse("1.2.3.4", 4), parse("::ffff:1.2.3.4", 6));
+        assertArrayEquals(parse("1.2.3.4", 4), parse("::ffff:102:304", 6));
+        assertArrayEquals(parse("1.2.3.4", 4), parse("0:0:0:0:0:ffff:1.2.3.4", 6));
+        assertArrayEquals(new long[]{0x0064ff9b00000000L, 0xc0000221L}, parse("64:ff9b::192.0.2.33", 6));
+    }
+
+    @Test
+    public void parseZoneId() {
+        assertArrayEquals(new long[]{0xfe80L << 48, 1}, parse("fe80::1%eth0", 6));
+        assertArrayEquals(new long[]{0xfe80L << 48, 1}, parse("fe80::1%25", 6));
+        assertEquals(0, CidrTrie.parse("%eth0", 0, 5, new long[2]));
+    }
+
+    @Test
+    public void parseSubSequence() {
+        String s = "for=[2001:db8::17]:4711";
+        long[] addr = new long[2];
+        assertEquals(6, CidrTrie.parse(s, 5, 17, addr));
+        assertArrayEquals(new long[]{0x20010db800000000L, 0x17}, addr);
+    }
+
+    @Test
+    public void parseInvalid() {
+        String[] values = {"", "1", "1.2.3", "1.2.3.4.5", "256.1.1.1", "1.2.3.256", "1..2.3", ".1.2.3", "1.2.3.", "0001.2.3.4",
+                "1.2.3.4 ", " 1.2.3.4", "1.2.3.a", "-1.2.3.4", "unknown", "_hidden",
+                ":", ":::", ":1::", "1:::2", "1::2::3", "1:2:3:4:5:6:7:8:9", "1:2:3:4:5:6:7", "1:2:3:4:5:6:7:8::", "12345::",
+                "1:", "::g", "[::1]", "::ffff:1.2.3.256", "::ffff:1.2.3", "::1.2.3.4:1", "1:2:3:4:5:6:7:1.2.3.4"};
+        for (String value : values) {
+            assertEquals(0, CidrTrie.parse(value, 0, value.length(), new long[2]), value);
+        }
+    }
+
+    @Test
+    public void v4PrefixBoundary() {
+        CidrTrie cidrTrie = CidrTrie.parse("10.0.0.0/8, 192.168.1.128/25, 172.16.0.1");
+        assertEquals(3, cidrTrie.size());
+
+        assertTrue(contains(cidrTrie, "10.0.0.0"));
+        assertTrue(contains(cidrTrie, "10.255.255.255"));
+        assertFalse(contains(cidrTrie, "9.255.255.255"));
+        assertFalse(contains(cidrTrie, "11.0.0.0"));
+
+        assertTrue(contains(cidrTrie, "192.168.1.128"));
+        assertTrue(contains(cidrTrie, "192.168.1.255"));
+        assertFalse(contains(cidrTrie, "192.168.1.127"));
+        assertFalse(contains(cidrTrie, "192.168.2.128"));
+
+        // 没有前缀长度时为 /32
+        assertTrue(contains(cidrTrie, "172.16.0.1"));
+        assertFalse(contains(cidrTrie, "172.16.0.0"));
+        assertFalse(contains(cidrTrie, "172.16.0.2"));
+
+        // IPv4 映射地址
+        assertTrue(contains(cidrTrie, "::ffff:10.1.2.3"));
+        assertFalse(contains(cidrTrie, "::10.1.2.3"));
+    }
+
+    @Test
+    public void v6PrefixBoundary() {
+        CidrTrie cidrTrie = CidrTrie.parse("2001:db8::/32,2001:db9:0:1::/64,::1");
+
+        assertTrue(contains(cidrTrie, "2001:db8::"));
+        assertTrue(contains(cidrTrie, "2001:db8:ffff:ffff:ffff:ffff:ffff:ffff"));
+        assertFalse(contains(cidrTrie, "2001:db7:ffff:ffff:ffff:ffff:ffff:ffff"));
+        assertFalse(contains(cidrTrie, "2001:db9::"));
+
+        // 前缀长度跨过高、低 64 位的边界
+        assertTrue(contains(cidrTrie, "2001:db9:0:1::"));
+        assertTrue(contains(cidrTrie, "2001:db9:0:1:ffff:ffff:ffff:ffff"));
+        assertFalse(contains(cidrTrie, "2001:db9:0:2::"));
+        assertFalse(contains(cidrTrie, "2001:db9:0:0:ffff:ffff:ffff:ffff"));
+
+        assertTrue(contains(cidrTrie, "::1"));
+        assertFalse(contains(cidrTrie, "::"));
+        assertFalse(contains(cidrTrie, "::2"));
+    }
+
+    @Test
+    public void zeroPrefix() {
+        // 0.0.0.0/0 只包含 IPv4（映射地址）
+        CidrTrie v4 = CidrTrie.parse("0.0.0.0/0");
+        assertTrue(contains(v4, "0.0.0.0"));
+        assertTrue(contains(v4, "255.255.255.255"));
+        assertFalse(contains(v4, "2001:db8::1"));
+        assertFalse(contains(v4, "::1"));
+
+        CidrTrie all = CidrTrie.parse("::/0");
+        assertTrue(contains(all, "1.2.3.4"));
+        assertTrue(contains(all, "2001:db8::1"));
+
+        CidrTrie empty = CidrTrie.parse(" , ");
+        assertTrue(empty.isEmpty());
+        assertFalse(contains(empty, "1.2.3.4"));
+    }
+
+    @Test
+    public void containsInetAddress() throws Exception {
+        CidrTrie cidrTrie = CidrTrie.parse("127.0.0.0/8,::1/128");
+        assertTrue(cidrTrie.contains(InetAddress.getByName("127.0.0.1")));
+        assertTrue(cidrTrie.contains(InetAddress.getByName("::1")));
+        assertFalse(cidrTrie.contains(InetAddress.getByName("128.0.0.1")));
+        assertFalse(cidrTrie.contains(InetAddress.getByName("::2")));
+        assertFalse(cidrTrie.contains((InetAddress) null));
+    }
+
+    @Test
+    public void addInvalid() {
+        String[] values = {"10.0.0.0/33", "::/129", "10.0.0.0/", "10.0.0.0/-1", "10.0.0.0/8a", "10.0.0.0/0008", "abc", "10.0.0/8", "/8"};
+        for (String value : values) {
+            assertThrows(IllegalArgumentException.class, () -> new CidrTrie().add(value), value);
+        }
+        assertThrows(IllegalArgumentException.class, () -> CidrTrie.parse("10.0.0.0/8,10.0.0.256"));
+    }
+
+    private static long[] parse(String s, int family) {
+        long[] addr = new long[2];
+        assertEquals(family, CidrTrie.parse(s, 0, s.length(), addr), s);
+        return addr;
+    }
+
+    private static boolean contains(CidrTrie cidrTrie, String s) {
+        long[] addr = new long[2];
+        assertTrue(CidrTrie.parse(s, 0, s.length(), addr) != 0, s);
+        return cidrTrie.contains(addr[0], addr[1]);
+    }
+
+}
@@ -0,0 +1,150 @@
+package org.gentle.deploy.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+
+import java.net.InetSocketAddress;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * {@link ReqAddr} 代理请求头（Forwarded、X-Forwarded-For）解析、可信代理链
+ *
+ * @author xiangqian
+ * @date 10:50 2026/10/27
+ */
+public class ReqAddrTest {
+
+    private static final CidrTrie TRUSTED_PROXIES = CidrTrie.parse("127.0.0.0/8,::1/128,10.0.0.0/8,fd00::/8");
+
+    // 可信代理
+    private static final InetSocketAddress PROXY = new InetSocketAddress("10.0.0.1", 40000);
+
+    @Test
+    public void untrustedRemote() {
+        // 当前通信的请求端不可信时忽略代理请求头
+        MockServerHttpRequest request = MockServerHttpRequest.get("/")
+                .remoteAddress(new InetSocketAddress("203.0.113.9", 5555))
+                .header("X-Forwarded-For", "198.51.100.7")
+                .header("Forwarded", "for=198.51.100.7")
+                .header("X-Real-IP", "198.51.100.7")
+                .build();
+        assertReqAddr("203.0.113.9", 5555, request);
+    }
+
+    @Test
+    public void noProxyHeader() {
+        assertReqAddr("10.0.0.1", 40000, MockServerHttpRequest.get("/").remoteAddress(PROXY).build());
+        assertReqAddr("127.0.0.1", 40000, MockServerHttpRequest.get("/").remoteAddress(new InetSocketAddress("::1", 40000)).build());
+        assertReqAddr(null, null, MockServerHttpRequest.get("/").build());
+    }
+
+    @Test
+    public void xForwardedFor() {
+        assertReqAddr("198.51.100.7", null, xForwardedFor("198.51.100.7"));
+        assertReqAddr("198.51.100.7", 4711, xForwardedFor(" 198.51.100.7:4711 "));
+        assertReqAddr("2001:db8::17", null, xForwardedFor("2001:db8::17"));
+        assertReqAddr("2001:db8::17", 4711, xForwardedFor("[2001:db8::17]:4711"));
+        assertReqAddr("2001:db8::17", null, xForwardedFor("[2001:db8::17]"));
+        assertReqAddr("::ffff:198.51.100.7", null, xForwardedFor("::ffff:198.51.100.7"));
+        assertReqAddr("fe80::1%eth0", null, xForwardedFor("fe80::1%eth0"));
+        assertReqAddr("127.0.0.1", null, xForwardedFor("::1"));
+    }
+
+    @Test
+    public void trustChain() {
+        // 从右向左跳过可信代理，第一个不可信的地址为客户端地址
+        assertReqAddr("198.51.100.7", null, xForwardedFor("192.0.2.1, 198.51.100.7, 10.0.0.2"));
+        assertReqAddr("198.51.100.7", null, xForwardedFor("192.0.2.1,198.51.100.7,10.0.0.3,fd00::2"));
+        // 可信代理之间的不可信地址
+        assertReqAddr("192.0.2.1", null, xForwardedFor("10.0.0.9, 192.0.2.1, 10.0.0.2"));
+        // 全部是可信代理时取最左边的地址
+        assertReqAddr("10.0.0.3", null, xForwardedFor("10.0.0.3, 10.0.0.2"));
+        assertReqAddr("10.0.0.3", 8080, xForwardedFor("10.0.0.3:8080, [fd00::2]:443"));
+        // 多行请求头按顺序拼接
+        assertReqAddr("192.0.2.1", null, xForwardedFor("198.51.100.7, 192.0.2.1", "10.0.0.2"));
+        assertReqAddr("198.51.100.7", null, xForwardedFor("198.51.100.7", "10.0.0.3, 10.0.0.2"));
+    }
+
+    @Test
+    public void unparsableHop() {
+        // 最近一跳无法解析：忽略该请求头
+        assertReqAddr("10.0.0.1", 40000, xForwardedFor("unknown"));
+        assertReqAddr("10.0.0.1", 40000, xForwardedFor("198.51.100.7, unknown"));
+        assertReqAddr("10.0.0.1", 40000, xForwardedFor("198.51.100.7:99999"));
+        assertReqAddr("10.0.0.1", 40000, xForwardedFor("256.1.1.1"));
+        assertReqAddr("10.0.0.1", 40000, xForwardedFor("[2001:db8::17"));
+        assertReqAddr("10.0.0.1", 40000, xForwardedFor(""));
+        // 可信代理左边的地址无法解析：取最左边的可信代理
+        assertReqAddr("10.0.0.3", null, xForwardedFor("unknown, 10.0.0.3, 10.0.0.2"));
+        assertReqAddr("10.0.0.2", null, xForwardedFor("198.51.100.7, , 10.0.0.2"));
+    }
+
+    @Test
+    public void forwarded() {
+        assertReqAddr("192.0.2.60", null, forwarded("for=192.0.2.60;proto=http;by=203.0.113.43"));
+        assertReqAddr("192.0.2.60", null, forwarded("proto=http; for=192.0.2.60"));
+        assertReqAddr("192.0.2.43", 47011, forwarded("For=\"192.0.2.43:47011\""));
+        assertReqAddr("2001:db8:cafe::17", 4711, forwarded("for=\"[2001:db8:cafe::17]:4711\""));
+        assertReqAddr("2001:db8:cafe::17", null, forwarded("for=\"[2001:db8:cafe::17]\""));
+        assertReqAddr("198.51.100.17", null, forwarded("for=192.0.2.43, for=198.51.100.17;by=203.0.113.60;proto=http;host=example.com"));
+        // 可信代理
+        assertReqAddr("192.0.2.60", 1234, forwarded("for=\"192.0.2.60:1234\", for=\"[fd00::1]:80\", for=10.0.0.5"));
+        assertReqAddr("10.0.0.6", 80, forwarded("for=\"10.0.0.6:80\";proto=https, for=10.0.0.5"));
+    }
+
+    @Test
+    public void forwardedUnparsable() {
+        // 混淆标识、unknown、没有 for 参数、引号内端口错误
+        assertReqAddr("10.0.0.1", 40000, forwarded("for=_hidden"));
+        assertReqAddr("10.0.0.1", 40000, forwarded("for=unknown"));
+        assertReqAddr("10.0.0.1", 40000, forwarded("proto=http;by=203.0.113.43"));
+        assertReqAddr("10.0.0.1", 40000, forwarded("for=\"192.0.2.43:port\""));
+        assertReqAddr("10.0.0.1", 40000, forwarded("for=\"[2001:db8::17]4711\""));
+        assertReqAddr("10.0.0.5", null, forwarded("for=_hidden, for=10.0.0.5"));
+    }
+
+    @Test
+    public void headerPriority() {
+        // Forwarded > X-Forwarded-For > 单个地址的代理请求头
+        MockServerHttpRequest request = MockServerHttpRequest.get("/").remoteAddress(PROXY)
+                .header("Forwarded", "for=192.0.2.1")
+                .header("X-Forwarded-For", "192.0.2.2")
+                .header("X-Real-IP", "192.0.2.3")
+                .build();
+        assertReqAddr("192.0.2.1", null, request);
+
+        request = MockServerHttpRequest.get("/").remoteAddress(PROXY)
+                .header("Forwarded", "for=unknown")
+                .header("X-Forwarded-For", "192.0.2.2")
+                .build();
+        assertReqAddr("192.0.2.2", null, request);
+
+        request = MockServerHttpRequest.get("/").remoteAddress(PROXY)
+                .header("X-Real-IP", "192.0.2.3:8080")
+                .build();
+        assertReqAddr("192.0.2.3", 8080, request);
+
+        request = MockServerHttpRequest.get("/").remoteAddress(PROXY)
+                .header("X-Real-IP", "unknown")
+                .header("HTTP_CLIENT_IP", "192.0.2.4")
+                .build();
+        assertReqAddr("192.0.2.4", null, request);
+    }
+
+    private static MockServerHttpRequest xForwardedFor(String... values) {
+        return MockServerHttpRequest.get("/").remoteAddress(PROXY).header("X-Forwarded-For", values).build();
+    }
+
+    private static MockServerHttpRequest forwarded(String... values) {
+        return MockServerHttpRequest.get("/").remoteAddress(PROXY).header("Forwarded", values).build();
+    }
+
+    private static void assertReqAddr(String host, Integer port, MockServerHttpRequest request) {
+        ReqAddr reqAddr = ReqAddr.resolve(request, TRUSTED_PROXIES);
+        String message = String.valueOf(request.getHeaders());
+        assertEquals(host, reqAddr.getHost(), message);
+        assertEquals(port, reqAddr.getPort(), message);
+    }
+
+}
@@ -0,0 +1,55 @@
+package org.gentle.deploy.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link ResponseCache} 启动时清理磁盘缓存目录
+ *
+ * @author xiangqian
+ * @date 09:50 2026/10/28
+ */
+public class ResponseCacheTest {
+
+    @Test
+    public void isCacheFile() {
+        assertTrue(ResponseCache.isCacheFile("tmp-1"));
+        assertTrue(ResponseCache.isCacheFile("tmp-123456"));
+        assertTrue(ResponseCache.isCacheFile("0123456789abcdef0123456789abcdef-1792316654412"));
+
+        assertFalse(ResponseCache.isCacheFile("tmp-"));
+        assertFalse(ResponseCache.isCacheFile("tmp-1.log"));
+        assertFalse(ResponseCache.isCacheFile("0123456789ABCDEF0123456789ABCDEF-1792316654412"));
+        assertFalse(ResponseCache.isCacheFile("0123456789abcdef-1792316654412"));
+        assertFalse(ResponseCache.isCacheFile("0123456789abcdef0123456789abcdef"));
+        assertFalse(ResponseCache.isCacheFile("application.yml"));
+    }
+
+    @Test
+    public void init(@TempDir Path dir) throws Exception {
+        Path tmpFile = Files.createFile(dir.resolve("tmp-3"));
+        Path cacheFile = Files.createFile(dir.resolve("0123456789abcdef0123456789abcdef-1792316654412"));
+        Path otherFile = Files.createFile(dir.resolve("other.txt"));
+        // 与缓存文件同名的子目录
+        Path subDir = Files.createDirectory(dir.resolve("tmp-4"));
+        Files.createFile(subDir.resolve("tmp-5"));
+
+        ResponseCache responseCache = new ResponseCache();
+        ReflectionTestUtils.setField(responseCache, "enabled", true);
+        ReflectionTestUtils.setField(responseCache, "dir", dir.toString());
+        responseCache.init();
+
+        assertFalse(Files.exists(tmpFile));
+        assertFalse(Files.exists(cacheFile));
+        assertTrue(Files.exists(otherFile));
+        assertTrue(Files.exists(subDir.resolve("tmp-5")));
+    }
+
+}
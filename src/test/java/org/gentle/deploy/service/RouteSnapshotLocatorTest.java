@@ -0,0 +1,106 @@
+package org.gentle.deploy.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.cloud.gateway.config.GatewayProperties;
+import org.springframework.cloud.gateway.event.RefreshRoutesEvent;
+import org.springframework.cloud.gateway.handler.predicate.PathRoutePredicateFactory;
+import org.springframework.cloud.gateway.handler.predicate.PredicateDefinition;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import org.springframework.format.support.DefaultFormattingConversionService;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * {@link RouteSnapshotLocator} 全量刷新时同步配置文件中的路由
+ *
+ * @author xiangqian
+ * @date 10:20 2026/10/28
+ */
+public class RouteSnapshotLocatorTest {
+
+    private GatewayProperties gatewayProperties;
+
+    private RouteSnapshotLocator locator;
+
+    @BeforeEach
+    public void init() {
+        gatewayProperties = new GatewayProperties();
+        DefaultFormattingConversionService conversionService = new DefaultFormattingConversionService();
+        locator = new RouteSnapshotLocator();
+        ReflectionTestUtils.setField(locator, "gatewayProperties", gatewayProperties);
+        ReflectionTestUtils.setField(locator, "predicates", List.of(new PathRoutePredicateFactory()));
+        ReflectionTestUtils.setField(locator, "gatewayFilterFactories", List.of());
+        ReflectionTestUtils.setField(locator, "configurationService",
+                new ConfigurationService(new DefaultListableBeanFactory(), () -> conversionService, () -> null));
+        locator.init();
+    }
+
+    @Test
+    public void removeStaticRoute() {
+        refresh(routeDefinition("a", "/a/**"), routeDefinition("b", "/b/**"));
+        assertEquals(Set.of("a", "b"), ids());
+
+        // 配置中移除 b、修改 a
+        RouteDefinition a = routeDefinition("a", "/a2/**");
+        refresh(a);
+        assertEquals(Set.of("a"), ids());
+        assertEquals(a, locator.map().get("a"));
+        assertEquals(1, locator.getRoutes().count().block());
+
+        refresh();
+        assertEquals(Set.of(), ids());
+    }
+
+    @Test
+    public void keepDynamicRoute() {
+        refresh(routeDefinition("a", "/a/**"), routeDefinition("b", "/b/**"));
+        locator.save(List.of(routeDefinition("app", "/app/**"))).block();
+
+        refresh(routeDefinition("a", "/a/**"));
+        assertEquals(Set.of("a", "app"), ids());
+    }
+
+    @Test
+    public void keepOverwrittenRoute() {
+        refresh(routeDefinition("a", "/a/**"), routeDefinition("b", "/b/**"));
+        // 同 id 的路由被注册覆盖后不随配置删除
+        RouteDefinition b = routeDefinition("b", "/registered/**");
+        locator.save(List.of(b)).block();
+
+        refresh(routeDefinition("a", "/a/**"));
+        assertEquals(Set.of("a", "b"), ids());
+        assertEquals(b, locator.map().get("b"));
+    }
+
+    private void refresh(RouteDefinition... routeDefinitions) {
+        gatewayProperties.setRoutes(new ArrayList<>(List.of(routeDefinitions)));
+        // 路由定义来自内存，转换同步完成
+        locator.onApplicationEvent(new RefreshRoutesEvent(this));
+    }
+
+    private Set<String> ids() {
+        return locator.map().keySet();
+    }
+
+    private static RouteDefinition routeDefinition(String id, String pattern) {
+        PredicateDefinition predicateDefinition = new PredicateDefinition();
+        predicateDefinition.setName("Path");
+        predicateDefinition.setArgs(Map.of("_genkey_0", pattern));
+        RouteDefinition routeDefinition = new RouteDefinition();
+        routeDefinition.setId(id);
+        routeDefinition.setUri(URI.create("http://127.0.0.1:8080"));
+        routeDefinition.setPredicates(List.of(predicateDefinition));
+        return routeDefinition;
+    }
+
+}
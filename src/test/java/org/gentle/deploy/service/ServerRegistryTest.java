@@ -0,0 +1,167 @@
+package org.gentle.deploy.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link ServerRegistry} 注册顺序、代数、淘汰策略、写入时复制
+ *
+ * @author xiangqian
+ * @date 11:10 2026/10/27
+ */
+public class ServerRegistryTest {
+
+    @Test
+    public void register() {
+        ServerRegistry registry = new ServerRegistry();
+        assertTrue(registry.isEmpty());
+        assertNull(registry.top());
+
+        ServerAddr a = serverAddr(8001, 0);
+        ServerAddr b = serverAddr(8002, 0);
+        assertNull(registry.register(a));
+        assertNull(registry.register(b));
+        assertEquals(List.of(a, b), registry.snapshot());
+        assertSame(b, registry.top());
+        assertEquals(1, a.getGeneration());
+        assertEquals(2, b.getGeneration());
+        assertSame(a, registry.get("127.0.0.1:8001"));
+        assertTrue(registry.contains("127.0.0.1:8002"));
+        assertFalse(registry.contains("127.0.0.1:8003"));
+    }
+
+    @Test
+    public void reregister() {
+        ServerRegistry registry = new ServerRegistry();
+        ServerAddr a = serverAddr(8001, 0);
+        ServerAddr b = serverAddr(8002, 0);
+        registry.register(a);
+        registry.register(b);
+
+        // 同一服务重新注册：替换原条目，移到最上层，分配新的代数
+        ServerAddr a2 = serverAddr(8001, 0);
+        assertSame(a, registry.register(a2));
+        assertEquals(2, registry.size());
+        assertSame(b, registry.snapshot().get(0));
+        assertSame(a2, registry.top());
+        assertSame(a2, registry.get(a2.getKey()));
+        assertEquals(3, a2.getGeneration());
+        assertEquals(3, registry.getGeneration());
+    }
+
+    @Test
+    public void versionOrder() {
+        ServerRegistry registry = new ServerRegistry();
+        ServerAddr v5 = serverAddr(8005, 5);
+        ServerAddr v3 = serverAddr(8003, 3);
+        ServerAddr v7 = serverAddr(8007, 7);
+        ServerAddr v5b = serverAddr(8006, 5);
+        registry.register(v5);
+        // 延迟到达的旧注册不覆盖更新的注册
+        registry.register(v3);
+        registry.register(v7);
+        // 版本相同时按注册顺序
+        registry.register(v5b);
+        assertEquals(List.of(v3, v5, v5b, v7), registry.snapshot());
+        assertSame(v7, registry.top());
+
+        // 重新注册为更旧的版本
+        ServerAddr v1 = serverAddr(8007, 1);
+        assertSame(v7, registry.register(v1));
+        assertEquals(List.of(v1, v3, v5, v5b), registry.snapshot());
+    }
+
+    @Test
+    public void remove() {
+        ServerRegistry registry = new ServerRegistry();
+        ServerAddr a = serverAddr(8001, 0);
+        ServerAddr b = serverAddr(8002, 0);
+        registry.register(a);
+        registry.register(b);
+
+        assertSame(b, registry.remove(b.getKey()));
+        assertNull(registry.remove(b.getKey()));
+        assertNull(registry.get(b.getKey()));
+        assertEquals(List.of(a), registry.snapshot());
+        assertSame(a, registry.top());
+
+        // 移除不影响代数
+        ServerAddr c = serverAddr(8003, 0);
+        registry.register(c);
+        assertEquals(3, c.getGeneration());
+    }
+
+    @Test
+    public void copyOnWrite() {
+        ServerRegistry registry = new ServerRegistry();
+        ServerAddr a = serverAddr(8001, 0);
+        registry.register(a);
+
+        List<ServerAddr> snapshot = registry.snapshot();
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.add(a));
+        registry.register(serverAddr(8002, 0));
+        registry.remove(a.getKey());
+        // 已获得的快照不变
+        assertEquals(List.of(a), snapshot);
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void copy() {
+        ServerRegistry registry = new ServerRegistry();
+        ServerAddr a = serverAddr(8001, 0);
+        registry.register(a);
+
+        ServerRegistry copy = registry.copy();
+        assertEquals(registry.snapshot(), copy.snapshot());
+        assertEquals(1, copy.getGeneration());
+
+        copy.register(serverAddr(8002, 0));
+        copy.remove(a.getKey());
+        assertEquals(List.of(a), registry.snapshot());
+        assertSame(a, registry.get(a.getKey()));
+        assertEquals(1, registry.getGeneration());
+        assertEquals(2, copy.getGeneration());
+    }
+
+    @Test
+    public void evictionCandidate() {
+        ServerRegistry registry = new ServerRegistry();
+        assertNull(registry.evictionCandidate(ServerRegistry.OLDEST, serverAddr -> true));
+
+        ServerAddr a = serverAddr(8001, 0);
+        ServerAddr b = serverAddr(8002, 0);
+        ServerAddr c = serverAddr(8003, 0);
+        registry.register(a);
+        registry.register(b);
+        registry.register(c);
+
+        Set<String> unreachable = Set.of(b.getKey(), c.getKey());
+        assertSame(a, registry.evictionCandidate(ServerRegistry.OLDEST, serverAddr -> !unreachable.contains(serverAddr.getKey())));
+        // 优先淘汰最下层的不可达服务
+        assertSame(b, registry.evictionCandidate(ServerRegistry.UNREACHABLE_FIRST, serverAddr -> !unreachable.contains(serverAddr.getKey())));
+        assertSame(b, registry.evictionCandidate("Unreachable-First", serverAddr -> !unreachable.contains(serverAddr.getKey())));
+        // 都可达时淘汰最下层的服务
+        assertSame(a, registry.evictionCandidate(ServerRegistry.UNREACHABLE_FIRST, serverAddr -> true));
+        // 未知策略按 oldest
+        assertSame(a, registry.evictionCandidate("unknown", serverAddr -> false));
+    }
+
+    private static ServerAddr serverAddr(int port, long version) {
+        ServerAddr serverAddr = new ServerAddr();
+        serverAddr.setHost("127.0.0.1");
+        serverAddr.setPort(port);
+        serverAddr.setVersion(version);
+        return serverAddr;
+    }
+
+}
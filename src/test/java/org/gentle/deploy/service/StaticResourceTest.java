@@ -0,0 +1,50 @@
+package org.gentle.deploy.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link StaticResource} Accept-Encoding 协商
+ *
+ * @author xiangqian
+ * @date 10:40 2026/10/28
+ */
+public class StaticResourceTest {
+
+    @Test
+    public void acceptGzip() {
+        assertTrue(acceptGzip("gzip"));
+        assertTrue(acceptGzip("gzip, deflate, br"));
+        assertTrue(acceptGzip("br;q=1.0, GZIP;q=0.5"));
+        assertTrue(acceptGzip("gzip ; q=0.001"));
+        assertTrue(acceptGzip("x-gzip"));
+        assertTrue(acceptGzip("*"));
+        assertTrue(acceptGzip("deflate", "gzip;q=1"));
+    }
+
+    @Test
+    public void rejectGzip() {
+        assertFalse(acceptGzip(new String[0]));
+        assertFalse(acceptGzip("identity"));
+        assertFalse(acceptGzip("gzip;q=0"));
+        assertFalse(acceptGzip("gzip; q=0.0"));
+        assertFalse(acceptGzip("gzip;Q=0.000"));
+        assertFalse(acceptGzip("gzip;q=abc"));
+        assertFalse(acceptGzip("gzipx"));
+        // gzip 显式拒绝时不看 *
+        assertFalse(acceptGzip("*, gzip;q=0"));
+        assertFalse(acceptGzip("*;q=0"));
+    }
+
+    private static boolean acceptGzip(String... values) {
+        HttpHeaders headers = new HttpHeaders();
+        for (String value : values) {
+            headers.add(HttpHeaders.ACCEPT_ENCODING, value);
+        }
+        return StaticResource.acceptGzip(headers);
+    }
+
+}